@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks once per number of calling threads, with the GC profiler attached so
+ * that the allocation rate per operation is reported next to the throughput and latency.
+ * <p>
+ * Usage: <code>java -jar target/benchmarks.jar [threads,...] [JMH options]</code>, e.g.
+ * <code>java -jar target/benchmarks.jar 1,16 -p poolSize=8 doGet</code>. The threads
+ * default to 1,4,16, the JMH options are passed through, e.g. to pick benchmarks or params.
+ * </p>
+ * 
+ * @author xianwu.zhang
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String threads = "1,4,16";
+        String[] jmhArgs = args;
+        if (args.length > 0 && args[0].matches("\\d+(,\\d+)*")) {
+            threads = args[0];
+            jmhArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, jmhArgs, 0, jmhArgs.length);
+        }
+        CommandLineOptions commandLineOptions = new CommandLineOptions(jmhArgs);
+        for (String thread : threads.split(",")) {
+            OptionsBuilder optionsBuilder = new OptionsBuilder();
+            if (commandLineOptions.getIncludes().isEmpty()) {
+                optionsBuilder.include(NettyHttpClientBenchmark.class.getSimpleName());
+            }
+            Options options = optionsBuilder.parent(commandLineOptions)
+                .threads(Integer.parseInt(thread)).addProfiler(GCProfiler.class).build();
+            new Runner(options).run();
+        }
+    }
+}
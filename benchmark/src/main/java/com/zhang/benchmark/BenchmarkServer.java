@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.benchmark;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An in-process HTTP/1.1 server standing in for a real backend. A GET of
+ * <code>/size/&lt;n&gt;</code> answers with n bytes, a POST answers with the length of
+ * the received body. The bodies are cached, so the server adds little noise to the numbers
+ * of the client. Keep-alive is honoured, a request with <code>Connection: close</code> gets
+ * its channel closed after the response.
+ * 
+ * @author xianwu.zhang
+ */
+public class BenchmarkServer {
+
+    private static final String                   SIZE_PATH = "/size/";
+
+    private final EventLoopGroup                  group;
+
+    private final Channel                         serverChannel;
+
+    // bodies of the GET responses by size
+    private final ConcurrentMap<Integer, ByteBuf> payloads  = new ConcurrentHashMap<Integer, ByteBuf>();
+
+    /**
+     * start the server on an ephemeral port of the loopback address
+     * 
+     * @param threads
+     *            number of event loop threads, 0 for the Netty default
+     */
+    public BenchmarkServer(int threads) throws InterruptedException {
+        this.group = new NioEventLoopGroup(threads);
+        final ServerHandler handler = new ServerHandler();
+        ServerBootstrap bootstrap = new ServerBootstrap().group(group)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) throws Exception {
+                    ch.pipeline().addLast(new HttpServerCodec(),
+                        new HttpObjectAggregator(16 * 1024 * 1024), handler);
+                }
+            });
+        this.serverChannel = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0)).sync()
+            .channel();
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    public void close() throws InterruptedException {
+        serverChannel.close().sync();
+        group.shutdownGracefully().sync();
+    }
+
+    private ByteBuf payload(int size) {
+        ByteBuf payload = payloads.get(size);
+        if (null == payload) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = (byte) ('a' + i % 26);
+            }
+            payload = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(bytes));
+            ByteBuf oldPayload = payloads.putIfAbsent(size, payload);
+            if (null != oldPayload) {
+                payload = oldPayload;
+            }
+        }
+        return payload.duplicate();
+    }
+
+    @Sharable
+    private final class ServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request)
+                                                                                        throws Exception {
+            ByteBuf body;
+            if (HttpMethod.POST.equals(request.method())) {
+                body = Unpooled.copiedBuffer(String.valueOf(request.content().readableBytes())
+                    .getBytes("US-ASCII"));
+            } else {
+                String uri = request.uri();
+                int index = uri.lastIndexOf(SIZE_PATH);
+                body = payload(index < 0 ? 0 : Integer.parseInt(uri.substring(index
+                                                                             + SIZE_PATH.length())));
+            }
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK, body);
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream");
+            HttpUtil.setContentLength(response, body.readableBytes());
+
+            if (HttpUtil.isKeepAlive(request)) {
+                ctx.writeAndFlush(response);
+            } else {
+                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.benchmark;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+
+/**
+ * Throughput and latency of blocking doGet/doPost calls against the in-process
+ * {@link BenchmarkServer}, over a range of pool sizes, payload sizes and keep-alive. The
+ * number of calling threads is set per run, see {@link BenchmarkMain}. Each benchmark
+ * returns the received body size, so the response can not be optimized away.
+ * 
+ * @author xianwu.zhang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NettyHttpClientBenchmark {
+
+    private static final String ROUTE_HOST = "127.0.0.1";
+
+    // max channels of the route
+    @Param({ "1", "8", "64" })
+    private int                 poolSize;
+
+    // bytes of the response body of a GET and of the request body of a POST
+    @Param({ "64", "4096", "65536" })
+    private int                 payloadSize;
+
+    // if false, every request asks the server to close the channel after the response
+    @Param({ "true", "false" })
+    private boolean             keepAlive;
+
+    private BenchmarkServer     server;
+
+    private NettyHttpClient     client;
+
+    private String              getUri;
+
+    private String              postUri;
+
+    private byte[]              postContent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new BenchmarkServer(0);
+        String route = ROUTE_HOST + ":" + server.getPort();
+        Map<String, Integer> maxPerRoute = new HashMap<String, Integer>();
+        maxPerRoute.put(route, poolSize);
+        client = new NettyHttpClient.ConfigBuilder().maxPerRoute(maxPerRoute)
+            .maxIdleTimeInMilliSecondes(60 * 1000).connectTimeOutInMilliSecondes(30 * 1000)
+            .maxContentLength(payloadSize + 1024).build();
+        getUri = "http://" + route + "/size/" + payloadSize;
+        postUri = "http://" + route + "/post";
+        postContent = new byte[payloadSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int doGet() throws Exception {
+        return check(client.doGet(newRequest(getUri)).get());
+    }
+
+    @Benchmark
+    public int doPost() throws Exception {
+        return check(client.doPost(newRequest(postUri).content(postContent)).get());
+    }
+
+    private NettyHttpRequest newRequest(String uri) {
+        NettyHttpRequest request = new NettyHttpRequest().uri(uri);
+        request.header(HttpHeaderNames.CONNECTION.toString(),
+            keepAlive ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        return request;
+    }
+
+    private static int check(NettyHttpResponse response) {
+        try {
+            if (!response.isSuccess()) {
+                throw new IllegalStateException("request failed", response.getCause());
+            }
+            return response.getContent().readableBytes();
+        } finally {
+            response.release();
+        }
+    }
+}
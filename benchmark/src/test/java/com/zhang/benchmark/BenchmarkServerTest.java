@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.util.CharsetUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+
+/**
+ * Smoke test of the server the benchmarks run against, so that a broken server does not
+ * show up as a fast or slow client.
+ * 
+ * @author xianwu.zhang
+ */
+public class BenchmarkServerTest {
+
+    private BenchmarkServer server;
+
+    private NettyHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new BenchmarkServer(1);
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testGetPayload() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            NettyHttpResponse response = client.doGet(newRequest("/size/1000")).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            byte[] body = response.getContentAsBytes();
+            assertEquals(1000, body.length);
+            assertEquals('a', body[0]);
+            assertEquals('a' + 999 % 26, body[999]);
+            response.close();
+        }
+    }
+
+    @Test
+    public void testPostLength() throws Exception {
+        NettyHttpResponse response = client.doPost(
+            newRequest("/post").content("0123456789", CharsetUtil.UTF_8)).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals("10", response.getResponseBody());
+        response.close();
+    }
+
+    private NettyHttpRequest newRequest(String path) {
+        return new NettyHttpRequest().header("Accept", "*/*").uri(
+            "http://127.0.0.1:" + server.getPort() + path);
+    }
+}
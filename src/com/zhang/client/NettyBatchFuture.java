@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The futures of the requests of {@link NettyHttpClient#doBatch(List)}, in the order of the
+ * requests. The batch is done once every request is done or cancelled, and each request
+ * succeeds or fails on its own.
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyBatchFuture {
+
+    private final List<NettyHttpResponseFuture> futures;
+
+    private final CountDownLatch                latch;
+
+    public NettyBatchFuture(List<NettyHttpResponseFuture> futures) {
+        this.futures = Collections.unmodifiableList(futures);
+        this.latch = new CountDownLatch(futures.size());
+        NettyHttpResponseListener countDown = new NettyHttpResponseListener() {
+
+            @Override
+            public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+                latch.countDown();
+            }
+        };
+        for (NettyHttpResponseFuture future : futures) {
+            future.addListener(countDown);
+        }
+    }
+
+    /**
+     * @return the responses, successful or not, in the order of the requests
+     */
+    public List<NettyHttpResponse> get() throws InterruptedException {
+        latch.await();
+        return getResponses();
+    }
+
+    public List<NettyHttpResponse> get(long timeout, TimeUnit unit) throws TimeoutException,
+                                                                   InterruptedException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResponses();
+    }
+
+    public boolean isDone() {
+        return 0 == latch.getCount();
+    }
+
+    /**
+     * Getter method for property <tt>futures</tt>.
+     * 
+     * @return the futures of the requests, in the order of the requests
+     */
+    public List<NettyHttpResponseFuture> getFutures() {
+        return futures;
+    }
+
+    private List<NettyHttpResponse> getResponses() {
+        List<NettyHttpResponse> responses = new ArrayList<NettyHttpResponse>(futures.size());
+        for (NettyHttpResponseFuture future : futures) {
+            responses.add(future.getNow());
+        }
+        return responses;
+    }
+}
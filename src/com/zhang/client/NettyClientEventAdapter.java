@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+import io.netty.channel.Channel;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A {@link NettyClientEventListener} ignoring all events
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyClientEventAdapter implements NettyClientEventListener {
+
+    @Override
+    public void channelConnected(InetSocketAddress route, Channel channel, long connectNanos,
+                                 Throwable cause) {
+    }
+
+    @Override
+    public void channelAcquired(Channel channel, NettyHttpResponseFuture responseFuture) {
+    }
+
+    @Override
+    public void requestWritten(Channel channel, NettyHttpResponseFuture responseFuture,
+                               Throwable cause) {
+    }
+
+    @Override
+    public void responseReceived(Channel channel, NettyHttpResponseFuture responseFuture) {
+    }
+
+    @Override
+    public void requestCompleted(NettyHttpResponseFuture responseFuture) {
+    }
+
+    @Override
+    public void channelReleased(Channel channel) {
+    }
+
+    @Override
+    public void channelClosed(Channel channel, Throwable cause) {
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+import io.netty.channel.Channel;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Listener of the events of the requests and channels of a client, e.g. for tracing or
+ * debugging. The client costs nothing extra when no listener is registered. The methods are
+ * mostly invoked on the event loop of the channel and must not block. An exception thrown by
+ * a method is logged and ignored. Extend {@link NettyClientEventAdapter} to override only the
+ * events of interest.
+ * 
+ * @author xianwu.zhang
+ */
+public interface NettyClientEventListener {
+
+    /**
+     * invoked when a new channel has connected or failed to connect
+     * 
+     * @param route
+     *            target server
+     * @param channel
+     *            the new channel
+     * @param connectNanos
+     *            time from starting the connect until it completed, including the address
+     *            lookup
+     * @param cause
+     *            null if the channel connected, otherwise the cause of the failure
+     */
+    void channelConnected(InetSocketAddress route, Channel channel, long connectNanos,
+                          Throwable cause);
+
+    /**
+     * invoked when a request is assigned to a channel, either pooled or just connected
+     * 
+     * @param channel
+     * @param responseFuture
+     *            future of the request
+     */
+    void channelAcquired(Channel channel, NettyHttpResponseFuture responseFuture);
+
+    /**
+     * invoked when the request has been written to the channel, or failed to be written.
+     * A written request is always reported before its response.
+     * 
+     * @param channel
+     * @param responseFuture
+     *            future of the request
+     * @param cause
+     *            null if the request was written, otherwise the cause of the failure
+     */
+    void requestWritten(Channel channel, NettyHttpResponseFuture responseFuture,
+                        Throwable cause);
+
+    /**
+     * invoked when the status line and headers of the response are received. The response
+     * of an HTTP/2 stream is aggregated, so it is received along with the body.
+     * 
+     * @param channel
+     * @param responseFuture
+     *            future of the request
+     */
+    void responseReceived(Channel channel, NettyHttpResponseFuture responseFuture);
+
+    /**
+     * invoked when the future of a request is done or cancelled
+     * 
+     * @param responseFuture
+     *            the completed future
+     */
+    void requestCompleted(NettyHttpResponseFuture responseFuture);
+
+    /**
+     * invoked when a channel is returned to the pool after a response, right before the
+     * future of the response is completed, so that its listeners can reuse the channel
+     * 
+     * @param channel
+     */
+    void channelReleased(Channel channel);
+
+    /**
+     * invoked when a channel is closed
+     * 
+     * @param channel
+     * @param cause
+     *            cause of the close, null if the channel was closed normally
+     */
+    void channelClosed(Channel channel, Throwable cause);
+}
@@ -15,17 +15,31 @@
  */
 package com.zhang.client;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
 
 import com.zhang.handler.AdditionalChannelInitializer;
+import com.zhang.metrics.NettyPoolMetrics;
+import com.zhang.pool.NettyAggregationPolicy;
 import com.zhang.pool.NettyChannelPool;
+import com.zhang.pool.NettyConcurrencyLimitPolicy;
+import com.zhang.pool.NettyLoadBalancePolicy;
+import com.zhang.pool.NettyRequestBatch;
+import com.zhang.pool.NettyTransport;
+import com.zhang.resolver.DnsAddressResolver;
+import com.zhang.resolver.NettyAddressResolver;
 import com.zhang.util.NettyHttpRequestUtil;
 
 /**
@@ -42,23 +56,184 @@ public class NettyHttpClient {
         this.channelPool = new NettyChannelPool(configBuilder.getMaxPerRoute(), configBuilder
             .getConnectTimeOutInMilliSecondes(), configBuilder.getMaxIdleTimeInMilliSecondes(),
             configBuilder.getForbidForceConnect(), configBuilder.getAdditionalChannelInitializer(),
-            configBuilder.getOptions(), configBuilder.getGroup());
+            configBuilder.getOptions(), configBuilder.getGroup(), configBuilder.getTransport(),
+            null != configBuilder.getAddressResolver() ? configBuilder.getAddressResolver()
+                : new DnsAddressResolver(configBuilder.getResolverCacheTtlInMilliSecondes(),
+                    configBuilder.getResolverNegativeCacheTtlInMilliSecondes()));
+        this.channelPool.setCompletionExecutor(configBuilder.getCompletionExecutor());
+        this.channelPool.setEventLoopAffinity(configBuilder.getEventLoopAffinity());
+        this.channelPool.setMetricsEnabled(configBuilder.getMetrics());
+        this.channelPool.setEventListener(configBuilder.getEventListener());
+        this.channelPool.setWireLogSampling(configBuilder.getWireLogSampling());
+        this.channelPool.setFlushConsolidation(configBuilder.getFlushConsolidation());
+        if (null != configBuilder.getJmxName()) {
+            this.channelPool.getMetrics().exportJmx(configBuilder.getJmxName());
+        }
+        this.channelPool.setCopyResponseContent(configBuilder.getCopyResponseContent());
+        this.channelPool.setContentDecompression(configBuilder.getContentDecompression());
+        this.channelPool.setResponseTimeOut(configBuilder.getResponseTimeOutInMilliSecondes(),
+            configBuilder.getResponseTimeOutPerRoute());
+        this.channelPool.setMaxContentLength(configBuilder.getMaxContentLength(), configBuilder
+            .getMaxContentLengthPerRoute());
+        if (null != configBuilder.getAggregationPolicyPerRoute()) {
+            this.channelPool.setAggregationPolicy(configBuilder.getAggregationPolicyPerRoute());
+        }
+        if (null != configBuilder.getConcurrencyLimitPerRoute()) {
+            this.channelPool.setConcurrencyLimit(configBuilder.getConcurrencyLimitPerRoute(),
+                configBuilder.getMaxConcurrencyLimit());
+        }
+        this.channelPool.setCircuitBreaker(configBuilder.getCircuitBreakerConsecutiveFailures(),
+            configBuilder.getCircuitBreakerFailureRatePercent(), configBuilder
+                .getCircuitBreakerFailureRateWindow(), configBuilder
+                .getCircuitBreakerOpenTimeInMilliSecondes(), configBuilder
+                .getCircuitBreakerHalfOpenProbes());
+        this.channelPool.setHedging(configBuilder.getHedgeDelayInMilliSecondes(), configBuilder
+            .getHedgePercentile(), configBuilder.getHedgeBudgetPercent());
+        if (null != configBuilder.getServices()) {
+            for (Entry<String, List<InetSocketAddress>> entry : configBuilder.getServices()
+                .entrySet()) {
+                setService(entry.getKey(), entry.getValue());
+            }
+        }
+        if (null != configBuilder.getPipeliningPerRoute()) {
+            this.channelPool.setPipelining(configBuilder.getPipeliningPerRoute());
+        }
+        if (null != configBuilder.getHttp2PerRoute()) {
+            this.channelPool.setHttp2(configBuilder.getHttp2PerRoute(), configBuilder
+                .getHttp2Upgrade());
+        }
+        if (null != configBuilder.getMinIdlePerRoute()) {
+            this.channelPool.keepMinIdle(configBuilder.getMinIdlePerRoute(), configBuilder
+                .getMinIdleCheckIntervalInMilliSecondes());
+            this.channelPool.warmUpAll();
+        }
     }
 
     public NettyHttpResponseFuture doPost(NettyHttpRequest request) throws Exception {
 
-        HttpRequest httpRequest = NettyHttpRequestUtil.create(request, HttpMethod.POST);
-        InetSocketAddress route = new InetSocketAddress(request.getUri().getHost(), request
-            .getUri().getPort());
+        HttpRequest httpRequest = newHttpRequest(request, HttpMethod.POST);
+        // the route is resolved by the pool, so the caller thread never blocks on DNS
+        InetSocketAddress route = InetSocketAddress.createUnresolved(request.getUri().getHost(),
+            request.getUri().getPort());
 
-        return channelPool.sendRequest(route, httpRequest);
+        return channelPool.sendRequest(route, httpRequest, null, request
+            .getResponseTimeOutInMilliSecondes());
     }
 
     public NettyHttpResponseFuture doGet(NettyHttpRequest request) throws Exception {
-        HttpRequest httpRequest = NettyHttpRequestUtil.create(request, HttpMethod.GET);
-        InetSocketAddress route = new InetSocketAddress(request.getUri().getHost(), request
-            .getUri().getPort());
-        return channelPool.sendRequest(route, httpRequest);
+        HttpRequest httpRequest = newHttpRequest(request, HttpMethod.GET);
+        InetSocketAddress route = InetSocketAddress.createUnresolved(request.getUri().getHost(),
+            request.getUri().getPort());
+        return channelPool.sendRequest(route, httpRequest, null, request
+            .getResponseTimeOutInMilliSecondes());
+    }
+
+    /**
+     * send the requests together, a request with a body is posted and the others are
+     * fetched by GET. The requests which find an idle channel are written together, one
+     * task per event loop and one flush per channel, instead of a wakeup and a flush per
+     * request, which suits fan-out of many small requests.
+     * 
+     * @param requests
+     * @return the futures of the requests, in the same order
+     */
+    public NettyBatchFuture doBatch(List<NettyHttpRequest> requests) throws Exception {
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>(
+            requests.size());
+        NettyRequestBatch batch = channelPool.newBatch();
+        try {
+            for (NettyHttpRequest request : requests) {
+                HttpMethod method = null != request.getContent() || null != request.getFile()
+                                    || null != request.getChunkSource() ? HttpMethod.POST
+                    : HttpMethod.GET;
+                HttpRequest httpRequest = newHttpRequest(request, method);
+                InetSocketAddress route = InetSocketAddress.createUnresolved(request.getUri()
+                    .getHost(), request.getUri().getPort());
+                futures.add(channelPool.sendRequest(route, httpRequest, null, request
+                    .getResponseTimeOutInMilliSecondes(), batch));
+            }
+        } finally {
+            batch.flush();
+        }
+        return new NettyBatchFuture(futures);
+    }
+
+    /**
+     * post the request and stream the response body to the streamHandler as it arrives
+     * instead of aggregating it. The returned future is done after the last chunk, its
+     * response carries the status and headers but no body.
+     */
+    public NettyHttpResponseFuture doPost(NettyHttpRequest request,
+                                          NettyHttpStreamHandler streamHandler) throws Exception {
+        HttpRequest httpRequest = newHttpRequest(request, HttpMethod.POST);
+        InetSocketAddress route = InetSocketAddress.createUnresolved(request.getUri().getHost(),
+            request.getUri().getPort());
+        return channelPool.sendRequest(route, httpRequest, streamHandler, request
+            .getResponseTimeOutInMilliSecondes());
+    }
+
+    /**
+     * get the resource and stream the response body to the streamHandler as it arrives
+     * instead of aggregating it. The returned future is done after the last chunk, its
+     * response carries the status and headers but no body.
+     */
+    public NettyHttpResponseFuture doGet(NettyHttpRequest request,
+                                         NettyHttpStreamHandler streamHandler) throws Exception {
+        HttpRequest httpRequest = newHttpRequest(request, HttpMethod.GET);
+        InetSocketAddress route = InetSocketAddress.createUnresolved(request.getUri().getHost(),
+            request.getUri().getPort());
+        return channelPool.sendRequest(route, httpRequest, streamHandler, request
+            .getResponseTimeOutInMilliSecondes());
+    }
+
+    private HttpRequest newHttpRequest(NettyHttpRequest request, HttpMethod httpMethod) {
+        return NettyHttpRequestUtil.create(request, httpMethod, configBuilder
+            .getContentDecompression(), configBuilder.getRequestCompressionThreshold());
+    }
+
+    /**
+     * open up to n channels to the route ahead of time
+     * 
+     * @param route
+     *            host:port of the target server
+     * @param n
+     *            number of channels to open
+     * @return the number of channels being connected
+     */
+    public int warmUp(String route, int n) {
+        int index = route.lastIndexOf(':');
+        return channelPool.warmUp(InetSocketAddress.createUnresolved(route.substring(0, index),
+            Integer.parseInt(route.substring(index + 1))), n);
+    }
+
+    /**
+     * open channels until every route configured by minIdlePerRoute has minIdle channels
+     * 
+     * @return the number of channels being connected
+     */
+    public int warmUpAll() {
+        return channelPool.warmUpAll();
+    }
+
+    /**
+     * define a logical service or replace its endpoints. Requests to http://name/... are
+     * spread over the endpoints by the loadBalancePolicy of the client.
+     * 
+     * @param name
+     *            host:port of the requests to the service, e.g. user-service:80
+     * @param endpoints
+     *            the endpoints of the service
+     */
+    public void setService(String name, List<InetSocketAddress> endpoints) {
+        channelPool.setService(name, endpoints, configBuilder.getLoadBalancePolicy());
+    }
+
+    /**
+     * @return the metrics of the routes, e.g. getMetrics().snapshot() for a snapshot of
+     *         every route
+     */
+    public NettyPoolMetrics getMetrics() {
+        return channelPool.getMetrics();
     }
 
     public void close() throws InterruptedException {
@@ -98,6 +273,106 @@ public class NettyHttpClient {
 
         private EventLoopGroup               customGroup;
 
+        // transport of the group created by the client, ignored with a customGroup
+        private NettyTransport               transport = NettyTransport.AUTO;
+
+        // copy response bodies to the heap, otherwise responses must be released
+        private boolean                      copyResponseContent;
+
+        // ask for gzip or deflate responses and decode them
+        private boolean                      contentDecompression;
+
+        // min size of a body to gzip it, 0 means the bodies are sent as they are
+        private int                          requestCompressionThreshold;
+
+        // deadline of a response, per route or for all the other routes, 0 means none
+        private int                          responseTimeOutInMilliSecondes;
+
+        private Map<String, Integer>         responseTimeOutPerRoute;
+
+        // max content length of a response, per route or for all the other routes
+        private int                          maxContentLength   = 1048576;
+
+        private Map<String, Integer>         maxContentLengthPerRoute;
+
+        // aggregate or stream the response chunks, per route
+        private Map<String, NettyAggregationPolicy> aggregationPolicyPerRoute;
+
+        // limit the outstanding requests adaptively, per route
+        private Map<String, NettyConcurrencyLimitPolicy> concurrencyLimitPerRoute;
+
+        // upper bound of the adaptive limits
+        private int                          maxConcurrencyLimit = 200;
+
+        // endpoints of the logical services, keyed by host:port of the service
+        private Map<String, List<InetSocketAddress>> services;
+
+        // how an endpoint of a service is chosen
+        private NettyLoadBalancePolicy       loadBalancePolicy  = NettyLoadBalancePolicy.POWER_OF_TWO_CHOICES;
+
+        // settings of the circuit breaker of each route, disabled by default
+        private int                          circuitBreakerConsecutiveFailures;
+
+        private int                          circuitBreakerFailureRatePercent;
+
+        private int                          circuitBreakerFailureRateWindow;
+
+        private int                          circuitBreakerOpenTimeInMilliSecondes;
+
+        private int                          circuitBreakerHalfOpenProbes;
+
+        // hedging of idempotent requests, disabled by default
+        private int                          hedgeDelayInMilliSecondes;
+
+        private double                       hedgePercentile;
+
+        private int                          hedgeBudgetPercent;
+
+        // executor for response listeners, null means listeners run on the event loop
+        private Executor                     completionExecutor;
+
+        // shard the channel pool of each route per event loop
+        private boolean                      eventLoopAffinity  = false;
+
+        // record the requests and channels of each route
+        private boolean                      metrics            = true;
+
+        // name of the pool in JMX, null means the metrics are not exported
+        private String                       jmxName;
+
+        // listener of the request and channel events
+        private NettyClientEventListener     eventListener;
+
+        // log the traffic of every nth channel, 0 means no wire logging
+        private int                          wireLogSampling;
+
+        // min number of idle channels kept per route
+        private Map<String, Integer>         minIdlePerRoute;
+
+        // interval to top up the routes in minIdlePerRoute
+        private int                          minIdleCheckIntervalInMilliSecondes = 5000;
+
+        // max outstanding requests per channel for the routes with HTTP/1.1 pipelining enabled
+        private Map<String, Integer>         pipeliningPerRoute;
+
+        // max concurrent streams per channel for the routes talking HTTP/2
+        private Map<String, Integer>         http2PerRoute;
+
+        // connect the HTTP/2 routes with the HTTP/1.1 upgrade instead of prior knowledge
+        private boolean                      http2Upgrade;
+
+        // flushes consolidated before one reaches the socket, 0 means every flush is written
+        private int                          flushConsolidation;
+
+        // resolver of the route hosts, a DnsAddressResolver is used if not set
+        private NettyAddressResolver         addressResolver;
+
+        // max time to cache a resolved address in the default resolver, whatever its TTL
+        private int                          resolverCacheTtlInMilliSecondes = DnsAddressResolver.DEFAULT_MAX_TTL;
+
+        // time to cache a failed lookup in the default resolver
+        private int                          resolverNegativeCacheTtlInMilliSecondes = DnsAddressResolver.DEFAULT_NEGATIVE_TTL;
+
         public ConfigBuilder() {
         }
 
@@ -110,6 +385,73 @@ public class NettyHttpClient {
             return this;
         }
 
+        /**
+         * channels of these routes are opened when the client is built, and the pools are
+         * topped up in the background to keep at least minIdle channels per route
+         */
+        public ConfigBuilder minIdlePerRoute(Map<String, Integer> minIdlePerRoute) {
+            this.minIdlePerRoute = minIdlePerRoute;
+            return this;
+        }
+
+        public ConfigBuilder minIdleCheckIntervalInMilliSecondes(int minIdleCheckIntervalInMilliSecondes) {
+            this.minIdleCheckIntervalInMilliSecondes = minIdleCheckIntervalInMilliSecondes;
+            return this;
+        }
+
+        /**
+         * enable HTTP/1.1 pipelining for the routes, only for servers known to support it.
+         * The value is the max number of outstanding requests per channel.
+         */
+        public ConfigBuilder pipeliningPerRoute(Map<String, Integer> pipeliningPerRoute) {
+            this.pipeliningPerRoute = pipeliningPerRoute;
+            return this;
+        }
+
+        /**
+         * talk HTTP/2 over cleartext to the routes, multiplexing the requests over the
+         * channels. The value is the max number of concurrent streams per channel.
+         */
+        public ConfigBuilder http2PerRoute(Map<String, Integer> http2PerRoute) {
+            this.http2PerRoute = http2PerRoute;
+            return this;
+        }
+
+        /**
+         * connect the HTTP/2 routes with the HTTP/1.1 upgrade, falling back to HTTP/1.1 if
+         * the server rejects it. By default the routes are connected with prior knowledge.
+         */
+        public ConfigBuilder http2Upgrade(boolean http2Upgrade) {
+            this.http2Upgrade = http2Upgrade;
+            return this;
+        }
+
+        /**
+         * consolidate the flushes of the requests written to a channel in the same event loop
+         * tick, so that the concurrent requests of the pipelined and HTTP/2 routes leave in a
+         * few large writes. At most maxPendingFlushes flushes are held back before one is
+         * written. 0, the default, writes every flush.
+         */
+        public ConfigBuilder flushConsolidation(int maxPendingFlushes) {
+            this.flushConsolidation = maxPendingFlushes;
+            return this;
+        }
+
+        public ConfigBuilder addressResolver(NettyAddressResolver addressResolver) {
+            this.addressResolver = addressResolver;
+            return this;
+        }
+
+        public ConfigBuilder resolverCacheTtlInMilliSecondes(int resolverCacheTtlInMilliSecondes) {
+            this.resolverCacheTtlInMilliSecondes = resolverCacheTtlInMilliSecondes;
+            return this;
+        }
+
+        public ConfigBuilder resolverNegativeCacheTtlInMilliSecondes(int resolverNegativeCacheTtlInMilliSecondes) {
+            this.resolverNegativeCacheTtlInMilliSecondes = resolverNegativeCacheTtlInMilliSecondes;
+            return this;
+        }
+
         public ConfigBuilder connectTimeOutInMilliSecondes(int connectTimeOutInMilliSecondes) {
             this.connectTimeOutInMilliSecondes = connectTimeOutInMilliSecondes;
             return this;
@@ -137,11 +479,238 @@ public class NettyHttpClient {
             return this;
         }
 
+        /**
+         * NettyTransport.AUTO, the default, picks the native epoll transport when it is
+         * available and falls back to NIO. Linux-only socket options, e.g. of
+         * EpollChannelOption, can be set with option() once epoll is in use.
+         */
+        public ConfigBuilder transport(NettyTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * if false, the default, responses keep the buffers read from the channel and every
+         * response must be released by NettyHttpResponse.release() or close(). If true, the
+         * bodies are copied to the heap, which costs an allocation and a copy per chunk, and
+         * the responses need not be released.
+         */
+        public ConfigBuilder copyResponseContent(boolean copyResponseContent) {
+            this.copyResponseContent = copyResponseContent;
+            return this;
+        }
+
+        /**
+         * send Accept-Encoding: gzip,deflate unless a request sets its own, and decode the
+         * compressed responses as they are read, so that the response contents are always
+         * plain. Disabled by default.
+         */
+        public ConfigBuilder contentDecompression(boolean contentDecompression) {
+            this.contentDecompression = contentDecompression;
+            return this;
+        }
+
+        /**
+         * gzip the in-memory body of a request with at least minSizeInBytes bytes, unless it
+         * sets its own Content-Encoding. Smaller bodies are not worth the CPU. Bodies streamed
+         * from a file or a chunk source are sent as they are. 0, the default, compresses
+         * nothing.
+         */
+        public ConfigBuilder requestCompressionThreshold(int minSizeInBytes) {
+            this.requestCompressionThreshold = minSizeInBytes;
+            return this;
+        }
+
+        /**
+         * fail a request with a TimeoutException and reclaim its channel if its response is
+         * not completed within the timeout after it is sent, 0 by default, which means no
+         * timeout. See also NettyHttpRequest.responseTimeOutInMilliSecondes().
+         */
+        public ConfigBuilder responseTimeOutInMilliSecondes(int responseTimeOutInMilliSecondes) {
+            this.responseTimeOutInMilliSecondes = responseTimeOutInMilliSecondes;
+            return this;
+        }
+
+        public ConfigBuilder responseTimeOutPerRoute(Map<String, Integer> responseTimeOutPerRoute) {
+            this.responseTimeOutPerRoute = responseTimeOutPerRoute;
+            return this;
+        }
+
+        /**
+         * responses larger than maxContentLength fail with a TooLongFrameException and
+         * their channels are closed, 1MB by default
+         */
+        public ConfigBuilder maxContentLength(int maxContentLength) {
+            this.maxContentLength = maxContentLength;
+            return this;
+        }
+
+        public ConfigBuilder maxContentLengthPerRoute(Map<String, Integer> maxContentLengthPerRoute) {
+            this.maxContentLengthPerRoute = maxContentLengthPerRoute;
+            return this;
+        }
+
+        /**
+         * NettyAggregationPolicy.COMPOSITE keeps the response chunks as they are received
+         * instead of merging them, the body is still buffered in full. STREAM never buffers
+         * the body, the requests of the route must be sent with a NettyHttpStreamHandler.
+         */
+        public ConfigBuilder aggregationPolicyPerRoute(
+                                                      Map<String, NettyAggregationPolicy> aggregationPolicyPerRoute) {
+            this.aggregationPolicyPerRoute = aggregationPolicyPerRoute;
+            return this;
+        }
+
+        /**
+         * NettyConcurrencyLimitPolicy.AIMD or GRADIENT adapts the number of outstanding
+         * requests of a route to its latency, and rejects the requests beyond the limit with
+         * a RejectedExecutionException instead of queueing them
+         */
+        public ConfigBuilder concurrencyLimitPerRoute(
+                                                     Map<String, NettyConcurrencyLimitPolicy> concurrencyLimitPerRoute) {
+            this.concurrencyLimitPerRoute = concurrencyLimitPerRoute;
+            return this;
+        }
+
+        /**
+         * upper bound of the adaptive limits, 200 by default
+         */
+        public ConfigBuilder maxConcurrencyLimit(int maxConcurrencyLimit) {
+            this.maxConcurrencyLimit = maxConcurrencyLimit;
+            return this;
+        }
+
+        /**
+         * logical services, a request to http://user-service/... is sent to one of the
+         * endpoints listed for "user-service:80". The endpoints can be replaced later by
+         * NettyHttpClient.setService().
+         */
+        public ConfigBuilder services(Map<String, List<InetSocketAddress>> services) {
+            this.services = services;
+            return this;
+        }
+
+        /**
+         * how an endpoint of a service is chosen, POWER_OF_TWO_CHOICES by default
+         */
+        public ConfigBuilder loadBalancePolicy(NettyLoadBalancePolicy loadBalancePolicy) {
+            this.loadBalancePolicy = loadBalancePolicy;
+            return this;
+        }
+
+        /**
+         * open the circuit breaker of a route after consecutiveFailures failures in a row,
+         * or failureRatePercent percent failures of a window of failureRateWindow requests,
+         * either 0 to disable. Requests to an open route are rejected at once with a
+         * RejectedExecutionException. After openTimeInMilliSecondes, halfOpenProbes
+         * requests are let through, and the breaker closes once they all succeed.
+         */
+        public ConfigBuilder circuitBreaker(int consecutiveFailures, int failureRatePercent,
+                                            int failureRateWindow, int openTimeInMilliSecondes,
+                                            int halfOpenProbes) {
+            this.circuitBreakerConsecutiveFailures = consecutiveFailures;
+            this.circuitBreakerFailureRatePercent = failureRatePercent;
+            this.circuitBreakerFailureRateWindow = failureRateWindow;
+            this.circuitBreakerOpenTimeInMilliSecondes = openTimeInMilliSecondes;
+            this.circuitBreakerHalfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        /**
+         * send a duplicate of a GET, HEAD, OPTIONS, PUT or DELETE request if its response
+         * is not completed within the percentile of the latency of its route, e.g. 95, or
+         * within delayInMilliSecondes until the percentile is known, not at all if it is 0.
+         * The first response wins and the other request is aborted. At most budgetPercent
+         * duplicates are sent per 100 requests.
+         */
+        public ConfigBuilder hedging(int delayInMilliSecondes, double percentile,
+                                     int budgetPercent) {
+            this.hedgeDelayInMilliSecondes = delayInMilliSecondes;
+            this.hedgePercentile = percentile;
+            this.hedgeBudgetPercent = budgetPercent;
+            return this;
+        }
+
+        /**
+         * allocator of the channel buffers, the same as option(ChannelOption.ALLOCATOR, ...)
+         */
+        public ConfigBuilder allocator(ByteBufAllocator allocator) {
+            return option(ChannelOption.ALLOCATOR, allocator);
+        }
+
+        /**
+         * use a dedicated {@link PooledByteBufAllocator} preferring direct buffers. Each of
+         * the arenas, shared by the event loops, grows in chunks of pageSize &lt;&lt; maxOrder
+         * bytes, e.g. 8192 &lt;&lt; 11 = 16MB, and buffers larger than a chunk are not pooled.
+         */
+        public ConfigBuilder pooledAllocator(int nHeapArena, int nDirectArena, int pageSize,
+                                             int maxOrder) {
+            return allocator(new PooledByteBufAllocator(true, nHeapArena, nDirectArena,
+                pageSize, maxOrder, PooledByteBufAllocator.defaultSmallCacheSize(),
+                PooledByteBufAllocator.defaultNormalCacheSize(), PooledByteBufAllocator
+                    .defaultUseCacheForAllThreads()));
+        }
+
         public ConfigBuilder forbidForceConnect(boolean forbidForceConnect) {
             this.forbidForceConnect = forbidForceConnect;
             return this;
         }
 
+        /**
+         * listeners of {@link NettyHttpResponseFuture} run inline on the event loop by
+         * default, which is cheapest but stalls I/O if a listener blocks. Slow listeners
+         * should be run on a user-supplied executor instead.
+         */
+        public ConfigBuilder completionExecutor(Executor completionExecutor) {
+            this.completionExecutor = completionExecutor;
+            return this;
+        }
+
+        /**
+         * value is true indicates that the channels of each route are pooled per event loop.
+         * Requests sent from an event loop thread, e.g. by a listener, prefer channels of
+         * the same loop, so the request path stays on one thread.
+         */
+        public ConfigBuilder eventLoopAffinity(boolean eventLoopAffinity) {
+            this.eventLoopAffinity = eventLoopAffinity;
+            return this;
+        }
+
+        /**
+         * value is false indicates that no metrics are recorded, true by default
+         */
+        public ConfigBuilder metrics(boolean metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * export the metrics of every route to the platform MBeanServer under the name,
+         * which must be unique among the clients of the JVM
+         */
+        public ConfigBuilder jmxName(String jmxName) {
+            this.jmxName = jmxName;
+            return this;
+        }
+
+        /**
+         * listener notified of the acquire, connect, write, first byte, completion, release
+         * and close of the requests and channels. Nothing is notified by default.
+         */
+        public ConfigBuilder eventListener(NettyClientEventListener eventListener) {
+            this.eventListener = eventListener;
+            return this;
+        }
+
+        /**
+         * hex dump the traffic of every nth channel at INFO level, for debugging only. 0, the
+         * default, disables the wire logging.
+         */
+        public ConfigBuilder wireLogSampling(int everyNthChannel) {
+            this.wireLogSampling = everyNthChannel;
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         public Map<ChannelOption, Object> getOptions() {
             return options;
@@ -159,6 +728,42 @@ public class NettyHttpClient {
             return maxPerRoute;
         }
 
+        public Map<String, Integer> getMinIdlePerRoute() {
+            return minIdlePerRoute;
+        }
+
+        public int getMinIdleCheckIntervalInMilliSecondes() {
+            return minIdleCheckIntervalInMilliSecondes;
+        }
+
+        public Map<String, Integer> getPipeliningPerRoute() {
+            return pipeliningPerRoute;
+        }
+
+        public Map<String, Integer> getHttp2PerRoute() {
+            return http2PerRoute;
+        }
+
+        public boolean getHttp2Upgrade() {
+            return http2Upgrade;
+        }
+
+        public int getFlushConsolidation() {
+            return flushConsolidation;
+        }
+
+        public NettyAddressResolver getAddressResolver() {
+            return addressResolver;
+        }
+
+        public int getResolverCacheTtlInMilliSecondes() {
+            return resolverCacheTtlInMilliSecondes;
+        }
+
+        public int getResolverNegativeCacheTtlInMilliSecondes() {
+            return resolverNegativeCacheTtlInMilliSecondes;
+        }
+
         public int getConnectTimeOutInMilliSecondes() {
             return connectTimeOutInMilliSecondes;
         }
@@ -167,8 +772,116 @@ public class NettyHttpClient {
             return this.customGroup;
         }
 
+        public NettyTransport getTransport() {
+            return transport;
+        }
+
+        public boolean getCopyResponseContent() {
+            return copyResponseContent;
+        }
+
+        public boolean getContentDecompression() {
+            return contentDecompression;
+        }
+
+        public int getRequestCompressionThreshold() {
+            return requestCompressionThreshold;
+        }
+
+        public int getResponseTimeOutInMilliSecondes() {
+            return responseTimeOutInMilliSecondes;
+        }
+
+        public Map<String, Integer> getResponseTimeOutPerRoute() {
+            return responseTimeOutPerRoute;
+        }
+
+        public int getMaxContentLength() {
+            return maxContentLength;
+        }
+
+        public Map<String, Integer> getMaxContentLengthPerRoute() {
+            return maxContentLengthPerRoute;
+        }
+
+        public Map<String, NettyAggregationPolicy> getAggregationPolicyPerRoute() {
+            return aggregationPolicyPerRoute;
+        }
+
+        public Map<String, NettyConcurrencyLimitPolicy> getConcurrencyLimitPerRoute() {
+            return concurrencyLimitPerRoute;
+        }
+
+        public int getMaxConcurrencyLimit() {
+            return maxConcurrencyLimit;
+        }
+
+        public Map<String, List<InetSocketAddress>> getServices() {
+            return services;
+        }
+
+        public NettyLoadBalancePolicy getLoadBalancePolicy() {
+            return loadBalancePolicy;
+        }
+
+        public int getCircuitBreakerConsecutiveFailures() {
+            return circuitBreakerConsecutiveFailures;
+        }
+
+        public int getCircuitBreakerFailureRatePercent() {
+            return circuitBreakerFailureRatePercent;
+        }
+
+        public int getCircuitBreakerFailureRateWindow() {
+            return circuitBreakerFailureRateWindow;
+        }
+
+        public int getCircuitBreakerOpenTimeInMilliSecondes() {
+            return circuitBreakerOpenTimeInMilliSecondes;
+        }
+
+        public int getCircuitBreakerHalfOpenProbes() {
+            return circuitBreakerHalfOpenProbes;
+        }
+
+        public int getHedgeDelayInMilliSecondes() {
+            return hedgeDelayInMilliSecondes;
+        }
+
+        public double getHedgePercentile() {
+            return hedgePercentile;
+        }
+
+        public int getHedgeBudgetPercent() {
+            return hedgeBudgetPercent;
+        }
+
         public boolean getForbidForceConnect() {
             return this.forbidForceConnect;
         }
+
+        public Executor getCompletionExecutor() {
+            return this.completionExecutor;
+        }
+
+        public boolean getEventLoopAffinity() {
+            return this.eventLoopAffinity;
+        }
+
+        public boolean getMetrics() {
+            return this.metrics;
+        }
+
+        public String getJmxName() {
+            return this.jmxName;
+        }
+
+        public NettyClientEventListener getEventListener() {
+            return this.eventListener;
+        }
+
+        public int getWireLogSampling() {
+            return this.wireLogSampling;
+        }
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A composable result, similar to <code>CompletableFuture</code>, obtained from
+ * {@link NettyHttpResponseFuture#toCompletionStage()}. A stage completes with the
+ * successful result or fails with the cause. Dependent stages and callbacks run on the
+ * thread which completes this stage.
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyHttpCompletionStage<T> implements Future<T> {
+    private static final Logger                  logger      = Logger
+                                                                 .getLogger(NettyHttpCompletionStage.class
+                                                                     .getName());
+
+    private final CountDownLatch                 latch       = new CountDownLatch(1);
+
+    private final AtomicBoolean                  isProcessed = new AtomicBoolean(false);
+
+    private volatile T                           result;
+
+    private volatile Throwable                   cause;
+
+    private List<NettyHttpCallback<? super T>>   callbacks   = new ArrayList<NettyHttpCallback<? super T>>(
+                                                                 2);
+
+    public boolean complete(T result) {
+        if (isProcessed.getAndSet(true)) {
+            return false;
+        }
+        this.result = result;
+        latch.countDown();
+        notifyCallbacks();
+        return true;
+    }
+
+    public boolean fail(Throwable cause) {
+        if (null == cause) {
+            throw new NullPointerException("cause");
+        }
+        if (isProcessed.getAndSet(true)) {
+            return false;
+        }
+        this.cause = cause;
+        latch.countDown();
+        notifyCallbacks();
+        return true;
+    }
+
+    /**
+     * register a callback, which is invoked immediately if this stage is already completed
+     * 
+     * @param callback
+     * @return this stage
+     */
+    public NettyHttpCompletionStage<T> whenComplete(NettyHttpCallback<? super T> callback) {
+        if (null == callback) {
+            throw new NullPointerException("callback");
+        }
+        synchronized (this) {
+            if (null != callbacks) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notifyCallback(callback);
+        return this;
+    }
+
+    /**
+     * @param function
+     *            applied to the result when this stage succeeds
+     * @return a new stage completed with the value returned by the function
+     */
+    public <U> NettyHttpCompletionStage<U> thenApply(final NettyHttpFunction<? super T, ? extends U> function) {
+        final NettyHttpCompletionStage<U> next = new NettyHttpCompletionStage<U>();
+        whenComplete(new NettyHttpCallback<T>() {
+
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    next.complete(function.apply(result));
+                } catch (Throwable e) {
+                    next.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                next.fail(cause);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * @param function
+     *            applied to the result when this stage succeeds, e.g. to send a follow-up
+     *            request
+     * @return a new stage completed when the stage returned by the function completes
+     */
+    public <U> NettyHttpCompletionStage<U> thenCompose(final NettyHttpFunction<? super T, NettyHttpCompletionStage<U>> function) {
+        final NettyHttpCompletionStage<U> next = new NettyHttpCompletionStage<U>();
+        whenComplete(new NettyHttpCallback<T>() {
+
+            @Override
+            public void onSuccess(T result) {
+                NettyHttpCompletionStage<U> stage;
+                try {
+                    stage = function.apply(result);
+                } catch (Throwable e) {
+                    next.fail(e);
+                    return;
+                }
+                if (null == stage) {
+                    next.fail(new NullPointerException("stage"));
+                    return;
+                }
+                stage.whenComplete(new NettyHttpCallback<U>() {
+
+                    @Override
+                    public void onSuccess(U result) {
+                        next.complete(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable cause) {
+                        next.fail(cause);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                next.fail(cause);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * fail this stage with a {@link CancellationException}. The underlying request is not
+     * affected.
+     * 
+     * @see java.util.concurrent.Future#cancel(boolean)
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cause instanceof CancellationException;
+    }
+
+    @Override
+    public boolean isDone() {
+        return 0 == latch.getCount();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                                             TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        Throwable cause = this.cause;
+        if (null == cause) {
+            return result;
+        }
+        if (cause instanceof CancellationException) {
+            throw (CancellationException) cause;
+        }
+        throw new ExecutionException(cause);
+    }
+
+    private void notifyCallbacks() {
+        List<NettyHttpCallback<? super T>> toNotify;
+        synchronized (this) {
+            toNotify = callbacks;
+            callbacks = null;
+        }
+        for (NettyHttpCallback<? super T> callback : toNotify) {
+            notifyCallback(callback);
+        }
+    }
+
+    private void notifyCallback(NettyHttpCallback<? super T> callback) {
+        try {
+            if (null == cause) {
+                callback.onSuccess(result);
+            } else {
+                callback.onFailure(cause);
+            }
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "callback " + callback + " threw an exception", e);
+        }
+    }
+}
@@ -17,7 +17,9 @@ package com.zhang.client;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.handler.stream.ChunkedInput;
 
+import java.io.File;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.HashMap;
@@ -28,11 +30,20 @@ import java.util.Map;
  */
 public class NettyHttpRequest {
 
-    private URI                 uri;
+    private URI                   uri;
 
-    private Map<String, Object> headers;
+    private Map<String, Object>   headers;
 
-    private ByteBuf             content;
+    private ByteBuf               content;
+
+    // body streamed from a file, sent with zero-copy where possible
+    private File                  file;
+
+    // body pulled chunk by chunk, sent with chunked transfer encoding
+    private ChunkedInput<ByteBuf> chunkSource;
+
+    // deadline of the response, 0 means the response timeout of the route
+    private int                   responseTimeOutInMilliSecondes;
     
     private static final Charset DEFAUT_CHARSET = Charset.forName("GBK");
 
@@ -96,6 +107,41 @@ public class NettyHttpRequest {
         return this;
     }
 
+    /**
+     * stream the body from the file when the request is sent, without loading it into
+     * memory. The file must not change until the request is done.
+     */
+    public NettyHttpRequest content(File file) {
+        if (null == file) {
+            throw new NullPointerException("file");
+        }
+        this.file = file;
+        return this;
+    }
+
+    /**
+     * pull the body from the chunk source when the request is sent, with chunked transfer
+     * encoding. The source is closed once it is written or the request is dropped, and a
+     * request with a chunk source can only be sent once.
+     */
+    public NettyHttpRequest content(ChunkedInput<ByteBuf> chunkSource) {
+        if (null == chunkSource) {
+            throw new NullPointerException("chunkSource");
+        }
+        this.chunkSource = chunkSource;
+        return this;
+    }
+
+    /**
+     * fail the request with a <code>TimeoutException</code> if its response is not
+     * completed within the timeout after it is sent, overriding the response timeout of
+     * the route
+     */
+    public NettyHttpRequest responseTimeOutInMilliSecondes(int responseTimeOutInMilliSecondes) {
+        this.responseTimeOutInMilliSecondes = responseTimeOutInMilliSecondes;
+        return this;
+    }
+
     public URI getUri() {
         return uri;
     }
@@ -107,4 +153,16 @@ public class NettyHttpRequest {
     public ByteBuf getContent() {
         return content;
     }
+
+    public File getFile() {
+        return file;
+    }
+
+    public ChunkedInput<ByteBuf> getChunkSource() {
+        return chunkSource;
+    }
+
+    public int getResponseTimeOutInMilliSecondes() {
+        return responseTimeOutInMilliSecondes;
+    }
 }
@@ -15,19 +15,27 @@
  */
 package com.zhang.client;
 
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
 
 /**
  * @author xianwu.zhang
  */
-public class NettyHttpResponse {
+public class NettyHttpResponse implements Closeable {
     private volatile boolean            success = false;
     private volatile HttpResponseStatus status;
     private volatile HttpVersion        version;
@@ -35,31 +43,84 @@ public class NettyHttpResponse {
     private volatile List<ByteBuf>      contents;
     private volatile Throwable          cause;
 
+    // the contents composed into a single buffer, created on first access. It does not
+    // retain the contents, which are released by release() alone
+    private CompositeByteBuf            composite;
+
+    private static final Charset        DEFAULT_CHARSET = Charset.forName("GBK");
+
     public NettyHttpResponse() {
         super();
     }
 
     public String getResponseBody() {
-        return getResponseBody(Charset.forName("GBK"));
+        return getResponseBody(DEFAULT_CHARSET);
     }
 
+    /**
+     * decode the whole body in one pass over the single buffer of {@link #getContent()}, so
+     * characters spanning two chunks are decoded correctly
+     */
     public String getResponseBody(Charset charset) {
+        List<ByteBuf> contents = this.contents;
         if (null == contents || 0 == contents.size()) {
             return null;
         }
-        StringBuilder responseBody = new StringBuilder();
+        return getContent().toString(charset);
+    }
+
+    /**
+     * @return the body as a single buffer, a {@link CompositeByteBuf} if the body was received
+     *         in several chunks. The buffer belongs to the response and is released with it.
+     */
+    public synchronized ByteBuf getContent() {
+        if (null != composite) {
+            return composite;
+        }
+        List<ByteBuf> contents = this.contents;
+        if (null == contents || 0 == contents.size()) {
+            return Unpooled.EMPTY_BUFFER;
+        }
+        if (1 == contents.size()) {
+            return contents.get(0);
+        }
+        // not leak tracked, since it is never released itself, and sized so that the
+        // contents are never consolidated into a new buffer
+        composite = new CompositeByteBuf(contents.get(0).alloc(), false, contents.size());
         for (ByteBuf content : contents) {
-            responseBody.append(content.toString(charset));
+            composite.addComponent(true, content);
         }
+        return composite;
+    }
+
+    /**
+     * @return a stream over the body, independent of other views
+     */
+    public InputStream getContentAsStream() {
+        return new ByteBufInputStream(getContent().duplicate());
+    }
+
+    /**
+     * @return the body as a {@link ByteBuffer}, sharing the memory of the body if it was
+     *         received in one chunk
+     */
+    public ByteBuffer getContentAsByteBuffer() {
+        return getContent().nioBuffer();
+    }
 
-        return responseBody.toString();
+    /**
+     * @return a copy of the body
+     */
+    public byte[] getContentAsBytes() {
+        return ByteBufUtil.getBytes(getContent());
     }
 
-    public void addContent(ByteBuf byteBuf) {
+    public synchronized void addContent(ByteBuf byteBuf) {
         if (null == contents) {
             contents = new ArrayList<ByteBuf>();
         }
         contents.add(byteBuf);
+        composite = null;
     }
 
     /**
@@ -87,8 +148,9 @@ public class NettyHttpResponse {
     /**
      * @param contents the contents to set
      */
-    public void setContents(List<ByteBuf> contents) {
+    public synchronized void setContents(List<ByteBuf> contents) {
         this.contents = contents;
+        composite = null;
     }
 
     /**
@@ -155,4 +217,33 @@ public class NettyHttpResponse {
         this.cause = cause;
     }
 
+    /**
+     * release the buffers of the body. The body is not readable afterwards. A response must
+     * be released once it is consumed, otherwise the pooled buffers leak, unless its body is
+     * copied, see <code>ConfigBuilder.copyResponseContent</code>.
+     * 
+     * @return false if the response has no body or is already released
+     */
+    public synchronized boolean release() {
+        composite = null;
+        List<ByteBuf> contents = this.contents;
+        this.contents = null;
+        if (null == contents) {
+            return false;
+        }
+        for (ByteBuf content : contents) {
+            ReferenceCountUtil.release(content);
+        }
+        return true;
+    }
+
+    /**
+     * same as {@link #release()}, so that the response can be used in try-with-resources
+     * 
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        release();
+    }
 }
@@ -16,19 +16,37 @@
 package com.zhang.client;
 
 import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.Timeout;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import com.zhang.metrics.NettyRouteMetrics;
+import com.zhang.pool.NettyAcquireTimeoutException;
+import com.zhang.pool.NettyCircuitBreaker;
+import com.zhang.pool.NettyConcurrencyLimiter;
 import com.zhang.util.NettyHttpResponseBuilder;
 
 /**
  * @author xianwu.zhang
  */
 public class NettyHttpResponseFuture {
+    private static final Logger               logger      = Logger
+                                                              .getLogger(NettyHttpResponseFuture.class
+                                                                  .getName());
+
     private final CountDownLatch              latch       = new CountDownLatch(1);
 
     private volatile boolean                  isDone      = false;
@@ -39,24 +57,135 @@ public class NettyHttpResponseFuture {
 
     private volatile NettyHttpResponseBuilder responseBuilder;
 
+    // built once when the future is completed, the same instance for every caller
+    private volatile NettyHttpResponse        response;
+
     private volatile Channel                  channel;
 
+    // handler of a streamed response, null means the body is aggregated
+    private volatile NettyHttpStreamHandler   streamHandler;
+
+    // copy the body to the heap instead of retaining the buffers read from the channel
+    private volatile boolean                  copyContent;
+
+    // the request is a HEAD, whose response has no body whatever its headers say
+    private volatile boolean                  headRequest;
+
+    // System.nanoTime() when the request was sent
+    private volatile long                     startTime;
+
+    // metrics of the route, null if the metrics are disabled
+    private volatile NettyRouteMetrics        routeMetrics;
+
+    // deadline of the response, cancelled once the future is completed
+    private volatile Timeout                  responseTimeout;
+
+    // listener of the client events, null if none is registered
+    private volatile NettyClientEventListener eventListener;
+
+    // the write of the request has been reported to the event listener
+    private volatile boolean                  writeReported;
+
+    // adaptive limit which admitted the request, null if the route has none
+    private volatile NettyConcurrencyLimiter  concurrencyLimiter;
+
+    // outstanding requests of the service endpoint the request is sent to, or null
+    private volatile AtomicInteger            inFlight;
+
+    // health of the route, null if circuit breaking is disabled
+    private volatile NettyCircuitBreaker      circuitBreaker;
+
+    // admission of the request by the circuit breaker
+    private volatile NettyCircuitBreaker.Permit circuitBreakerPermit;
+
+    // executor for listeners, null means listeners run on the thread completing the future
+    private final Executor                    listenerExecutor;
+
+    private List<NettyHttpResponseListener>   listeners   = new ArrayList<NettyHttpResponseListener>(
+                                                              1);
+
+    public NettyHttpResponseFuture() {
+        this(null);
+    }
+
+    /**
+     * @param listenerExecutor
+     *            executor to run listeners on. If null, listeners are run inline by the
+     *            thread which completes the future, usually the event loop of the channel.
+     */
+    public NettyHttpResponseFuture(Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+    }
+
     public boolean cancel(Throwable cause) {
+        return cancel(cause, true);
+    }
+
+    /**
+     * fail the future like {@link #cancel(Throwable)}, without counting a failure of its
+     * route in the metrics, the concurrency limiter or the circuit breaker, e.g. for the
+     * losing attempt of a hedged request
+     */
+    public boolean discard(Throwable cause) {
+        return cancel(cause, false);
+    }
+
+    private boolean cancel(Throwable cause, boolean failure) {
         if (isProcessed.getAndSet(true)) {
             return false;
         }
 
+        // the partially received body is never handed to the caller
+        NettyHttpResponseBuilder partialBuilder = responseBuilder;
+        if (null != partialBuilder) {
+            partialBuilder.releaseContents();
+        }
         responseBuilder = new NettyHttpResponseBuilder();
         responseBuilder.setSuccess(false);
         responseBuilder.setCause(cause);
         isCancel = true;
+        cancelResponseTimeout();
+        NettyRouteMetrics routeMetrics = this.routeMetrics;
+        if (null != routeMetrics && failure) {
+            routeMetrics.recordFailure(cause);
+        }
+        NettyConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiter;
+        if (null != concurrencyLimiter) {
+            // waiting for a channel of the pool says nothing about the latency of the route
+            if (failure && cause instanceof TimeoutException
+                && !(cause instanceof NettyAcquireTimeoutException)) {
+                concurrencyLimiter.onDropped();
+            } else {
+                concurrencyLimiter.onIgnored();
+            }
+        }
+        decrementInFlight();
+        NettyCircuitBreaker circuitBreaker = this.circuitBreaker;
+        if (null != circuitBreaker) {
+            if (!failure || cause instanceof NettyAcquireTimeoutException) {
+                // the pool of the caller is saturated, the route may well be healthy
+                circuitBreaker.onIgnored(circuitBreakerPermit);
+            } else if (cause instanceof IOException || cause instanceof TimeoutException) {
+                circuitBreaker.onFailure(circuitBreakerPermit);
+            } else {
+                circuitBreaker.onIgnored(circuitBreakerPermit);
+            }
+        }
+        response = responseBuilder.build();
+        // listeners added once get() returns are notified by addListener itself
+        List<NettyHttpResponseListener> toNotify = detachListeners();
         latch.countDown();
+        NettyClientEventListener eventListener = this.eventListener;
+        if (null != eventListener) {
+            eventListener.requestCompleted(this);
+        }
+        notifyListeners(toNotify);
         return true;
     }
 
     public NettyHttpResponse get() throws InterruptedException, ExecutionException {
         latch.await();
-        return responseBuilder.build();
+        return response;
     }
 
     public NettyHttpResponse get(long timeout, TimeUnit unit) throws TimeoutException,
@@ -64,7 +193,7 @@ public class NettyHttpResponseFuture {
         if (!latch.await(timeout, unit)) {
             throw new TimeoutException();
         }
-        return responseBuilder.build();
+        return response;
     }
 
     public boolean done() {
@@ -72,10 +201,210 @@ public class NettyHttpResponseFuture {
             return false;
         }
         isDone = true;
+        cancelResponseTimeout();
+        long elapsed = System.nanoTime() - startTime;
+        NettyRouteMetrics routeMetrics = this.routeMetrics;
+        if (null != routeMetrics) {
+            routeMetrics.recordResponse(elapsed);
+        }
+        NettyConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiter;
+        if (null != concurrencyLimiter) {
+            concurrencyLimiter.onSuccess(elapsed);
+        }
+        decrementInFlight();
+        NettyCircuitBreaker circuitBreaker = this.circuitBreaker;
+        if (null != circuitBreaker) {
+            HttpResponse response = null == responseBuilder ? null : responseBuilder
+                .getPendingResponse();
+            if (null != response && response.status().code() >= 500) {
+                circuitBreaker.onFailure(circuitBreakerPermit);
+            } else {
+                circuitBreaker.onSuccess(circuitBreakerPermit);
+            }
+        }
+        response = responseBuilder.build();
+        // listeners added once get() returns are notified by addListener itself
+        List<NettyHttpResponseListener> toNotify = detachListeners();
         latch.countDown();
+        NettyClientEventListener eventListener = this.eventListener;
+        if (null != eventListener) {
+            eventListener.requestCompleted(this);
+        }
+        notifyListeners(toNotify);
         return true;
     }
 
+    /**
+     * record the time to the first byte in the metrics of the route and notify the event
+     * listener, called when the response headers arrive
+     * 
+     * @param channel
+     *            channel the response is received on
+     */
+    public void headersReceived(Channel channel) {
+        NettyRouteMetrics routeMetrics = this.routeMetrics;
+        if (null != routeMetrics) {
+            routeMetrics.recordFirstByte(System.nanoTime() - startTime);
+        }
+        NettyClientEventListener eventListener = this.eventListener;
+        if (null != eventListener) {
+            // the response proves the request was written, even if the listener of the
+            // write has not run yet
+            requestWritten(channel, null);
+            eventListener.responseReceived(channel, this);
+        }
+    }
+
+    /**
+     * notify the event listener that the request has been written, or failed to be written.
+     * The write is reported once, before the response headers at the latest. Called on the
+     * event loop of the channel, like {@link #headersReceived(Channel)}.
+     * 
+     * @param channel
+     *            channel the request is written to
+     * @param cause
+     *            null if the request was written, otherwise the cause of the failure
+     */
+    public void requestWritten(Channel channel, Throwable cause) {
+        NettyClientEventListener eventListener = this.eventListener;
+        if (null == eventListener || writeReported) {
+            return;
+        }
+        writeReported = true;
+        eventListener.requestWritten(channel, this, cause);
+    }
+
+    /**
+     * record the time waited for a channel in the metrics of the route and notify the event
+     * listener, called when the request is assigned to a channel
+     * 
+     * @param channel
+     *            channel the request is sent on
+     */
+    public void channelAcquired(Channel channel) {
+        NettyRouteMetrics routeMetrics = this.routeMetrics;
+        if (null != routeMetrics) {
+            routeMetrics.recordAcquireWait(System.nanoTime() - startTime);
+        }
+        NettyClientEventListener eventListener = this.eventListener;
+        if (null != eventListener) {
+            eventListener.channelAcquired(channel, this);
+        }
+    }
+
+    /**
+     * @return the response if the future is done or cancelled, otherwise null
+     */
+    public NettyHttpResponse getNow() {
+        if (0 != latch.getCount()) {
+            return null;
+        }
+        return response;
+    }
+
+    /**
+     * register a listener notified when the future is done or cancelled. If the future is
+     * already completed, the listener is notified immediately.
+     * 
+     * @param listener
+     * @return this future
+     */
+    public NettyHttpResponseFuture addListener(NettyHttpResponseListener listener) {
+        if (null == listener) {
+            throw new NullPointerException("listener");
+        }
+        synchronized (this) {
+            if (null != listeners) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        notifyListener(listener);
+        return this;
+    }
+
+    /**
+     * adapt this future to a {@link NettyHttpCompletionStage}, which succeeds with the
+     * response if it is successful, and fails with its cause otherwise. The response of a
+     * stage cancelled before it completes is released.
+     *
+     * @return
+     */
+    public NettyHttpCompletionStage<NettyHttpResponse> toCompletionStage() {
+        final NettyHttpCompletionStage<NettyHttpResponse> stage = new NettyHttpCompletionStage<NettyHttpResponse>();
+        addListener(new NettyHttpResponseListener() {
+
+            @Override
+            public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+                NettyHttpResponse response = future.getNow();
+                if (response.isSuccess()) {
+                    // nobody receives the response of a stage already cancelled
+                    if (!stage.complete(response)) {
+                        response.release();
+                    }
+                } else if (null != response.getCause()) {
+                    stage.fail(response.getCause());
+                } else {
+                    stage.fail(new IOException("request failed"));
+                }
+            }
+        });
+        return stage;
+    }
+
+    private void cancelResponseTimeout() {
+        Timeout responseTimeout = this.responseTimeout;
+        if (null != responseTimeout) {
+            responseTimeout.cancel();
+        }
+    }
+
+    private void decrementInFlight() {
+        AtomicInteger inFlight = this.inFlight;
+        if (null != inFlight) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private synchronized List<NettyHttpResponseListener> detachListeners() {
+        List<NettyHttpResponseListener> toNotify = listeners;
+        listeners = null;
+        return toNotify;
+    }
+
+    private void notifyListeners(List<NettyHttpResponseListener> toNotify) {
+        for (NettyHttpResponseListener listener : toNotify) {
+            notifyListener(listener);
+        }
+    }
+
+    private void notifyListener(final NettyHttpResponseListener listener) {
+        if (null != listenerExecutor) {
+            try {
+                listenerExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        invokeListener(listener);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.log(Level.WARNING, "listener executor rejected " + listener
+                                          + ", run it inline", e);
+            }
+        }
+        invokeListener(listener);
+    }
+
+    private void invokeListener(NettyHttpResponseListener listener) {
+        try {
+            listener.operationComplete(this);
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "listener " + listener + " threw an exception", e);
+        }
+    }
+
     public boolean isCancelled() {
         return isCancel;
     }
@@ -102,6 +431,64 @@ public class NettyHttpResponseFuture {
         this.channel = channel;
     }
 
+    /**
+     * Getter method for property <tt>streamHandler</tt>.
+     * 
+     * @return property value of streamHandler
+     */
+    public NettyHttpStreamHandler getStreamHandler() {
+        return streamHandler;
+    }
+
+    /**
+     * Setter method for property <tt>streamHandler</tt>. Must be set before the request is
+     * sent.
+     * 
+     * @param streamHandler value to be assigned to property streamHandler
+     */
+    public void setStreamHandler(NettyHttpStreamHandler streamHandler) {
+        this.streamHandler = streamHandler;
+    }
+
+    /**
+     * Getter method for property <tt>copyContent</tt>.
+     * 
+     * @return property value of copyContent
+     */
+    public boolean isCopyContent() {
+        return copyContent;
+    }
+
+    /**
+     * Setter method for property <tt>copyContent</tt>. Must be set before the request is
+     * sent.
+     * 
+     * @param copyContent if false, the default, the response keeps the buffers read from the
+     *            channel and must be released by {@link NettyHttpResponse#release()}
+     */
+    public void setCopyContent(boolean copyContent) {
+        this.copyContent = copyContent;
+    }
+
+    /**
+     * Getter method for property <tt>headRequest</tt>.
+     * 
+     * @return property value of headRequest
+     */
+    public boolean isHeadRequest() {
+        return headRequest;
+    }
+
+    /**
+     * Setter method for property <tt>headRequest</tt>. Must be set before the request is
+     * sent.
+     * 
+     * @param headRequest value to be assigned to property headRequest
+     */
+    public void setHeadRequest(boolean headRequest) {
+        this.headRequest = headRequest;
+    }
+
     /**
      * Getter method for property <tt>responseBuilder</tt>.
      * 
@@ -119,4 +506,108 @@ public class NettyHttpResponseFuture {
     public void setResponseBuilder(NettyHttpResponseBuilder responseBuilder) {
         this.responseBuilder = responseBuilder;
     }
+
+    /**
+     * Getter method for property <tt>startTime</tt>.
+     * 
+     * @return property value of startTime
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Setter method for property <tt>startTime</tt>.
+     * 
+     * @param startTime the System.nanoTime() when the request is sent
+     */
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Getter method for property <tt>routeMetrics</tt>.
+     * 
+     * @return property value of routeMetrics
+     */
+    public NettyRouteMetrics getRouteMetrics() {
+        return routeMetrics;
+    }
+
+    /**
+     * Setter method for property <tt>routeMetrics</tt>. Must be set before the request is
+     * sent.
+     * 
+     * @param routeMetrics metrics the request is recorded in, null to record nothing
+     */
+    public void setRouteMetrics(NettyRouteMetrics routeMetrics) {
+        this.routeMetrics = routeMetrics;
+    }
+
+    /**
+     * Setter method for property <tt>responseTimeout</tt>.
+     * 
+     * @param responseTimeout deadline of the response, cancelled once the future is
+     *            completed
+     */
+    public void setResponseTimeout(Timeout responseTimeout) {
+        this.responseTimeout = responseTimeout;
+        if (isProcessed.get()) {
+            responseTimeout.cancel();
+        }
+    }
+
+    /**
+     * Getter method for property <tt>eventListener</tt>.
+     * 
+     * @return property value of eventListener
+     */
+    public NettyClientEventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     * Setter method for property <tt>eventListener</tt>. Must be set before the request is
+     * sent.
+     * 
+     * @param eventListener listener notified of the events of the request, may be null
+     */
+    public void setEventListener(NettyClientEventListener eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Setter method for property <tt>concurrencyLimiter</tt>. Must be set before the request
+     * is sent.
+     * 
+     * @param concurrencyLimiter limiter which admitted the request, fed with its outcome
+     */
+    public void setConcurrencyLimiter(NettyConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Setter method for property <tt>inFlight</tt>. Must be set before the request is sent.
+     * 
+     * @param inFlight counter of the outstanding requests of the service endpoint the
+     *            request is sent to, already increased for the request and decreased once
+     *            the future is completed
+     */
+    public void setInFlight(AtomicInteger inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Setter method for property <tt>circuitBreaker</tt>. Must be set before the request is
+     * sent.
+     * 
+     * @param circuitBreaker breaker of the route which admitted the request, fed with its
+     *            outcome
+     * @param permit admission of the request by the breaker
+     */
+    public void setCircuitBreaker(NettyCircuitBreaker circuitBreaker,
+                                  NettyCircuitBreaker.Permit permit) {
+        this.circuitBreakerPermit = permit;
+        this.circuitBreaker = circuitBreaker;
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+/**
+ * Listener notified when a {@link NettyHttpResponseFuture} is done or cancelled.
+ * 
+ * @author xianwu.zhang
+ */
+public interface NettyHttpResponseListener {
+
+    /**
+     * invoked once the future is completed. {@link NettyHttpResponseFuture#getNow()}
+     * never returns null inside this method.
+     * 
+     * @param future
+     *            the completed future
+     * @throws Exception
+     */
+    void operationComplete(NettyHttpResponseFuture future) throws Exception;
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+import io.netty.channel.Channel;
+
+/**
+ * Flow control of a streamed response. Pausing turns off <code>autoRead</code> of the
+ * channel, so the server is throttled by TCP backpressure instead of the body piling up in
+ * memory. Chunks already read from the socket may still be delivered after pausing.
+ * <p>
+ * Pausing applies to the whole channel, so on a pipelined or HTTP/2 channel it also holds
+ * back the other responses. A paused channel is closed by the idle check if it is not
+ * resumed within maxIdleTimeInMilliSecondes.
+ * </p>
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyHttpStream {
+
+    private final Channel channel;
+
+    public NettyHttpStream(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * stop reading from the channel, may be called from any thread
+     */
+    public void pause() {
+        channel.config().setAutoRead(false);
+    }
+
+    /**
+     * resume reading from the channel, may be called from any thread
+     */
+    public void resume() {
+        channel.config().setAutoRead(true);
+    }
+
+    public boolean isPaused() {
+        return !channel.config().isAutoRead();
+    }
+
+    /**
+     * Getter method for property <tt>channel</tt>.
+     * 
+     * @return property value of channel
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+
+/**
+ * Handler of a streamed response, which receives the headers and then each chunk of the
+ * body as it arrives instead of the aggregated body. Both methods are invoked on the event
+ * loop of the channel and must not block, call {@link NettyHttpStream#pause()} to stop
+ * reading from the server until the consumer catches up.
+ * 
+ * @author xianwu.zhang
+ */
+public interface NettyHttpStreamHandler {
+
+    /**
+     * invoked once the status line and headers are received
+     * 
+     * @param response
+     *            status and headers of the response
+     * @param stream
+     *            flow control of the channel
+     * @throws Exception
+     *             fails the response future and closes the channel
+     */
+    void onResponse(HttpResponse response, NettyHttpStream stream) throws Exception;
+
+    /**
+     * invoked for each chunk of the body. The content is released after this method returns,
+     * so it must be retained to be used later.
+     * 
+     * @param content
+     *            the chunk, may be empty
+     * @param last
+     *            whether this is the last chunk, the response future is done right after
+     * @param stream
+     *            flow control of the channel
+     * @throws Exception
+     *             fails the response future and closes the channel
+     */
+    void onContent(ByteBuf content, boolean last, NettyHttpStream stream) throws Exception;
+}
@@ -17,15 +17,24 @@ package com.zhang.handler;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientUpgradeHandler;
+import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.HttpConversionUtil;
 import io.netty.handler.timeout.IdleStateEvent;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.NettyHttpStream;
+import com.zhang.client.NettyHttpStreamHandler;
 import com.zhang.pool.NettyChannelPool;
 import com.zhang.util.NettyHttpResponseFutureUtil;
 
@@ -37,6 +46,9 @@ public class NettyChannelPoolHandler extends SimpleChannelInboundHandler<HttpObj
 
     private NettyChannelPool    channelPool;
 
+    // flow control handed to stream handlers, created on the first streamed response
+    private NettyHttpStream     stream;
+
     /**
      * @param channelPool
      */
@@ -47,6 +59,17 @@ public class NettyChannelPoolHandler extends SimpleChannelInboundHandler<HttpObj
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+        if (NettyHttpResponseFutureUtil.isMultiplexed(ctx.channel())
+            && msg instanceof FullHttpResponse) {
+            http2StreamRead(ctx, (FullHttpResponse) msg);
+            return;
+        }
+        NettyHttpResponseFuture pendingFuture = NettyHttpResponseFutureUtil.getResponse(ctx
+            .channel());
+        if (null != pendingFuture && null != pendingFuture.getStreamHandler()) {
+            streamingRead(ctx, msg, pendingFuture);
+            return;
+        }
         if (msg instanceof HttpResponse) {
             HttpResponse headers = (HttpResponse) msg;
             NettyHttpResponseFutureUtil.setPendingResponse(ctx.channel(), headers);
@@ -55,16 +78,117 @@ public class NettyChannelPoolHandler extends SimpleChannelInboundHandler<HttpObj
             HttpContent httpContent = (HttpContent) msg;
             NettyHttpResponseFutureUtil.setPendingContent(ctx.channel(), httpContent);
             if (httpContent instanceof LastHttpContent) {
-                boolean connectionClose = NettyHttpResponseFutureUtil
-                    .headerContainConnectionClose(ctx.channel());
+                responseCompleted(ctx);
+            }
+        }
+    }
+
+    private void responseCompleted(ChannelHandlerContext ctx) {
+        boolean connectionClose = NettyHttpResponseFutureUtil.headerContainConnectionClose(ctx
+            .channel());
+        NettyHttpResponseFuture responseFuture = NettyHttpResponseFutureUtil.pollResponse(ctx
+            .channel());
+
+        //the maxKeepAliveRequests config will cause server close the channel, and return 'Connection: close' in headers                
+        //return the channel before completing the future, so that requests sent by inline listeners can reuse it
+        if (!connectionClose) {
+            channelPool.returnChannel(ctx.channel());
+        }
+        if (null != responseFuture) {
+            responseFuture.done();
+        }
+    }
 
-                NettyHttpResponseFutureUtil.done(ctx.channel());
-                //the maxKeepAliveRequests config will cause server close the channel, and return 'Connection: close' in headers                
-                if (!connectionClose) {
-                    channelPool.returnChannel(ctx.channel());
+    /**
+     * hand the headers and each chunk of a streamed response to its stream handler
+     */
+    private void streamingRead(ChannelHandlerContext ctx, HttpObject msg,
+                               NettyHttpResponseFuture responseFuture) {
+        NettyHttpStreamHandler streamHandler = responseFuture.getStreamHandler();
+        try {
+            if (msg instanceof HttpResponse) {
+                NettyHttpResponseFutureUtil.setPendingResponse(responseFuture, (HttpResponse) msg);
+                streamHandler.onResponse((HttpResponse) msg, getStream(ctx));
+            }
+            if (msg instanceof HttpContent) {
+                boolean last = msg instanceof LastHttpContent;
+                streamHandler.onContent(((HttpContent) msg).content(), last, getStream(ctx));
+                if (last) {
+                    // a channel paused by the handler must read again once back in the pool
+                    ctx.channel().config().setAutoRead(true);
+                    responseCompleted(ctx);
                 }
             }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "stream handler " + streamHandler + " threw an exception", e);
+            // the rest of the response can not be skipped, so the channel is not reusable
+            NettyHttpResponseFutureUtil.pollResponse(ctx.channel());
+            responseFuture.cancel(e);
+            ctx.channel().close();
+        }
+    }
+
+    private NettyHttpStream getStream(ChannelHandlerContext ctx) {
+        if (null == stream) {
+            stream = new NettyHttpStream(ctx.channel());
         }
+        return stream;
+    }
+
+    /**
+     * complete the response of a HTTP/2 stream, which is always aggregated by the
+     * HTTP/2 to HTTP adapter, so a streamed response is handed over in a single chunk
+     */
+    private void http2StreamRead(ChannelHandlerContext ctx, FullHttpResponse msg) {
+        Integer streamId = msg.headers().getInt(
+            HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+        if (null == streamId) {
+            return;
+        }
+        NettyHttpResponseFuture responseFuture = NettyHttpResponseFutureUtil.pollStreamResponse(
+            ctx.channel(), streamId);
+        if (null == responseFuture) {
+            return;
+        }
+        // the stream is aggregated by the adapter, so the headers arrive with the body
+        responseFuture.headersReceived(ctx.channel());
+        NettyHttpStreamHandler streamHandler = responseFuture.getStreamHandler();
+        if (null == streamHandler) {
+            NettyHttpResponseFutureUtil.setStreamResponse(responseFuture, msg);
+        } else {
+            NettyHttpResponseFutureUtil.setPendingResponse(responseFuture, msg);
+            try {
+                streamHandler.onResponse(msg, getStream(ctx));
+                streamHandler.onContent(msg.content(), true, getStream(ctx));
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "stream handler " + streamHandler
+                                          + " threw an exception", e);
+                channelPool.returnChannel(ctx.channel());
+                responseFuture.cancel(e);
+                return;
+            }
+        }
+        channelPool.returnChannel(ctx.channel());
+        responseFuture.done();
+    }
+
+    /**
+     * @see io.netty.channel.ChannelInboundHandlerAdapter#exceptionCaught(io.netty.channel.ChannelHandlerContext, java.lang.Throwable)
+     */
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // a reset stream only fails its own request, the connection stays usable
+        if (cause instanceof Http2Exception.StreamException) {
+            NettyHttpResponseFuture responseFuture = NettyHttpResponseFutureUtil
+                .pollStreamResponse(ctx.channel(),
+                    ((Http2Exception.StreamException) cause).streamId());
+            if (null != responseFuture) {
+                channelPool.returnChannel(ctx.channel());
+                responseFuture.cancel(cause);
+            }
+            return;
+        }
+        ctx.fireExceptionCaught(cause);
     }
 
     /**
@@ -75,6 +199,18 @@ public class NettyChannelPoolHandler extends SimpleChannelInboundHandler<HttpObj
         if (evt instanceof IdleStateEvent) {
             logger.log(Level.WARNING, "remove idle channel: " + ctx.channel());
             ctx.channel().close();
+        } else if (evt == HttpClientUpgradeHandler.UpgradeEvent.UPGRADE_SUCCESSFUL) {
+            channelPool.http2Upgraded(ctx.channel());
+        } else if (evt == HttpClientUpgradeHandler.UpgradeEvent.UPGRADE_REJECTED) {
+            // the rejected response and the following ones are plain HTTP/1.1 messages
+            ctx.pipeline().addAfter(HttpClientUpgradeHandler.class.getSimpleName(),
+                HttpObjectAggregator.class.getSimpleName(),
+                new NettyHttpObjectAggregator(channelPool));
+            if (channelPool.getContentDecompression()) {
+                ctx.pipeline().addAfter(HttpClientUpgradeHandler.class.getSimpleName(),
+                    HttpContentDecompressor.class.getSimpleName(), new HttpContentDecompressor());
+            }
+            channelPool.http2UpgradeRejected(ctx.channel());
         } else {
             ctx.fireUserEventTriggered(evt);
         }
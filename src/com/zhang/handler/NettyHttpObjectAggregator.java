@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetSocketAddress;
+
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.pool.NettyAggregationPolicy;
+import com.zhang.pool.NettyChannelPool;
+import com.zhang.util.NettyHttpResponseFutureUtil;
+
+/**
+ * {@link HttpObjectAggregator} which applies the maxContentLength and the aggregation policy
+ * of the route, and passes the messages of a streamed response through without aggregating
+ * them.
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyHttpObjectAggregator extends HttpObjectAggregator {
+
+    private final NettyChannelPool channelPool;
+
+    // max content length of the response being received
+    private int                    maxContentLength;
+
+    private long                   receivedLength;
+
+    // an oversized response was aborted, the rest of the channel input is dropped
+    private boolean                discarding;
+
+    public NettyHttpObjectAggregator(NettyChannelPool channelPool) {
+        super(Integer.MAX_VALUE);
+        this.channelPool = channelPool;
+    }
+
+    /**
+     * @see io.netty.handler.codec.MessageToMessageDecoder#channelRead(io.netty.channel.ChannelHandlerContext, java.lang.Object)
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (discarding) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        NettyHttpResponseFuture responseFuture = NettyHttpResponseFutureUtil.getResponse(ctx
+            .channel());
+        if (null != responseFuture && msg instanceof HttpResponse) {
+            responseFuture.headersReceived(ctx.channel());
+        }
+        if (null != responseFuture && null != responseFuture.getStreamHandler()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        InetSocketAddress route = NettyHttpResponseFutureUtil.getRoute(ctx.channel());
+        if (msg instanceof HttpResponse) {
+            maxContentLength = channelPool.getMaxContentLength(route);
+            receivedLength = 0;
+            if (hasBody(responseFuture, (HttpResponse) msg)
+                && HttpUtil.getContentLength((HttpResponse) msg, -1) > maxContentLength) {
+                abortOversized(ctx, msg);
+                return;
+            }
+        }
+        if (msg instanceof HttpContent) {
+            receivedLength += ((HttpContent) msg).content().readableBytes();
+            if (receivedLength > maxContentLength) {
+                abortOversized(ctx, msg);
+                return;
+            }
+        }
+
+        if (NettyAggregationPolicy.COMPOSITE == channelPool.getAggregationPolicy(route)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    /**
+     * @return false for the response to a HEAD request and a 1xx, 204 or 304 response,
+     *         whose Content-Length is not the length of a body
+     */
+    private boolean hasBody(NettyHttpResponseFuture responseFuture, HttpResponse response) {
+        if (null != responseFuture && responseFuture.isHeadRequest()) {
+            return false;
+        }
+        int code = response.status().code();
+        return code >= 200 && code != HttpResponseStatus.NO_CONTENT.code()
+               && code != HttpResponseStatus.NOT_MODIFIED.code();
+    }
+
+    /**
+     * fail the response and close the channel, since the rest of the body can not be
+     * skipped without reading it
+     */
+    private void abortOversized(ChannelHandlerContext ctx, Object msg) {
+        ReferenceCountUtil.release(msg);
+        discarding = true;
+        NettyHttpResponseFuture responseFuture = NettyHttpResponseFutureUtil.pollResponse(ctx
+            .channel());
+        if (null != responseFuture) {
+            responseFuture.cancel(new TooLongFrameException("response of "
+                                                            + ctx.channel().remoteAddress()
+                                                            + " exceeds " + maxContentLength
+                                                            + " bytes"));
+        }
+        ctx.close();
+    }
+}
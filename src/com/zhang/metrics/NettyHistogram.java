@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with fixed buckets. Values are recorded in microseconds, into four
+ * buckets per power of two, so a percentile is accurate to a quarter of its value. Values
+ * from 0 up to about 2 minutes are kept apart, larger ones fall into the last bucket.
+ * Recording takes no lock and allocates nothing, the buckets are striped by thread like
+ * {@link StripedCounter}.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyHistogram {
+
+    // buckets per power of two is 1 << SUB_BUCKET_BITS
+    private static final int      SUB_BUCKET_BITS = 2;
+
+    private static final int      SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+
+    // values of 2^MAX_EXPONENT microseconds and more are recorded in the last bucket
+    private static final int      MAX_EXPONENT    = 27;
+
+    // the last bucket holds the values out of range
+    static final int              BUCKETS         = SUB_BUCKETS
+                                                    + (MAX_EXPONENT - SUB_BUCKET_BITS)
+                                                    * SUB_BUCKETS + 1;
+
+    // the buckets and the sum of a stripe, padded to whole cache lines
+    private static final int      STRIDE          = (BUCKETS + 1 + 7) & ~7;
+
+    private static final int      STRIPES         = Math.min(StripedCounter.STRIPES, 8);
+
+    private final AtomicLongArray cells           = new AtomicLongArray(STRIPES * STRIDE);
+
+    private final AtomicLong      max             = new AtomicLong();
+
+    /**
+     * record a value
+     * 
+     * @param nanos
+     *            the value in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+        int offset = (StripedCounter.stripe() & (STRIPES - 1)) * STRIDE;
+        cells.incrementAndGet(offset + bucketOf(micros));
+        cells.addAndGet(offset + BUCKETS, micros);
+
+        long currentMax = max.get();
+        while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the counts of the buckets, the sum and the max recorded so far. Values
+     *         recorded while the snapshot is taken may be partially included.
+     */
+    public NettyHistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int offset = stripe * STRIDE;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += cells.get(offset + i);
+            }
+            sum += cells.get(offset + BUCKETS);
+        }
+        return new NettyHistogramSnapshot(counts, sum, max.get());
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value in microseconds recorded into the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+/**
+ * The values recorded by a {@link NettyHistogram} at the time of the snapshot. All times
+ * are in milliseconds. A percentile is the upper bound of the bucket it falls into, capped
+ * by the max.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyHistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long   count;
+
+    // in microseconds
+    private final long   sum;
+
+    // in microseconds
+    private final long   max;
+
+    NettyHistogramSnapshot(long[] counts, long sum, long max) {
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @param quantile
+     *            between 0 and 1, e.g. 0.99
+     * @return the value below which the given fraction of the values fall, 0 if no value
+     *         was recorded
+     */
+    public double getPercentile(double quantile) {
+        if (0 == count) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && 0 != seen) {
+                return toMillis(Math.min(NettyHistogram.upperBoundOf(i), max));
+            }
+        }
+        return toMillis(max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return 0 == count ? 0 : toMillis(sum) / count;
+    }
+
+    public double getMax() {
+        return toMillis(max);
+    }
+
+    public double getP50() {
+        return getPercentile(0.5);
+    }
+
+    public double getP90() {
+        return getPercentile(0.9);
+    }
+
+    public double getP99() {
+        return getPercentile(0.99);
+    }
+
+    public double getP999() {
+        return getPercentile(0.999);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + getMean() + "ms, p50=" + getP50() + "ms, p99="
+               + getP99() + "ms, max=" + getMax() + "ms";
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Metrics of the routes of a channel pool. The counters and histograms of a route are
+ * created on its first request, the gauges are read from the pool when a snapshot is
+ * taken. The routes can be exported to JMX as <code>NettyRouteMXBean</code>s named
+ * <code>com.zhang.metrics:type=NettyChannelPool,name=&lt;name&gt;,route=&lt;host:port&gt;</code>.
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyPoolMetrics {
+
+    private static final Logger                             logger     = Logger
+                                                                           .getLogger(NettyPoolMetrics.class
+                                                                               .getName());
+
+    private static final String                             JMX_DOMAIN = "com.zhang.metrics";
+
+    private final ConcurrentMap<String, NettyRouteMetrics> routes     = new ConcurrentHashMap<String, NettyRouteMetrics>();
+
+    private final NettyRouteGauges                          gauges;
+
+    // name of the pool in JMX, null if not exported
+    private volatile String                                 jmxName;
+
+    public NettyPoolMetrics(NettyRouteGauges gauges) {
+        this.gauges = gauges;
+    }
+
+    /**
+     * @param route
+     *            host:port
+     * @return the metrics of the route, created if absent
+     */
+    public NettyRouteMetrics route(String route) {
+        NettyRouteMetrics metrics = routes.get(route);
+        if (null == metrics) {
+            NettyRouteMetrics newMetrics = new NettyRouteMetrics();
+            metrics = routes.putIfAbsent(route, newMetrics);
+            if (null == metrics) {
+                metrics = newMetrics;
+                String jmxName = this.jmxName;
+                if (null != jmxName) {
+                    register(jmxName, route);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @param route
+     *            host:port
+     * @return the snapshot of the route, null if no request was sent to the route
+     */
+    public NettyRouteSnapshot snapshot(String route) {
+        NettyRouteMetrics metrics = routes.get(route);
+        if (null == metrics) {
+            return null;
+        }
+        return metrics.snapshot(route, gauges.getIdle(route), gauges.getPending(route),
+            gauges.getAvailablePermits(route), gauges.getConcurrencyLimit(route));
+    }
+
+    /**
+     * @return the snapshots of all routes, sorted by route
+     */
+    public Map<String, NettyRouteSnapshot> snapshot() {
+        Map<String, NettyRouteSnapshot> snapshots = new TreeMap<String, NettyRouteSnapshot>();
+        for (String route : routes.keySet()) {
+            snapshots.put(route, snapshot(route));
+        }
+        return snapshots;
+    }
+
+    /**
+     * register a <code>NettyRouteMXBean</code> for every route, including the routes
+     * requested later, to the platform MBeanServer
+     * 
+     * @param name
+     *            name of the pool, must be unique among the pools of the JVM
+     */
+    public void exportJmx(String name) {
+        this.jmxName = name;
+        for (String route : routes.keySet()) {
+            register(name, route);
+        }
+    }
+
+    /**
+     * forget the metrics of a route which is no longer used, and unregister its MBean
+     * 
+     * @param route
+     *            host:port
+     */
+    public void remove(String route) {
+        if (null == routes.remove(route)) {
+            return;
+        }
+        String jmxName = this.jmxName;
+        if (null != jmxName) {
+            unregister(jmxName, route);
+        }
+    }
+
+    /**
+     * unregister the MBeans of the routes
+     */
+    public void close() {
+        String jmxName = this.jmxName;
+        if (null == jmxName) {
+            return;
+        }
+        this.jmxName = null;
+        for (String route : routes.keySet()) {
+            unregister(jmxName, route);
+        }
+    }
+
+    private void register(String jmxName, final String route) {
+        // every attribute is read from a new snapshot of the route
+        NettyRouteMXBean mbean = (NettyRouteMXBean) Proxy.newProxyInstance(
+            NettyRouteMXBean.class.getClassLoader(), new Class<?>[] { NettyRouteMXBean.class },
+            new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                                                                               throws Throwable {
+                    try {
+                        return method.invoke(snapshot(route), args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+        try {
+            ObjectName objectName = objectName(jmxName, route);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new StandardMBean(mbean, NettyRouteMXBean.class, true),
+                    objectName);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "register metrics of " + route + " failed", e);
+        }
+    }
+
+    private void unregister(String jmxName, String route) {
+        try {
+            ObjectName objectName = objectName(jmxName, route);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "unregister metrics of " + route + " failed", e);
+        }
+    }
+
+    private static ObjectName objectName(String jmxName, String route) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=NettyChannelPool,name="
+                              + ObjectName.quote(jmxName) + ",route=" + ObjectName.quote(route));
+    }
+}
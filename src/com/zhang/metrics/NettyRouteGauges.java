@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+/**
+ * Current state of the routes of a channel pool, read when a snapshot is taken
+ * 
+ * @author xianwu.zhang
+ */
+public interface NettyRouteGauges {
+
+    /**
+     * @param route
+     *            host:port
+     * @return number of idle channels of the route
+     */
+    int getIdle(String route);
+
+    /**
+     * @param route
+     *            host:port
+     * @return number of requests waiting for a channel of the route
+     */
+    int getPending(String route);
+
+    /**
+     * @param route
+     *            host:port
+     * @return number of channels which may still be created for the route
+     */
+    int getAvailablePermits(String route);
+
+    /**
+     * @param route
+     *            host:port
+     * @return current adaptive limit of the outstanding requests of the route, 0 if the
+     *         route has none
+     */
+    int getConcurrencyLimit(String route);
+}
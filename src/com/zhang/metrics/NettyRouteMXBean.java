@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+/**
+ * Attributes of a route exported to JMX, see {@link NettyPoolMetrics#exportJmx(String)}.
+ * Times are in milliseconds.
+ * 
+ * @author xianwu.zhang
+ */
+public interface NettyRouteMXBean {
+
+    /**
+     * @return number of connected channels, idle or leased
+     */
+    int getOpen();
+
+    /**
+     * @return number of channels in the pool. A pipelined or HTTP/2 channel is idle when it
+     *         has no outstanding request.
+     */
+    int getIdle();
+
+    /**
+     * @return number of channels with outstanding requests
+     */
+    int getLeased();
+
+    /**
+     * @return number of requests waiting in the queue for a channel
+     */
+    int getPending();
+
+    /**
+     * @return number of channels which may still be created within maxPerRoute
+     */
+    int getAvailablePermits();
+
+    /**
+     * @return current adaptive limit of the outstanding requests, 0 if the route has none
+     */
+    int getConcurrencyLimit();
+
+    long getRequests();
+
+    /**
+     * @return number of requests which failed, including timeouts
+     */
+    long getFailures();
+
+    long getTimeouts();
+
+    /**
+     * @return number of requests rejected by the concurrency limit or the circuit breaker,
+     *         not counted in requests
+     */
+    long getRejected();
+
+    long getConnectFailures();
+
+    NettyHistogramSnapshot getConnectTime();
+
+    NettyHistogramSnapshot getAcquireWait();
+
+    NettyHistogramSnapshot getFirstByte();
+
+    NettyHistogramSnapshot getLatency();
+}
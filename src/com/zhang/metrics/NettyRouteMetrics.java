@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The counters and histograms of one route, recorded by the channel pool and its handlers.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyRouteMetrics {
+
+    private final StripedCounter requests        = new StripedCounter();
+
+    private final StripedCounter failures        = new StripedCounter();
+
+    private final StripedCounter timeouts        = new StripedCounter();
+
+    private final StripedCounter connectFailures = new StripedCounter();
+
+    private final StripedCounter rejected        = new StripedCounter();
+
+    private final AtomicInteger  open            = new AtomicInteger();
+
+    private final NettyHistogram connectTime     = new NettyHistogram();
+
+    private final NettyHistogram acquireWait     = new NettyHistogram();
+
+    private final NettyHistogram firstByte       = new NettyHistogram();
+
+    private final NettyHistogram latency         = new NettyHistogram();
+
+    NettyRouteMetrics() {
+    }
+
+    public void requestStarted() {
+        requests.increment();
+    }
+
+    /**
+     * @param nanos
+     *            time from sending the request until it was assigned to a channel,
+     *            including the wait in the queue and the connect of a new channel
+     */
+    public void recordAcquireWait(long nanos) {
+        acquireWait.record(nanos);
+    }
+
+    /**
+     * @param nanos
+     *            time from starting the connect until the channel is active, including
+     *            the address lookup
+     */
+    public void recordConnect(long nanos) {
+        connectTime.record(nanos);
+    }
+
+    public void connectFailed() {
+        connectFailures.increment();
+    }
+
+    public void channelOpened() {
+        open.incrementAndGet();
+    }
+
+    public void channelClosed() {
+        open.decrementAndGet();
+    }
+
+    /**
+     * @param nanos
+     *            time from sending the request until the response headers arrived
+     */
+    public void recordFirstByte(long nanos) {
+        firstByte.record(nanos);
+    }
+
+    /**
+     * @param nanos
+     *            time from sending the request until the response was completed
+     */
+    public void recordResponse(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * count a request which failed, and also a timeout if it timed out
+     * 
+     * @param cause
+     */
+    public void recordFailure(Throwable cause) {
+        failures.increment();
+        if (cause instanceof TimeoutException) {
+            timeouts.increment();
+        }
+    }
+
+    /**
+     * count a request rejected by the concurrency limit or the circuit breaker of the route,
+     * which is not counted as a request
+     */
+    public void requestRejected() {
+        rejected.increment();
+    }
+
+    NettyRouteSnapshot snapshot(String route, int idle, int pending, int availablePermits,
+                                int concurrencyLimit) {
+        int open = this.open.get();
+        return new NettyRouteSnapshot(route, open, idle, Math.max(open - idle, 0), pending,
+            availablePermits, concurrencyLimit, requests.sum(), failures.sum(), timeouts.sum(),
+            rejected.sum(), connectFailures.sum(), connectTime.snapshot(), acquireWait
+                .snapshot(), firstByte.snapshot(), latency.snapshot());
+    }
+}
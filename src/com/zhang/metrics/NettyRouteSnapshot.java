@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.metrics;
+
+/**
+ * The metrics of a route at the time of the snapshot, see {@link NettyRouteMXBean} for the
+ * meaning of the values.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyRouteSnapshot implements NettyRouteMXBean {
+
+    private final String                 route;
+
+    private final int                    open;
+
+    private final int                    idle;
+
+    private final int                    leased;
+
+    private final int                    pending;
+
+    private final int                    availablePermits;
+
+    private final int                    concurrencyLimit;
+
+    private final long                   requests;
+
+    private final long                   failures;
+
+    private final long                   timeouts;
+
+    private final long                   rejected;
+
+    private final long                   connectFailures;
+
+    private final NettyHistogramSnapshot connectTime;
+
+    private final NettyHistogramSnapshot acquireWait;
+
+    private final NettyHistogramSnapshot firstByte;
+
+    private final NettyHistogramSnapshot latency;
+
+    NettyRouteSnapshot(String route, int open, int idle, int leased, int pending,
+                       int availablePermits, int concurrencyLimit, long requests,
+                       long failures, long timeouts, long rejected, long connectFailures,
+                       NettyHistogramSnapshot connectTime,
+                       NettyHistogramSnapshot acquireWait, NettyHistogramSnapshot firstByte,
+                       NettyHistogramSnapshot latency) {
+        this.route = route;
+        this.open = open;
+        this.idle = idle;
+        this.leased = leased;
+        this.pending = pending;
+        this.availablePermits = availablePermits;
+        this.concurrencyLimit = concurrencyLimit;
+        this.requests = requests;
+        this.failures = failures;
+        this.timeouts = timeouts;
+        this.rejected = rejected;
+        this.connectFailures = connectFailures;
+        this.connectTime = connectTime;
+        this.acquireWait = acquireWait;
+        this.firstByte = firstByte;
+        this.latency = latency;
+    }
+
+    /**
+     * @return host:port of the route
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    @Override
+    public int getOpen() {
+        return open;
+    }
+
+    @Override
+    public int getIdle() {
+        return idle;
+    }
+
+    @Override
+    public int getLeased() {
+        return leased;
+    }
+
+    @Override
+    public int getPending() {
+        return pending;
+    }
+
+    @Override
+    public int getAvailablePermits() {
+        return availablePermits;
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    @Override
+    public long getRequests() {
+        return requests;
+    }
+
+    @Override
+    public long getFailures() {
+        return failures;
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    @Override
+    public NettyHistogramSnapshot getConnectTime() {
+        return connectTime;
+    }
+
+    @Override
+    public NettyHistogramSnapshot getAcquireWait() {
+        return acquireWait;
+    }
+
+    @Override
+    public NettyHistogramSnapshot getFirstByte() {
+        return firstByte;
+    }
+
+    @Override
+    public NettyHistogramSnapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return route + " open=" + open + ", idle=" + idle + ", leased=" + leased + ", pending="
+               + pending + ", availablePermits=" + availablePermits + ", concurrencyLimit="
+               + concurrencyLimit + ", requests=" + requests + ", failures=" + failures
+               + ", timeouts=" + timeouts + ", rejected=" + rejected + ", connectFailures="
+               + connectFailures + ", connectTime[" + connectTime + "], acquireWait["
+               + acquireWait + "], firstByte[" + firstByte + "], latency[" + latency + "]";
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+/**
+ * Additive increase, multiplicative decrease. The limit grows by one per successful response
+ * while at least half of it is in use, so an idle route does not inflate it, and shrinks by
+ * {@link #BACKOFF_RATIO} per timed out request.
+ * 
+ * @author xianwu.zhang
+ */
+final class AimdConcurrencyLimiter extends NettyConcurrencyLimiter {
+
+    private static final int    INITIAL_LIMIT = 20;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    AimdConcurrencyLimiter(int maxLimit) {
+        super(INITIAL_LIMIT, maxLimit);
+    }
+
+    /**
+     * @see com.zhang.pool.NettyConcurrencyLimiter#nextLimit(int, long, int, boolean)
+     */
+    @Override
+    protected int nextLimit(int limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped) {
+            return (int) (limit * BACKOFF_RATIO);
+        }
+        if (inFlight * 2 >= limit) {
+            return limit + 1;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock-free LIFO stack of idle channels (Treiber stack). The most recently returned
+ * channel is reused first, so the surplus channels at the bottom stay idle long enough to
+ * be closed by the <code>IdleStateHandler</code>.
+ * <p>
+ * {@link #push(Channel)} and {@link #pop()} only touch the head with a single CAS. A
+ * channel removed from the middle is marked as taken and unlinked by a best-effort sweep;
+ * a taken node which is still linked is skipped by pop.
+ * </p>
+ * 
+ * @author xianwu.zhang
+ */
+final class ChannelStack {
+
+    private final AtomicReference<Node> head = new AtomicReference<Node>();
+
+    void push(Channel channel) {
+        Node node = new Node(channel);
+        Node oldHead;
+        do {
+            oldHead = head.get();
+            node.next = oldHead;
+        } while (!head.compareAndSet(oldHead, node));
+    }
+
+    /**
+     * @return the most recently pushed channel, or null if the stack is empty
+     */
+    Channel pop() {
+        for (;;) {
+            Node oldHead = head.get();
+            if (null == oldHead) {
+                return null;
+            }
+            if (head.compareAndSet(oldHead, oldHead.next) && oldHead.take()) {
+                return oldHead.channel;
+            }
+        }
+    }
+
+    /**
+     * remove the specified channel wherever it is in the stack
+     * 
+     * @return true if the channel was in the stack and has not been popped yet
+     */
+    boolean remove(Channel channel) {
+        for (Node node = head.get(); null != node; node = node.next) {
+            if (node.channel == channel && node.take()) {
+                unlinkTaken();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a snapshot of the channels in the stack, most recently pushed first
+     */
+    List<Channel> channels() {
+        List<Channel> channels = new ArrayList<Channel>();
+        for (Node node = head.get(); null != node; node = node.next) {
+            if (!node.isTaken()) {
+                channels.add(node.channel);
+            }
+        }
+        return channels;
+    }
+
+    int size() {
+        int size = 0;
+        for (Node node = head.get(); null != node; node = node.next) {
+            if (!node.isTaken()) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * unlink taken nodes below the head. Concurrent sweeps may leave a taken node linked,
+     * but never unlink a node which is not taken, since only the next field of the
+     * predecessor is swapped from the taken node to its successor.
+     */
+    private void unlinkTaken() {
+        Node prev = head.get();
+        if (null == prev) {
+            return;
+        }
+        Node node = prev.next;
+        while (null != node) {
+            Node next = node.next;
+            if (node.isTaken() && Node.NEXT.compareAndSet(prev, node, next)) {
+                node = next;
+                continue;
+            }
+            prev = node;
+            node = next;
+        }
+    }
+
+    private static final class Node {
+        static final AtomicReferenceFieldUpdater<Node, Node> NEXT  = AtomicReferenceFieldUpdater
+                                                                       .newUpdater(Node.class,
+                                                                           Node.class, "next");
+
+        static final AtomicIntegerFieldUpdater<Node>         TAKEN = AtomicIntegerFieldUpdater
+                                                                       .newUpdater(Node.class,
+                                                                           "taken");
+
+        final Channel                                        channel;
+
+        volatile Node                                        next;
+
+        volatile int                                         taken;
+
+        Node(Channel channel) {
+            this.channel = channel;
+        }
+
+        boolean take() {
+            return TAKEN.compareAndSet(this, 0, 1);
+        }
+
+        boolean isTaken() {
+            return 1 == taken;
+        }
+    }
+}
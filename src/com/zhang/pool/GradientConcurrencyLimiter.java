@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+/**
+ * A gradient limit in the spirit of TCP Vegas. The round trip time is averaged over a short
+ * and a long window, and their ratio, between {@link #MIN_GRADIENT} and 1, tells how much the
+ * responses are slowed down by queueing. The limit is scaled by the gradient plus a headroom
+ * of sqrt(limit) requests to probe for more capacity, and smoothed towards the result. A
+ * timed out request counts as the minimal gradient.
+ * 
+ * @author xianwu.zhang
+ */
+final class GradientConcurrencyLimiter extends NettyConcurrencyLimiter {
+
+    private static final int    INITIAL_LIMIT = 20;
+
+    // samples in the windows of the short and long-term round trip time
+    private static final int    SHORT_WINDOW  = 10;
+
+    private static final int    LONG_WINDOW   = 600;
+
+    private static final double MIN_GRADIENT  = 0.5;
+
+    private static final double SMOOTHING     = 0.2;
+
+    private double              estimatedLimit;
+
+    private double              shortRtt;
+
+    private double              longRtt;
+
+    GradientConcurrencyLimiter(int maxLimit) {
+        super(INITIAL_LIMIT, maxLimit);
+        this.estimatedLimit = getLimit();
+    }
+
+    /**
+     * @see com.zhang.pool.NettyConcurrencyLimiter#nextLimit(int, long, int, boolean)
+     */
+    @Override
+    protected int nextLimit(int limit, long rttNanos, int inFlight, boolean dropped) {
+        double gradient;
+        if (dropped) {
+            gradient = MIN_GRADIENT;
+        } else {
+            if (0 == longRtt) {
+                shortRtt = rttNanos;
+                longRtt = rttNanos;
+            } else {
+                shortRtt += (rttNanos - shortRtt) / SHORT_WINDOW;
+                longRtt += (rttNanos - longRtt) / LONG_WINDOW;
+            }
+            if (longRtt > shortRtt * 2) {
+                // the server got faster, let the long-term average catch up
+                longRtt *= 0.95;
+            }
+            gradient = Math.max(MIN_GRADIENT, Math.min(1.0, longRtt / shortRtt));
+            if (gradient == 1.0 && inFlight * 2 < limit) {
+                // the route is not busy enough to tell whether a higher limit would help
+                return limit;
+            }
+        }
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(1, Math.min(estimatedLimit, getMaxLimit()));
+        return (int) estimatedLimit;
+    }
+}
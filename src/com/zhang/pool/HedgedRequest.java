@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.NettyHttpResponseListener;
+
+/**
+ * A request raced against a duplicate of itself. The duplicate, the hedge, is sent on the
+ * timer of {@link NettyChannelPool} if the first attempt has not completed by then. The
+ * first successful attempt completes the future handed to the caller and the other one is
+ * aborted, which reclaims its channel, or on a pipelined channel left to complete and its
+ * response dropped. The caller's future fails only once every attempt sent has failed, and
+ * a failed first attempt is not hedged.
+ * 
+ * @author xianwu.zhang
+ */
+final class HedgedRequest implements TimerTask, NettyHttpResponseListener {
+
+    private final NettyChannelPool                 channelPool;
+
+    private final HedgingPolicy                    hedging;
+
+    private final InetSocketAddress                route;
+
+    private final int                              responseTimeOutInMilliSecondes;
+
+    private final NettyHttpResponseFuture          responseFuture;
+
+    // the duplicate, claimed once, either to be sent or to be released
+    private final AtomicReference<FullHttpRequest> hedge;
+
+    // attempts sent which are not completed
+    private final AtomicInteger                    outstanding = new AtomicInteger(1);
+
+    private final AtomicBoolean                    completed   = new AtomicBoolean(false);
+
+    private volatile NettyHttpResponseFuture       first;
+
+    private volatile NettyHttpResponseFuture       second;
+
+    private volatile Throwable                     lastCause;
+
+    private volatile Timeout                       timeout;
+
+    HedgedRequest(NettyChannelPool channelPool, HedgingPolicy hedging, InetSocketAddress route,
+                  FullHttpRequest hedge, int responseTimeOutInMilliSecondes,
+                  NettyHttpResponseFuture responseFuture) {
+        this.channelPool = channelPool;
+        this.hedging = hedging;
+        this.route = route;
+        this.hedge = new AtomicReference<FullHttpRequest>(hedge);
+        this.responseTimeOutInMilliSecondes = responseTimeOutInMilliSecondes;
+        this.responseFuture = responseFuture;
+    }
+
+    /**
+     * watch the first attempt, and abort the attempts if the caller cancels its future
+     */
+    void start(NettyHttpResponseFuture first) {
+        this.first = first;
+        first.addListener(this);
+        responseFuture.addListener(new NettyHttpResponseListener() {
+
+            @Override
+            public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+                if (future.isCancelled()) {
+                    completed.set(true);
+                    releaseHedge();
+                    abort(HedgedRequest.this.first);
+                    abort(second);
+                }
+            }
+        });
+    }
+
+    /**
+     * send the hedge unless the first attempt is completed or the budget is used up
+     * 
+     * @see io.netty.util.TimerTask#run(io.netty.util.Timeout)
+     */
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        // counted before the claim, so a failure of the first attempt meanwhile waits for it
+        outstanding.incrementAndGet();
+        FullHttpRequest request = hedge.getAndSet(null);
+        if (null == request) {
+            attemptFinished();
+            return;
+        }
+        if (!hedging.withdraw()) {
+            ReferenceCountUtil.release(request);
+            attemptFinished();
+            return;
+        }
+        // the hedge must not queue behind the slow response on the channel of the first
+        NettyHttpResponseFuture second = channelPool.sendAttempt(route, request, null,
+            responseTimeOutInMilliSecondes, null, first.getChannel());
+        this.second = second;
+        second.addListener(this);
+        if (completed.get()) {
+            abort(second);
+        }
+    }
+
+    /**
+     * @see com.zhang.client.NettyHttpResponseListener#operationComplete(com.zhang.client.NettyHttpResponseFuture)
+     */
+    @Override
+    public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+        releaseHedge();
+        if (future.isCancelled()) {
+            lastCause = future.getNow().getCause();
+            attemptFinished();
+            return;
+        }
+        if (!completed.compareAndSet(false, true)) {
+            // the other attempt won, or the caller gave up
+            future.getNow().close();
+            return;
+        }
+        Timeout timeout = this.timeout;
+        if (null != timeout) {
+            timeout.cancel();
+        }
+        responseFuture.setResponseBuilder(future.getResponseBuilder());
+        responseFuture.done();
+        abort(future == first ? second : first);
+    }
+
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    private void attemptFinished() {
+        if (0 == outstanding.decrementAndGet() && completed.compareAndSet(false, true)) {
+            responseFuture.cancel(lastCause);
+        }
+    }
+
+    private void releaseHedge() {
+        FullHttpRequest request = hedge.getAndSet(null);
+        if (null != request) {
+            ReferenceCountUtil.release(request);
+        }
+    }
+
+    private void abort(NettyHttpResponseFuture attempt) {
+        if (null != attempt && !attempt.isDone() && !attempt.isCancelled()) {
+            // the route did nothing wrong, so the attempt is not counted as a failure
+            channelPool.discardResponse(attempt, new CancellationException("hedged request lost"));
+        }
+    }
+}
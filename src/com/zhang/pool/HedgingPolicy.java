@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.zhang.metrics.NettyHistogramSnapshot;
+import com.zhang.metrics.NettyPoolMetrics;
+import com.zhang.metrics.NettyRouteSnapshot;
+
+/**
+ * When and how often {@link NettyChannelPool} hedges a request. The delay of a route is a
+ * percentile of the latency recorded in its metrics, refreshed every second, or a fixed
+ * delay until enough responses are recorded. Without a fixed delay nothing is hedged until
+ * then, so a cold server is not sent every request twice. The hedges are paid from a budget
+ * which every hedgeable request adds budgetPercent hundredths of a hedge to, so at most
+ * budgetPercent percent more requests are sent, apart from a burst of {@link #MAX_BURST}
+ * hedges saved up.
+ * 
+ * @author xianwu.zhang
+ */
+final class HedgingPolicy {
+
+    // a hedge costs 100 tokens
+    private static final long                   HEDGE_COST       = 100;
+
+    private static final long                   MAX_BURST        = 10;
+
+    // responses required before the percentile is trusted
+    private static final long                   MIN_SAMPLES      = 100;
+
+    private static final long                   REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final long                          delayInNanos;
+
+    private final double                        percentile;
+
+    private final int                           budgetPercent;
+
+    private final AtomicLong                    tokens           = new AtomicLong();
+
+    private final ConcurrentMap<String, long[]> routeToDelay     = new ConcurrentHashMap<String, long[]>();
+
+    HedgingPolicy(int delayInMilliSecondes, double percentile, int budgetPercent) {
+        this.delayInNanos = TimeUnit.MILLISECONDS.toNanos(delayInMilliSecondes);
+        this.percentile = percentile;
+        this.budgetPercent = budgetPercent;
+    }
+
+    /**
+     * @return true if the request can be sent twice, only the requests of idempotent methods
+     *         whose body is in memory
+     */
+    boolean isHedgeable(HttpRequest request) {
+        if (!(request instanceof FullHttpRequest)) {
+            return false;
+        }
+        HttpMethod method = request.method();
+        return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)
+               || HttpMethod.OPTIONS.equals(method) || HttpMethod.PUT.equals(method)
+               || HttpMethod.DELETE.equals(method);
+    }
+
+    /**
+     * add the share of a hedgeable request to the budget
+     */
+    void deposit() {
+        for (;;) {
+            long current = tokens.get();
+            if (current >= MAX_BURST * HEDGE_COST) {
+                return;
+            }
+            if (tokens.compareAndSet(current, current + budgetPercent)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the budget is used up
+     */
+    boolean withdraw() {
+        for (;;) {
+            long current = tokens.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param route
+     *            host:port
+     * @param metrics
+     *            metrics of the pool, null if disabled
+     * @return how long to wait for the response before the hedge is sent, -1 if the request
+     *         must not be hedged since the percentile is not known yet and there is no fixed
+     *         delay
+     */
+    long delayInNanos(String route, NettyPoolMetrics metrics) {
+        long fixedDelay = delayInNanos > 0 ? delayInNanos : -1;
+        if (percentile <= 0 || null == metrics) {
+            return fixedDelay;
+        }
+        long now = System.nanoTime();
+        long[] delay = routeToDelay.get(route);
+        if (null != delay && now - delay[1] < 0) {
+            return delay[0];
+        }
+        long newDelay = fixedDelay;
+        NettyRouteSnapshot snapshot = metrics.snapshot(route);
+        if (null != snapshot) {
+            NettyHistogramSnapshot latency = snapshot.getLatency();
+            if (latency.getCount() >= MIN_SAMPLES) {
+                newDelay = (long) (latency.getPercentile(percentile / 100) * 1000000L);
+            }
+        }
+        routeToDelay.put(route, new long[] { newDelay, now + REFRESH_INTERVAL });
+        return newDelay;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Idle channels of one route. If event loop affinity is enabled, the channels are sharded
+ * per {@link EventLoop}: a thread of an event loop first polls channels registered on its
+ * own loop, other threads start polling at a round-robin partition. Otherwise all channels
+ * are kept in a single partition. Each partition is a lock-free {@link ChannelStack}, so
+ * the most recently used channel is reused first and surplus channels age out.
+ * 
+ * @author xianwu.zhang
+ */
+final class IdleChannels {
+
+    private final EventLoop[]    loops;
+
+    private final ChannelStack[] partitions;
+
+    private final AtomicInteger  nextPartition = new AtomicInteger();
+
+    /**
+     * @param loops
+     *            the event loops to shard channels by, or null to use a single partition
+     */
+    IdleChannels(EventLoop[] loops) {
+        this.loops = loops;
+        int size = null == loops ? 1 : loops.length;
+        this.partitions = new ChannelStack[size];
+        for (int i = 0; i < size; i++) {
+            partitions[i] = new ChannelStack();
+        }
+    }
+
+    /**
+     * poll an idle channel, preferring channels on the event loop of the caller thread
+     * 
+     * @return null if there is no idle channel
+     */
+    Channel poll() {
+        int size = partitions.length;
+        if (1 == size) {
+            return partitions[0].pop();
+        }
+
+        int start = currentPartition();
+        if (start < 0) {
+            start = (nextPartition.getAndIncrement() & Integer.MAX_VALUE) % size;
+        }
+        for (int i = 0; i < size; i++) {
+            Channel channel = partitions[(start + i) % size].pop();
+            if (null != channel) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    boolean offer(Channel channel) {
+        partitions[partitionOf(channel.eventLoop())].push(channel);
+        return true;
+    }
+
+    boolean remove(Channel channel) {
+        return partitions[partitionOf(channel.eventLoop())].remove(channel);
+    }
+
+    /**
+     * @return a snapshot of all idle channels
+     */
+    Collection<Channel> channels() {
+        List<Channel> channels = new ArrayList<Channel>();
+        for (ChannelStack partition : partitions) {
+            channels.addAll(partition.channels());
+        }
+        return channels;
+    }
+
+    int size() {
+        int size = 0;
+        for (ChannelStack partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    private int currentPartition() {
+        for (int i = 0; i < loops.length; i++) {
+            if (loops[i].inEventLoop()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int partitionOf(EventLoop loop) {
+        if (null == loops) {
+            return 0;
+        }
+        for (int i = 0; i < loops.length; i++) {
+            if (loops[i] == loop) {
+                return i;
+            }
+        }
+        // channels of loops outside the group share the first partition
+        return 0;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A request which waited too long for a channel of its route. The pool is saturated on the
+ * caller side, which says nothing about the health of the server, so the circuit breaker
+ * and the concurrency limiter of the route ignore it.
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyAcquireTimeoutException extends TimeoutException {
+
+    private static final long serialVersionUID = -4105386329817426317L;
+
+    public NettyAcquireTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+/**
+ * How the body of a response is received on a route. The aggregated bodies are limited to
+ * the maxContentLength of the route, a larger response fails as soon as the limit is known
+ * to be exceeded and its channel is closed instead of being returned to the pool.
+ * 
+ * @author xianwu.zhang
+ */
+public enum NettyAggregationPolicy {
+
+    /**
+     * merge the chunks into a single buffer by the <code>HttpObjectAggregator</code>
+     */
+    AGGREGATE,
+
+    /**
+     * keep the chunks as they are received instead of merging them, which saves a copy of
+     * the bodies read in several chunks. The body is still received in full before the
+     * response completes.
+     */
+    COMPOSITE,
+
+    /**
+     * never buffer the body. Every request to the route must be sent with a
+     * <code>NettyHttpStreamHandler</code>, which receives the chunks as they arrive, so the
+     * maxContentLength of the route does not apply. A request sent without one fails at
+     * once with an <code>IllegalArgumentException</code>. The body of an HTTP/2 stream is
+     * aggregated by the connection whatever the policy.
+     */
+    STREAM
+}
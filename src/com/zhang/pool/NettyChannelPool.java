@@ -19,38 +19,87 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpClientUpgradeHandler;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpScheme;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.DelegatingDecompressorFrameListener;
+import io.netty.handler.codec.http2.Http2ClientUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameListener;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.zhang.client.NettyClientEventListener;
 import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.NettyHttpStreamHandler;
 import com.zhang.handler.AdditionalChannelInitializer;
 import com.zhang.handler.NettyChannelPoolHandler;
+import com.zhang.handler.NettyHttpObjectAggregator;
+import com.zhang.metrics.NettyPoolMetrics;
+import com.zhang.metrics.NettyRouteGauges;
+import com.zhang.metrics.NettyRouteMetrics;
+import com.zhang.resolver.DnsAddressResolver;
+import com.zhang.resolver.NettyAddressResolver;
+import com.zhang.util.NettyHttpRequestUtil;
 import com.zhang.util.NettyHttpResponseFutureUtil;
+import com.zhang.util.SafeClientEventListener;
 
 /**
  * @author xianwu.zhang
@@ -61,11 +110,17 @@ public class NettyChannelPool {
                                                                                               .getName());
 
     // channel pools per route
-    private ConcurrentMap<String, LinkedBlockingQueue<Channel>> routeToPoolChannels;
+    private ConcurrentMap<String, IdleChannels>                 routeToPoolChannels;
+
+    // requests waiting for a channel per route, oldest first
+    private ConcurrentMap<String, Queue<PendingRequest>>        routeToWaiters;
 
     // max number of channels allow to be created per route
     private ConcurrentMap<String, Semaphore>                    maxPerRoute;
 
+    // the maxPerRoute given to the constructor, other routes get DEFAULT_MAX_PER_ROUTE
+    private final Map<String, Integer>                          configuredMaxPerRoute;
+
     // max time wait for a channel return from pool
     private int                                                 connectTimeOutInMilliSecondes;
 
@@ -86,17 +141,118 @@ public class NettyChannelPool {
 
     private EventLoopGroup                                      group;
 
+    // channel class matching the transport of the group
+    private final Class<? extends SocketChannel>                socketChannelClass;
+
     private final Bootstrap                                     clientBootstrap;
 
+    private final ChannelInitializer<Channel>                   channelInitializer;
+
+    @SuppressWarnings("unchecked")
+    private final Map<ChannelOption, Object>                    options;
+
+    // event loops of the group, used to shard idle channels and bootstraps per loop
+    private final EventLoop[]                                   eventLoops;
+
+    // bootstraps bound to a single event loop, created on demand in affinity mode
+    private final ConcurrentMap<EventLoop, Bootstrap>           loopBootstraps;
+
+    // shard idle channels per event loop and keep channels on the loop of the caller
+    private volatile boolean                                    eventLoopAffinity;
+
+    // min number of idle channels kept per route
+    private final ConcurrentMap<String, Integer>                minIdlePerRoute;
+
+    // number of channels being connected by warm up per route
+    private final ConcurrentMap<String, AtomicInteger>          routeToWarmingUp;
+
+    // periodic task topping up the routes in minIdlePerRoute
+    private final AtomicReference<ScheduledFuture<?>>           minIdleTask           = new AtomicReference<ScheduledFuture<?>>();
+
+    // removes a connected channel from the pool once it is closed
+    private final ChannelFutureListener                         closeListener;
+
+    // resolves unresolved routes without blocking the caller thread
+    private volatile NettyAddressResolver                       addressResolver;
+
+    // channels shared by pipelined requests, only for the routes with pipelining enabled
+    private final ConcurrentMap<String, PipelinedChannels>      routeToPipelinedChannels;
+
+    // fails waiting requests when no channel is available within connectTimeOutInMilliSecondes
+    private final Timer                                         timer;
+
     private static final String                                 COLON                 = ":";
 
+    // the request sent with the HTTP/1.1 upgrade is answered on stream 1
+    private static final int                                    UPGRADE_STREAM_ID     = 1;
+
+    // routes talking HTTP/2, sharing the channels in routeToPipelinedChannels
+    private final Set<String>                                   http2Routes;
+
+    // endpoints removed from their service, whose channels are closed once they are idle
+    private final Set<String>                                   retiredRoutes;
+
+    // connect HTTP/2 routes with the HTTP/1.1 upgrade instead of prior knowledge
+    private volatile boolean                                    http2Upgrade;
+
+    // executor for response listeners, null means listeners run on the event loop
+    private volatile Executor                                   completionExecutor;
+
+    // copy response bodies to the heap instead of handing out the pooled buffers
+    private volatile boolean                                    copyResponseContent;
+
+    // decode the gzip and deflate response bodies, the requests advertise both encodings
+    private volatile boolean                                    contentDecompression;
+
+    // max content length of the responses of the routes without their own limit
+    private volatile int                                        maxContentLength      = 1048576;
+
+    private final ConcurrentMap<String, Integer>                routeToMaxContentLength;
+
+    private final ConcurrentMap<String, NettyAggregationPolicy> routeToAggregationPolicy;
+
+    // deadline of the responses of the routes without their own timeout, 0 means none
+    private volatile int                                        responseTimeOutInMilliSecondes;
+
+    private final ConcurrentMap<String, Integer>                routeToResponseTimeOut;
+
+    // adaptive limits of the outstanding requests, only for the routes configured so
+    private final Map<String, NettyConcurrencyLimiter>          routeToConcurrencyLimiter;
+
+    // logical services whose requests are spread over their endpoints, keyed by host:port
+    private final ConcurrentMap<String, NettyService>           services;
+
+    // settings of the breakers of the routes, null if circuit breaking is disabled
+    private volatile NettyCircuitBreaker                        circuitBreakerTemplate;
+
+    private final ConcurrentMap<String, NettyCircuitBreaker>    routeToCircuitBreaker;
+
+    // when idempotent requests are hedged, null if hedging is disabled
+    private volatile HedgingPolicy                              hedging;
+
+    private final NettyPoolMetrics                              metrics;
+
+    // record the requests and channels in the metrics
+    private volatile boolean                                    metricsEnabled        = true;
+
+    // listener of the client events, null if none is registered
+    private volatile NettyClientEventListener                   eventListener;
+
+    // log the traffic of every nth channel, 0 means no wire logging
+    private volatile int                                        wireLogSampling;
+
+    private final AtomicInteger                                 wireLogCounter        = new AtomicInteger();
+
+    // flushes held back before one is written to the socket, 0 means no consolidation
+    private volatile int                                        flushConsolidation;
+
     /**
      * Create a new instance of ChannelPool
      * 
      * @param maxPerRoute
      *            max number of channels per route allowed in pool
      * @param connectTimeOutInMilliSecondes
-     *            max time wait for a channel return from pool
+     *            max time a request waits in the queue for a channel
      * @param maxIdleTimeInMilliSecondes
      *            max idle time for a channel before close
      * @param forbidForceConnect
@@ -115,29 +271,104 @@ public class NettyChannelPool {
                             int maxIdleTimeInMilliSecondes, boolean forbidForceConnect,
                             AdditionalChannelInitializer additionalChannelInitializer,
                             Map<ChannelOption, Object> options, EventLoopGroup customGroup) {
+        this(maxPerRoute, connectTimeOutInMilliSecondes, maxIdleTimeInMilliSecondes,
+            forbidForceConnect, additionalChannelInitializer, options, customGroup,
+            NettyTransport.AUTO);
+    }
+
+    /**
+     * Create a new instance of ChannelPool
+     * 
+     * @param maxPerRoute
+     *            max number of channels per route allowed in pool
+     * @param connectTimeOutInMilliSecondes
+     *            max time a request waits in the queue for a channel
+     * @param maxIdleTimeInMilliSecondes
+     *            max idle time for a channel before close
+     * @param forbidForceConnect
+     *            see {@link #NettyChannelPool(Map, int, int, boolean, AdditionalChannelInitializer, Map, EventLoopGroup)}
+     * @param additionalChannelInitializer
+     *            user-defined initializer
+     * @param options
+     *            user-defined options
+     * @param customGroup user defined {@link EventLoopGroup}, an epoll or a NIO group. The
+     *            channel class is chosen to match it and the transport is ignored.
+     * @param transport transport of the group created by the pool
+     */
+    public NettyChannelPool(Map<String, Integer> maxPerRoute, int connectTimeOutInMilliSecondes,
+                            int maxIdleTimeInMilliSecondes, boolean forbidForceConnect,
+                            AdditionalChannelInitializer additionalChannelInitializer,
+                            Map<ChannelOption, Object> options, EventLoopGroup customGroup,
+                            NettyTransport transport) {
+        this(maxPerRoute, connectTimeOutInMilliSecondes, maxIdleTimeInMilliSecondes,
+            forbidForceConnect, additionalChannelInitializer, options, customGroup, transport,
+            null);
+    }
+
+    /**
+     * Create a new instance of ChannelPool
+     * 
+     * @param maxPerRoute
+     *            max number of channels per route allowed in pool
+     * @param connectTimeOutInMilliSecondes
+     *            max time a request waits in the queue for a channel
+     * @param maxIdleTimeInMilliSecondes
+     *            max idle time for a channel before close
+     * @param forbidForceConnect
+     *            see {@link #NettyChannelPool(Map, int, int, boolean, AdditionalChannelInitializer, Map, EventLoopGroup)}
+     * @param additionalChannelInitializer
+     *            user-defined initializer
+     * @param options
+     *            user-defined options
+     * @param customGroup user defined {@link EventLoopGroup}, see
+     *            {@link #NettyChannelPool(Map, int, int, boolean, AdditionalChannelInitializer, Map, EventLoopGroup, NettyTransport)}
+     * @param transport transport of the group created by the pool
+     * @param addressResolver resolver of unresolved routes, closed with the pool, null for a
+     *            {@link DnsAddressResolver} with the default TTLs
+     */
+    @SuppressWarnings("unchecked")
+    public NettyChannelPool(Map<String, Integer> maxPerRoute, int connectTimeOutInMilliSecondes,
+                            int maxIdleTimeInMilliSecondes, boolean forbidForceConnect,
+                            AdditionalChannelInitializer additionalChannelInitializer,
+                            Map<ChannelOption, Object> options, EventLoopGroup customGroup,
+                            NettyTransport transport, NettyAddressResolver addressResolver) {
 
         this.additionalChannelInitializer = additionalChannelInitializer;
         this.maxIdleTimeInMilliSecondes = maxIdleTimeInMilliSecondes;
         this.connectTimeOutInMilliSecondes = connectTimeOutInMilliSecondes;
         this.maxPerRoute = new ConcurrentHashMap<String, Semaphore>();
-        this.routeToPoolChannels = new ConcurrentHashMap<String, LinkedBlockingQueue<Channel>>();
-        this.group = null == customGroup ? new NioEventLoopGroup() : customGroup;
+        this.routeToPoolChannels = new ConcurrentHashMap<String, IdleChannels>();
+        this.routeToWaiters = new ConcurrentHashMap<String, Queue<PendingRequest>>();
+        this.timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        NettyTransport resolvedTransport = null == customGroup ? transport.resolve()
+            : NettyTransport.of(customGroup);
+        this.group = null == customGroup ? resolvedTransport.newEventLoopGroup() : customGroup;
+        this.socketChannelClass = resolvedTransport.socketChannelClass();
         this.forbidForceConnect = forbidForceConnect;
 
-        this.clientBootstrap = new Bootstrap();
-        clientBootstrap.group(group).channel(NioSocketChannel.class).option(
-            ChannelOption.SO_KEEPALIVE, true).handler(new ChannelInitializer() {
+        this.options = options;
+        this.channelInitializer = new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel ch) throws Exception {
-                ch.pipeline().addLast("log", new LoggingHandler(LogLevel.INFO));
+                addWireLogging(ch);
+                addFlushConsolidation(ch);
 
                 ch.pipeline().addLast(HttpClientCodec.class.getSimpleName(), new HttpClientCodec());
                 if (null != NettyChannelPool.this.additionalChannelInitializer) {
                     NettyChannelPool.this.additionalChannelInitializer.initChannel(ch);
                 }
 
+                if (NettyChannelPool.this.contentDecompression) {
+                    // inflates the body chunk by chunk, ahead of the aggregation
+                    ch.pipeline().addLast(HttpContentDecompressor.class.getSimpleName(),
+                        new HttpContentDecompressor());
+                }
                 ch.pipeline().addLast(HttpObjectAggregator.class.getSimpleName(),
-                    new HttpObjectAggregator(1048576));
+                    new NettyHttpObjectAggregator(NettyChannelPool.this));
+
+                // streams file and chunked request bodies, in order with the other writes
+                ch.pipeline().addLast(ChunkedWriteHandler.class.getSimpleName(),
+                    new ChunkedWriteHandler());
 
                 ch.pipeline().addLast(
                     IdleStateHandler.class.getSimpleName(),
@@ -148,17 +379,51 @@ public class NettyChannelPool {
                     new NettyChannelPoolHandler(NettyChannelPool.this));
             }
 
-        });
-        if (null != options) {
-            for (Entry<ChannelOption, Object> entry : options.entrySet()) {
-                clientBootstrap.option(entry.getKey(), entry.getValue());
+        };
+        this.clientBootstrap = newBootstrap(group);
+
+        List<EventLoop> eventLoops = new ArrayList<EventLoop>();
+        for (EventExecutor executor : group) {
+            if (executor instanceof EventLoop) {
+                eventLoops.add((EventLoop) executor);
             }
         }
+        this.eventLoops = eventLoops.toArray(new EventLoop[eventLoops.size()]);
+        this.loopBootstraps = new ConcurrentHashMap<EventLoop, Bootstrap>();
+        this.minIdlePerRoute = new ConcurrentHashMap<String, Integer>();
+        this.routeToWarmingUp = new ConcurrentHashMap<String, AtomicInteger>();
+        this.addressResolver = null == addressResolver ? new DnsAddressResolver()
+            : addressResolver;
+        this.routeToPipelinedChannels = new ConcurrentHashMap<String, PipelinedChannels>();
+        this.http2Routes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.routeToMaxContentLength = new ConcurrentHashMap<String, Integer>();
+        this.routeToAggregationPolicy = new ConcurrentHashMap<String, NettyAggregationPolicy>();
+        this.routeToResponseTimeOut = new ConcurrentHashMap<String, Integer>();
+        this.routeToConcurrencyLimiter = new ConcurrentHashMap<String, NettyConcurrencyLimiter>();
+        this.services = new ConcurrentHashMap<String, NettyService>();
+        this.retiredRoutes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.routeToCircuitBreaker = new ConcurrentHashMap<String, NettyCircuitBreaker>();
+        this.metrics = new NettyPoolMetrics(new RouteGauges());
+        this.closeListener = new ChannelFutureListener() {
 
-        if (null != maxPerRoute) {
-            for (Entry<String, Integer> entry : maxPerRoute.entrySet()) {
-                this.maxPerRoute.put(entry.getKey(), new Semaphore(entry.getValue()));
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, future.channel() + " closed");
+                }
+                NettyClientEventListener eventListener = NettyChannelPool.this.eventListener;
+                if (null != eventListener) {
+                    eventListener.channelClosed(future.channel(), future.cause());
+                }
+                removeChannel(future.channel(), future.cause());
             }
+
+        };
+
+        this.configuredMaxPerRoute = null == maxPerRoute ? Collections
+            .<String, Integer> emptyMap() : new HashMap<String, Integer>(maxPerRoute);
+        for (Entry<String, Integer> entry : configuredMaxPerRoute.entrySet()) {
+            this.maxPerRoute.put(entry.getKey(), new Semaphore(entry.getValue()));
         }
 
     }
@@ -167,15 +432,17 @@ public class NettyChannelPool {
      * send http request to server specified by the route. The channel used to
      * send the request is obtained according to the follow rules
      * <p>
-     * 1. poll the first valid channel from pool without waiting. If no valid
+     * 1. poll the most recently returned valid channel from pool without waiting. If no valid
      * channel exists, then go to step 2. 
      * 2. create a new channel and return. If failed to create a new channel, then go to step 3. 
      * Note: the new channel created in this step will be returned to the pool 
-     * 3. poll the first valid channel from pool within specified waiting time. If no valid
-     * channel exists and the value of forbidForceConnect is false, then throw <code>TimeoutException</code>.
-     * Otherwise,go to step 4.
-     * 4. create a new channel and return. Note: the new channel created in this step will not be returned to the pool.
+     * 3. put the request into the waiting queue of the route and return immediately. The
+     * first channel returned to the pool is handed to the oldest waiting request. If no
+     * channel is handed over within connectTimeOutInMilliSecondes, the returned future is
+     * cancelled with a <code>TimeoutException</code>. The caller thread is never blocked.
      * </p>
+     * If the value of forbidForceConnect is true, step 2 always creates a new channel, 
+     * which will not be returned to the pool when the route is exhausted.
      * 
      * @param route
      *            target server
@@ -183,31 +450,206 @@ public class NettyChannelPool {
      *            {@link HttpRequest}
      * @return
      * @throws InterruptedException 
-     * @throws TimeoutException 
      * @throws IOException 
-     * @throws Exception 
      */
     public NettyHttpResponseFuture sendRequest(InetSocketAddress route, final HttpRequest request)
                                                                                                   throws InterruptedException,
                                                                                                   IOException {
-        final NettyHttpResponseFuture responseFuture = new NettyHttpResponseFuture();
-        if (sendRequestUsePooledChannel(route, request, responseFuture, false)) {
-            return responseFuture;
+        return sendRequest(route, request, null);
+    }
+
+    /**
+     * send http request to server specified by the route, see
+     * {@link #sendRequest(InetSocketAddress, HttpRequest)}. If streamHandler is not null, the
+     * response is not aggregated, its headers and chunks are handed to the streamHandler as
+     * they arrive and the future is done after the last chunk.
+     * 
+     * @param route
+     *            target server
+     * @param request
+     *            {@link HttpRequest}
+     * @param streamHandler
+     *            handler of the streamed response, null to aggregate the response
+     * @return
+     * @throws InterruptedException 
+     * @throws IOException 
+     */
+    public NettyHttpResponseFuture sendRequest(InetSocketAddress route, final HttpRequest request,
+                                               NettyHttpStreamHandler streamHandler)
+                                                                                    throws InterruptedException,
+                                                                                    IOException {
+        return sendRequest(route, request, streamHandler, 0);
+    }
+
+    /**
+     * send http request to server specified by the route, see
+     * {@link #sendRequest(InetSocketAddress, HttpRequest, NettyHttpStreamHandler)}. If the
+     * response is not completed within the response timeout, the future is cancelled with a
+     * <code>TimeoutException</code>. The timeout covers the wait for a channel too.
+     * 
+     * @param route
+     *            target server
+     * @param request
+     *            {@link HttpRequest}
+     * @param streamHandler
+     *            handler of the streamed response, null to aggregate the response
+     * @param responseTimeOutInMilliSecondes
+     *            deadline of the response, 0 to use the response timeout of the route
+     * @return
+     * @throws InterruptedException 
+     * @throws IOException 
+     */
+    public NettyHttpResponseFuture sendRequest(InetSocketAddress route, final HttpRequest request,
+                                               NettyHttpStreamHandler streamHandler,
+                                               int responseTimeOutInMilliSecondes)
+                                                                                  throws InterruptedException,
+                                                                                  IOException {
+        return sendRequest(route, request, streamHandler, responseTimeOutInMilliSecondes, null);
+    }
+
+    /**
+     * send http request to server specified by the route as part of a batch, see
+     * {@link #sendRequest(InetSocketAddress, HttpRequest, NettyHttpStreamHandler, int)}. If
+     * an idle channel is taken for the request, it is written by
+     * {@link NettyRequestBatch#flush()} along with the other requests of the batch. Requests
+     * of a batch are not hedged.
+     * 
+     * @param batch
+     *            batch from {@link #newBatch()}, null to write the request at once
+     * @return
+     * @throws InterruptedException 
+     * @throws IOException 
+     */
+    public NettyHttpResponseFuture sendRequest(InetSocketAddress route, final HttpRequest request,
+                                               NettyHttpStreamHandler streamHandler,
+                                               int responseTimeOutInMilliSecondes,
+                                               NettyRequestBatch batch)
+                                                                       throws InterruptedException,
+                                                                       IOException {
+        HedgingPolicy hedging = this.hedging;
+        if (null != hedging && null == streamHandler && null == batch
+            && hedging.isHedgeable(request)) {
+            return sendHedgedRequest(hedging, route, (FullHttpRequest) request,
+                responseTimeOutInMilliSecondes);
+        }
+        return sendAttempt(route, request, streamHandler, responseTimeOutInMilliSecondes, batch,
+            null);
+    }
+
+    /**
+     * @return a batch of requests, to be written with a single flush per channel, see
+     *         {@link #sendRequest(InetSocketAddress, HttpRequest, NettyHttpStreamHandler, int, NettyRequestBatch)}
+     */
+    public NettyRequestBatch newBatch() {
+        return new NettyRequestBatch(this);
+    }
+
+    private NettyHttpResponseFuture sendHedgedRequest(HedgingPolicy hedging,
+                                                      InetSocketAddress route,
+                                                      FullHttpRequest request,
+                                                      int responseTimeOutInMilliSecondes) {
+        long delay = hedging.delayInNanos(getKey(route), metricsEnabled ? metrics : null);
+        if (delay < 0) {
+            return sendAttempt(route, request, null, responseTimeOutInMilliSecondes, null, null);
         }
+        NettyHttpResponseFuture responseFuture = new NettyHttpResponseFuture(completionExecutor);
+        responseFuture.setStartTime(System.nanoTime());
+        hedging.deposit();
+        HedgedRequest hedgedRequest = new HedgedRequest(this, hedging, route, request
+            .retainedDuplicate(), responseTimeOutInMilliSecondes, responseFuture);
+        hedgedRequest.start(sendAttempt(route, request, null, responseTimeOutInMilliSecondes,
+            null, null));
+        hedgedRequest.setTimeout(timer.newTimeout(hedgedRequest, delay, TimeUnit.NANOSECONDS));
+        return responseFuture;
+    }
 
-        if (sendRequestUseNewChannel(route, request, responseFuture, forbidForceConnect)) {
+    /**
+     * send a single attempt of the request, see
+     * {@link #sendRequest(InetSocketAddress, HttpRequest, NettyHttpStreamHandler, int)}
+     * 
+     * @param busyChannel
+     *            channel of the attempt a hedge races, not used for the hedge, or null. A
+     *            hedge which would have to wait for a slot on a pipelined route fails, since
+     *            the slot may be behind the response it races.
+     */
+    NettyHttpResponseFuture sendAttempt(InetSocketAddress route, HttpRequest request,
+                                        NettyHttpStreamHandler streamHandler,
+                                        int responseTimeOutInMilliSecondes,
+                                        NettyRequestBatch batch, Channel busyChannel) {
+        final NettyHttpResponseFuture responseFuture = new NettyHttpResponseFuture(
+            completionExecutor);
+        responseFuture.setStreamHandler(streamHandler);
+        responseFuture.setCopyContent(copyResponseContent);
+        responseFuture.setHeadRequest(HttpMethod.HEAD.equals(request.method()));
+        responseFuture.setStartTime(System.nanoTime());
+        responseFuture.setEventListener(eventListener);
+        if (!services.isEmpty()) {
+            NettyService service = services.get(getKey(route));
+            if (null != service) {
+                NettyService.Endpoint endpoint = service.select(routeToCircuitBreaker);
+                if (null == endpoint) {
+                    ReferenceCountUtil.release(request);
+                    responseFuture.cancel(new IOException("no endpoint of service "
+                                                          + service.getName()));
+                    return responseFuture;
+                }
+                endpoint.inFlight.incrementAndGet();
+                responseFuture.setInFlight(endpoint.inFlight);
+                route = endpoint.route;
+            }
+        }
+        if (null == streamHandler && !routeToAggregationPolicy.isEmpty()
+            && NettyAggregationPolicy.STREAM == getAggregationPolicy(route)) {
+            ReferenceCountUtil.release(request);
+            responseFuture.cancel(new IllegalArgumentException("responses of route "
+                                                               + getKey(route)
+                                                               + " are streamed, no stream handler"));
             return responseFuture;
         }
+        if (!routeToConcurrencyLimiter.isEmpty()
+            && !admitRequest(route, request, responseFuture)) {
+            return responseFuture;
+        }
+        if (null != circuitBreakerTemplate
+            && !admitByCircuitBreaker(route, request, responseFuture)) {
+            return responseFuture;
+        }
+        if (metricsEnabled) {
+            NettyRouteMetrics routeMetrics = metrics.route(getKey(route));
+            routeMetrics.requestStarted();
+            responseFuture.setRouteMetrics(routeMetrics);
+        }
+        int timeOut = responseTimeOutInMilliSecondes > 0 ? responseTimeOutInMilliSecondes
+            : getResponseTimeOut(route);
+        if (timeOut > 0) {
+            responseFuture.setResponseTimeout(timer.newTimeout(new ResponseTimeout(this,
+                responseFuture, timeOut), timeOut, TimeUnit.MILLISECONDS));
+        }
+        // requests already waiting for a channel of the route go first, a later request
+        // queues behind them instead of taking a channel or a slot freed for them
+        if (!hasWaiters(getKey(route))) {
+            if (sendRequestUsePooledChannel(route, request, responseFuture, batch, busyChannel)) {
+                return responseFuture;
+            }
 
-        if (sendRequestUsePooledChannel(route, request, responseFuture, true)) {
+            if (sendRequestUseNewChannel(route, request, responseFuture, forbidForceConnect)) {
+                return responseFuture;
+            }
+        }
+        if (null != busyChannel && NettyHttpResponseFutureUtil.isPipelined(busyChannel)) {
+            ReferenceCountUtil.release(request);
+            responseFuture.cancel(new IOException("no other channel of " + getKey(route)
+                                                  + " for the hedged request"));
             return responseFuture;
         }
 
-        throw new IOException("send request failed");
+        waitForChannel(route, request, responseFuture);
+        return responseFuture;
     }
 
     /**
-     * return the specified channel to pool
+     * return the specified channel to pool. If there are requests waiting for a channel of
+     * the route, the channel is handed to the oldest one directly.
      * 
      * @param channel
      */
@@ -215,15 +657,38 @@ public class NettyChannelPool {
         if (NettyHttpResponseFutureUtil.getForceConnect(channel)) {
             return;
         }
-        InetSocketAddress route = (InetSocketAddress) channel.remoteAddress();
-        String key = getKey(route);
-        LinkedBlockingQueue<Channel> poolChannels = routeToPoolChannels.get(key);
+        if (null == channel || !channel.isActive()) {
+            return;
+        }
+        NettyClientEventListener eventListener = this.eventListener;
+        if (null != eventListener) {
+            eventListener.channelReleased(channel);
+        }
+        String key = getKey(NettyHttpResponseFutureUtil.getRoute(channel));
 
-        if (null != channel && channel.isActive()) {
-            if (poolChannels.offer(channel)) {
-                logger.log(Level.INFO, channel + "returned");
+        PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        if (null != pipelinedChannels) {
+            // the freed slot goes straight to the oldest waiting request
+            if (handSlotToWaiter(pipelinedChannels, channel, key)) {
+                dispatchWaiters(key);
             }
+            return;
+        }
+
+        PendingRequest waiter = pollWaiter(key);
+        if (null != waiter) {
+            sendRequestOnChannel(channel, waiter.getRequest(), waiter.getResponseFuture());
+            return;
+        }
+        if (retiredRoutes.contains(key)) {
+            channel.close();
+            return;
         }
+
+        getPoolChannels(key).offer(channel);
+
+        // a request may have started waiting after pollWaiter found the queue empty
+        dispatchWaiters(key);
     }
 
     /**
@@ -232,16 +697,37 @@ public class NettyChannelPool {
      * @throws InterruptedException
      */
     public void close() throws InterruptedException {
+        ScheduledFuture<?> minIdleTask = this.minIdleTask.get();
+        if (null != minIdleTask) {
+            minIdleTask.cancel(false);
+        }
+        timer.stop();
+        metrics.close();
+        for (Queue<PendingRequest> waiters : routeToWaiters.values()) {
+            PendingRequest waiter = waiters.poll();
+            while (null != waiter) {
+                waiter.fail(new IOException("channel pool closed"));
+                waiter = waiters.poll();
+            }
+        }
+
         ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
-        for (LinkedBlockingQueue<Channel> queue : routeToPoolChannels.values()) {
-            for (Channel channel : queue) {
+        for (IdleChannels poolChannels : routeToPoolChannels.values()) {
+            for (Channel channel : poolChannels.channels()) {
+                removeChannel(channel, null);
+                channelGroup.add(channel);
+            }
+        }
+        for (PipelinedChannels pipelinedChannels : routeToPipelinedChannels.values()) {
+            for (Channel channel : pipelinedChannels.channels()) {
                 removeChannel(channel, null);
                 channelGroup.add(channel);
             }
         }
         channelGroup.close().sync();
         group.shutdownGracefully();
+        addressResolver.close();
     }
 
     /**
@@ -252,46 +738,149 @@ public class NettyChannelPool {
      */
     private void removeChannel(Channel channel, Throwable cause) {
 
-        InetSocketAddress route = (InetSocketAddress) channel.remoteAddress();
+        InetSocketAddress route = NettyHttpResponseFutureUtil.getRoute(channel);
         String key = getKey(route);
 
         NettyHttpResponseFutureUtil.cancel(channel, cause);
 
         if (!NettyHttpResponseFutureUtil.getForceConnect(channel)) {
-            LinkedBlockingQueue<Channel> poolChannels = routeToPoolChannels.get(key);
-            if (poolChannels.remove(channel)) {
-                logger.log(Level.INFO, channel + " removed");
+            PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+            if (null != pipelinedChannels) {
+                pipelinedChannels.remove(channel);
+            } else {
+                getPoolChannels(key).remove(channel);
             }
             getAllowCreatePerRoute(key).release();
+            createChannelForWaiters(route);
+            if (retiredRoutes.contains(key)) {
+                forgetRetiredRoute(key);
+            }
         }
     }
 
     private boolean sendRequestUsePooledChannel(InetSocketAddress route, final HttpRequest request,
                                                 NettyHttpResponseFuture responseFuture,
-                                                boolean isWaiting) throws InterruptedException {
-        LinkedBlockingQueue<Channel> poolChannels = getPoolChannels(getKey(route));
-        Channel channel = poolChannels.poll();
-
-        while (null != channel && !channel.isActive()) {
-            channel = poolChannels.poll();
+                                                NettyRequestBatch batch, Channel busyChannel) {
+        String key = getKey(route);
+        Channel channel = pollActiveChannel(key, busyChannel);
+        if (null == channel) {
+            return false;
         }
 
-        if (null == channel || !channel.isActive()) {
-            if (!isWaiting) {
-                return false;
+        PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        if (null != batch && request instanceof FullHttpRequest) {
+            batch.add(channel, request, responseFuture);
+        } else if (null != pipelinedChannels && null == busyChannel) {
+            // a slot freed on the event loop may meanwhile go to a later waiting request,
+            // so the request queues and the slot goes to the oldest waiter on the loop
+            queueWaiter(key, request, responseFuture);
+            if (handSlotToWaiter(pipelinedChannels, channel, key)) {
+                dispatchWaiters(key);
             }
-            channel = poolChannels.poll(connectTimeOutInMilliSecondes, TimeUnit.MILLISECONDS);
-            if (null == channel || !channel.isActive()) {
-                logger.log(Level.WARNING, "obtain channel from pool timeout");
-                return false;
+        } else {
+            // a hedge is written on the slot reserved for it, which is not on busyChannel
+            sendRequestOnChannel(channel, request, responseFuture);
+        }
+        return true;
+    }
+
+    /**
+     * write the requests of a batch and flush each of their channels once, invoked on the
+     * event loop shared by the channels. The requests whose future is already completed,
+     * e.g. timed out before the batch was flushed, are released and not written.
+     */
+    void writeBatch(List<NettyRequestBatch.Item> items) {
+        Set<Channel> channels = new LinkedHashSet<Channel>();
+        for (NettyRequestBatch.Item item : items) {
+            if (item.responseFuture.isDone() || item.responseFuture.isCancelled()) {
+                // nobody waits for the response, the channel goes to the next request
+                ReferenceCountUtil.release(item.request);
+                returnChannel(item.channel);
+                continue;
             }
+            sendRequestOnChannel(item.channel, item.request, item.responseFuture, false);
+            channels.add(item.channel);
         }
+        for (Channel channel : channels) {
+            channel.flush();
+        }
+    }
 
-        logger.log(Level.INFO, channel + " reuse");
-        NettyHttpResponseFutureUtil.attributeResponse(channel, responseFuture);
+    private void sendRequestOnChannel(Channel channel, HttpRequest request,
+                                      NettyHttpResponseFuture responseFuture) {
+        sendRequestOnChannel(channel, request, responseFuture, true);
+    }
 
-        channel.writeAndFlush(request).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-        return true;
+    private void sendRequestOnChannel(final Channel channel, final HttpRequest request,
+                                      final NettyHttpResponseFuture responseFuture,
+                                      final boolean flush) {
+        // responses of a pipelined channel are matched to the requests in write order, and
+        // HTTP/2 stream ids must be written in increasing order, so assigning the response
+        // and writing the request must happen together on the loop
+        if ((NettyHttpResponseFutureUtil.isPipelined(channel) || NettyHttpResponseFutureUtil
+            .isMultiplexed(channel)) && !channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    sendRequestOnChannel(channel, request, responseFuture, flush);
+                }
+            });
+            return;
+        }
+        responseFuture.channelAcquired(channel);
+        final int streamId = NettyHttpResponseFutureUtil.isMultiplexed(channel) ? nextStreamId(channel)
+            : 0;
+        if (streamId < 0) {
+            ReferenceCountUtil.release(request);
+            responseFuture.cancel(new ClosedChannelException());
+            return;
+        }
+        if (streamId > 0) {
+            request.headers().setInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(),
+                streamId);
+            request.headers().set(HttpConversionUtil.ExtensionHeaderNames.SCHEME.text(),
+                HttpScheme.HTTP.name());
+            NettyHttpResponseFutureUtil.attributeStream(channel, streamId, responseFuture);
+        } else {
+            NettyHttpResponseFutureUtil.attributeResponse(channel, responseFuture);
+        }
+        ChannelFuture writeFuture = flush ? NettyHttpRequestUtil.writeAndFlush(channel, request)
+            : channel.write(request);
+        writeFuture.addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                responseFuture.requestWritten(channel, future.cause());
+                if (future.isSuccess()) {
+                    return;
+                }
+                // a failed stream leaves the other streams of the connection alone
+                if (streamId > 0 && future.channel().isActive()) {
+                    NettyHttpResponseFutureUtil.pollStreamResponse(future.channel(), streamId);
+                    returnChannel(future.channel());
+                    responseFuture.cancel(future.cause());
+                    return;
+                }
+                // the channel may have been closed after it was taken from the pool
+                responseFuture.cancel(future.cause());
+                future.channel().close();
+            }
+        });
+    }
+
+    /**
+     * @return the id of the next stream opened by the client, or -1 if the channel is
+     *         closed or has run out of stream ids
+     */
+    private int nextStreamId(Channel channel) {
+        HttpToHttp2ConnectionHandler http2Handler = channel.pipeline().get(
+            HttpToHttp2ConnectionHandler.class);
+        if (null == http2Handler) {
+            return -1;
+        }
+        int streamId = http2Handler.connection().local().incrementAndGetNextStreamId();
+        return streamId > 0 ? streamId : -1;
     }
 
     private boolean sendRequestUseNewChannel(final InetSocketAddress route,
@@ -300,75 +889,1142 @@ public class NettyChannelPool {
                                              boolean forceConnect) {
         ChannelFuture future = createChannelFuture(route, forceConnect);
         if (null != future) {
+            sendRequestOnConnect(future, route, request, responseFuture);
+            return true;
+        }
+        return false;
+    }
+
+    private void sendRequestOnConnect(ChannelFuture future, InetSocketAddress route,
+                                      final HttpRequest request,
+                                      final NettyHttpResponseFuture responseFuture) {
+        final String key = getKey(route);
+        final PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        final boolean forceConnect = NettyHttpResponseFutureUtil.getForceConnect(future.channel());
+        final boolean http2 = http2Routes.contains(key);
+        if (http2) {
+            NettyHttpResponseFutureUtil.attributeMultiplexed(future.channel());
+        } else if (null != pipelinedChannels && !forceConnect) {
+            NettyHttpResponseFutureUtil.attributePipelined(future.channel());
+        }
+        if (null != pipelinedChannels && !forceConnect) {
+            PipelinedChannels.attributeOutstanding(future.channel(), 1);
+        }
+        if (!http2) {
             NettyHttpResponseFutureUtil.attributeResponse(future.channel(), responseFuture);
-            NettyHttpResponseFutureUtil.attributeRoute(future.channel(), route);
-            future.addListener(new ChannelFutureListener() {
+        } else if (http2Upgrade) {
+            NettyHttpResponseFutureUtil.attributeStream(future.channel(), UPGRADE_STREAM_ID,
+                responseFuture);
+        }
+        NettyHttpResponseFutureUtil.attributeRoute(future.channel(), route);
+        future.addListener(new ChannelFutureListener() {
 
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    if (future.isSuccess()) {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                final Channel channel = future.channel();
+                if (future.isSuccess()) {
+                    channel.closeFuture().addListener(closeListener);
+                    if (http2 && !http2Upgrade) {
+                        // the connection preface is written when the channel becomes active,
+                        // which happens right after this listener
+                        channel.eventLoop().execute(new Runnable() {
 
-                        future.channel().closeFuture().addListener(new ChannelFutureListener() {
+                            @Override
+                            public void run() {
+                                sendRequestOnChannel(channel, request, responseFuture);
+                                if (!forceConnect) {
+                                    pipelinedChannels.add(channel);
+                                    dispatchWaiters(key);
+                                }
+                            }
+                        });
+                        return;
+                    }
+                    responseFuture.channelAcquired(channel);
+                    ChannelFuture writeFuture = NettyHttpRequestUtil.writeAndFlush(channel,
+                        request).addListener(CLOSE_ON_FAILURE);
+                    if (null != responseFuture.getEventListener()) {
+                        writeFuture.addListener(new ChannelFutureListener() {
 
                             @Override
                             public void operationComplete(ChannelFuture future) throws Exception {
-
-                                logger.log(Level.SEVERE, future.channel() + " closed, exception: "
-                                                         + future.cause());
-                                removeChannel(future.channel(), future.cause());
+                                responseFuture.requestWritten(channel, future.cause());
                             }
-
                         });
-                        future.channel().writeAndFlush(request).addListener(CLOSE_ON_FAILURE);
-                    } else {
-                        logger.log(Level.SEVERE, future.channel() + " connect failed, exception: "
-                                                 + future.cause());
+                    }
+                    // an upgrading channel joins the route once the upgrade succeeded
+                    if (null != pipelinedChannels && !forceConnect && !http2) {
+                        pipelinedChannels.add(channel);
+                        dispatchWaiters(key);
+                    }
+                } else {
+                    logger.log(Level.SEVERE, channel + " connect failed, exception: "
+                                             + future.cause());
 
-                        NettyHttpResponseFutureUtil.cancel(future.channel(), future.cause());
-                        if (!NettyHttpResponseFutureUtil.getForceConnect(future.channel())) {
-                            releaseCreatePerRoute(future.channel());
-                        }
+                    responseFuture.cancel(future.cause());
+                    if (!forceConnect) {
+                        releaseCreatePerRoute(channel);
                     }
                 }
+            }
 
-            });
-            return true;
-        }
-        return false;
+        });
     }
 
-    public void releaseCreatePerRoute(Channel channel) {
-        InetSocketAddress route = NettyHttpResponseFutureUtil.getRoute(channel);
-        getAllowCreatePerRoute(getKey(route)).release();
-    }
+    /**
+     * queue the request until a channel of the route is returned or the acquire timeout
+     * expires. The timeout is driven by the pool timer, so no thread is parked.
+     */
+    private void waitForChannel(InetSocketAddress route, HttpRequest request,
+                                NettyHttpResponseFuture responseFuture) {
+        String key = getKey(route);
+        queueWaiter(key, request, responseFuture);
 
-    private Semaphore getAllowCreatePerRoute(String key) {
-        Semaphore allowCreate = maxPerRoute.get(key);
-        if (null == allowCreate) {
-            Semaphore newAllowCreate = new Semaphore(DEFAULT_MAX_PER_ROUTE);
-            allowCreate = maxPerRoute.putIfAbsent(key, newAllowCreate);
-            if (null == allowCreate) {
-                allowCreate = newAllowCreate;
-            }
-        }
+        // a channel may have been returned or closed before the request was queued
+        dispatchWaiters(key);
+        createChannelForWaiters(route);
+    }
 
-        return allowCreate;
+    private void queueWaiter(String key, HttpRequest request,
+                             NettyHttpResponseFuture responseFuture) {
+        Queue<PendingRequest> waiters = getWaiters(key);
+        PendingRequest waiter = new PendingRequest(request, responseFuture, waiters);
+        waiter.setTimeout(timer.newTimeout(waiter, connectTimeOutInMilliSecondes,
+            TimeUnit.MILLISECONDS));
+        waiters.offer(waiter);
     }
 
-    private LinkedBlockingQueue<Channel> getPoolChannels(String route) {
-        LinkedBlockingQueue<Channel> oldPoolChannels = routeToPoolChannels.get(route);
-        if (null == oldPoolChannels) {
-            LinkedBlockingQueue<Channel> newPoolChannels = new LinkedBlockingQueue<Channel>();
-            oldPoolChannels = routeToPoolChannels.putIfAbsent(route, newPoolChannels);
-            if (null == oldPoolChannels) {
-                oldPoolChannels = newPoolChannels;
+    /**
+     * hand idle channels of the route, or free slots of pipelined channels, to waiting
+     * requests until either side runs out
+     */
+    private void dispatchWaiters(String key) {
+        Queue<PendingRequest> waiters = routeToWaiters.get(key);
+        while (null != waiters && !waiters.isEmpty()) {
+            Channel channel = pollActiveChannel(key, null);
+            if (null == channel) {
+                return;
+            }
+            PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+            if (null != pipelinedChannels) {
+                if (!handSlotToWaiter(pipelinedChannels, channel, key)) {
+                    // the event loop of the channel goes on with the next waiters
+                    return;
+                }
+                continue;
+            }
+            PendingRequest waiter = pollWaiter(key);
+            if (null == waiter) {
+                getPoolChannels(key).offer(channel);
+                continue;
+            }
+            sendRequestOnChannel(channel, waiter.getRequest(), waiter.getResponseFuture());
+        }
+    }
+
+    /**
+     * hand a reserved slot of a pipelined or HTTP/2 channel to the oldest waiting request,
+     * or release it if no request waits. The waiter is polled on the event loop of the
+     * channel right before its request is written, so the waiting requests are written in
+     * queue order.
+     * 
+     * @return false if the handoff is left to the event loop of the channel
+     */
+    private boolean handSlotToWaiter(final PipelinedChannels pipelinedChannels,
+                                     final Channel channel, final String key) {
+        if (!channel.eventLoop().inEventLoop()) {
+            pipelinedChannels.handoffQueued();
+            channel.eventLoop().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    handSlotToWaiter(pipelinedChannels, channel, key);
+                    pipelinedChannels.handoffDone();
+                    dispatchWaiters(key);
+                }
+            });
+            return false;
+        }
+        PendingRequest waiter = channel.isActive() ? pollWaiter(key) : null;
+        if (null == waiter) {
+            releasePipelined(pipelinedChannels, channel, key);
+            return true;
+        }
+        sendRequestOnChannel(channel, waiter.getRequest(), waiter.getResponseFuture());
+        return true;
+    }
+
+    private boolean hasWaiters(String key) {
+        Queue<PendingRequest> waiters = routeToWaiters.get(key);
+        return null != waiters && !waiters.isEmpty();
+    }
+
+    /**
+     * create a new channel for the oldest waiting request if the route allows one more
+     */
+    private void createChannelForWaiters(InetSocketAddress route) {
+        String key = getKey(route);
+        Queue<PendingRequest> waiters = routeToWaiters.get(key);
+        if (null == waiters || waiters.isEmpty()) {
+            return;
+        }
+        // the waiters a reserved slot is on its way to need no new channel
+        PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        int handoffs = null == pipelinedChannels ? 0 : pipelinedChannels.handoffs();
+        if (handoffs > 0 && waiters.size() <= handoffs) {
+            return;
+        }
+
+        Semaphore allowCreate = getAllowCreatePerRoute(key);
+        if (!allowCreate.tryAcquire()) {
+            return;
+        }
+        PendingRequest waiter = pollWaiter(key);
+        if (null == waiter) {
+            allowCreate.release();
+            return;
+        }
+
+        ChannelFuture future = connect(route, allowCreate);
+        if (null == future) {
+            waiter.getResponseFuture().cancel(new IOException("send request failed"));
+            ReferenceCountUtil.release(waiter.getRequest());
+            return;
+        }
+        sendRequestOnConnect(future, route, waiter.getRequest(), waiter.getResponseFuture());
+    }
+
+    private PendingRequest pollWaiter(String key) {
+        Queue<PendingRequest> waiters = routeToWaiters.get(key);
+        if (null == waiters) {
+            return null;
+        }
+        PendingRequest waiter = waiters.poll();
+        while (null != waiter && !waiter.tryClaim()) {
+            waiter = waiters.poll();
+        }
+        return waiter;
+    }
+
+    private Channel pollActiveChannel(String key, Channel busyChannel) {
+        PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        if (null != pipelinedChannels) {
+            return pipelinedChannels.acquire(busyChannel);
+        }
+
+        IdleChannels poolChannels = getPoolChannels(key);
+        Channel channel = poolChannels.poll();
+
+        while (null != channel && !channel.isActive()) {
+            channel = poolChannels.poll();
+        }
+        return channel;
+    }
+
+    /**
+     * Setter method for property <tt>completionExecutor</tt>.
+     * 
+     * @param completionExecutor executor to run listeners of the response futures on. 
+     *            If null, listeners run inline on the event loop and must not block.
+     */
+    public void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * Setter method for property <tt>copyResponseContent</tt>.
+     * 
+     * @param copyResponseContent if false, the default, the responses keep the buffers read
+     *            from the channel, which saves a copy and an allocation per chunk, and every
+     *            response must be released by <code>NettyHttpResponse.release()</code>. If
+     *            true, response bodies are copied to the heap and the buffers read from the
+     *            channel are released right away, so the responses need not be released.
+     */
+    public void setCopyResponseContent(boolean copyResponseContent) {
+        this.copyResponseContent = copyResponseContent;
+    }
+
+    /**
+     * Setter method for property <tt>contentDecompression</tt>. Applies to the channels
+     * created from now on.
+     * 
+     * @param contentDecompression if true, the gzip and deflate response bodies are decoded
+     *            as they are read, before they are aggregated or streamed. False by default.
+     */
+    public void setContentDecompression(boolean contentDecompression) {
+        this.contentDecompression = contentDecompression;
+    }
+
+    /**
+     * Getter method for property <tt>contentDecompression</tt>.
+     * 
+     * @return true if the response bodies are decoded
+     */
+    public boolean getContentDecompression() {
+        return contentDecompression;
+    }
+
+    /**
+     * Setter method for property <tt>metricsEnabled</tt>.
+     * 
+     * @param metricsEnabled if true, the default, requests and channels are recorded in the
+     *            metrics of their routes
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Setter method for property <tt>eventListener</tt>. Must be set before the first
+     * request is sent.
+     * 
+     * @param eventListener listener notified of the events of the requests and channels,
+     *            null to notify nobody
+     */
+    public void setEventListener(NettyClientEventListener eventListener) {
+        this.eventListener = null == eventListener ? null : new SafeClientEventListener(
+            eventListener);
+    }
+
+    /**
+     * log the traffic of a sample of the channels created from now on, by a
+     * <code>LoggingHandler</code> at INFO level. The hex dump is expensive, so it is meant
+     * for debugging only.
+     * 
+     * @param everyNthChannel
+     *            log every nth channel, 1 to log all channels, 0 to log none, the default
+     */
+    public void setWireLogSampling(int everyNthChannel) {
+        this.wireLogSampling = everyNthChannel;
+    }
+
+    private void addWireLogging(Channel channel) {
+        int everyNthChannel = wireLogSampling;
+        if (everyNthChannel > 0
+            && 0 == (wireLogCounter.getAndIncrement() & Integer.MAX_VALUE) % everyNthChannel) {
+            channel.pipeline().addLast("log", new LoggingHandler(LogLevel.INFO));
+        }
+    }
+
+    /**
+     * consolidate the flushes of the channels created from now on. The flushes issued while
+     * the event loop is busy, by the requests written from other threads or by the pipelined
+     * and multiplexed requests written in the same tick, are merged into one write to the
+     * socket at the end of the tick.
+     * 
+     * @param maxPendingFlushes
+     *            max flushes held back before one is written anyway, 0 to write every flush,
+     *            the default
+     */
+    public void setFlushConsolidation(int maxPendingFlushes) {
+        this.flushConsolidation = maxPendingFlushes;
+    }
+
+    private void addFlushConsolidation(Channel channel) {
+        int maxPendingFlushes = flushConsolidation;
+        if (maxPendingFlushes > 0) {
+            // next to the head, below the wire logging, so that every flush of the pipeline
+            // goes through it and the logging shows the actual writes
+            channel.pipeline().addLast(FlushConsolidationHandler.class.getSimpleName(),
+                new FlushConsolidationHandler(maxPendingFlushes, true));
+        }
+    }
+
+    /**
+     * Getter method for property <tt>metrics</tt>.
+     * 
+     * @return the metrics of the routes of the pool
+     */
+    public NettyPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Setter method for property <tt>eventLoopAffinity</tt>. Must be set before the first
+     * request is sent.
+     * 
+     * @param eventLoopAffinity if true, idle channels of each route are sharded per event
+     *            loop. Requests sent from an event loop thread prefer channels of that loop
+     *            and new channels are connected on it, other threads spread over the loops
+     *            round-robin.
+     */
+    public void setEventLoopAffinity(boolean eventLoopAffinity) {
+        this.eventLoopAffinity = eventLoopAffinity;
+    }
+
+    /**
+     * open up to n new channels to the route ahead of time and put them into the pool.
+     * Every channel takes a permit of maxPerRoute, so fewer channels are opened if the
+     * route is exhausted. HTTP/2 routes connected with the upgrade are not warmed up.
+     * 
+     * @param route
+     *            target server
+     * @param n
+     *            number of channels to open
+     * @return the number of channels being connected
+     */
+    public int warmUp(InetSocketAddress route, int n) {
+        String key = getKey(route);
+        if (http2Upgrade && http2Routes.contains(key)) {
+            // the upgrade needs a request, the channels are opened by the first requests
+            return 0;
+        }
+        Semaphore allowCreate = getAllowCreatePerRoute(key);
+        AtomicInteger warmingUp = getWarmingUp(key);
+
+        int started = 0;
+        while (started < n && allowCreate.tryAcquire()) {
+            ChannelFuture future = connect(route, allowCreate);
+            if (null == future) {
+                break;
+            }
+            warmingUp.incrementAndGet();
+            warmUpOnConnect(future, route, warmingUp);
+            started++;
+        }
+        return started;
+    }
+
+    /**
+     * open channels for every route configured in minIdlePerRoute until the route has at
+     * least minIdle idle or connecting channels
+     * 
+     * @return the number of channels being connected
+     */
+    public int warmUpAll() {
+        int started = 0;
+        for (Entry<String, Integer> entry : minIdlePerRoute.entrySet()) {
+            String key = entry.getKey();
+            PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+            int idle = null != pipelinedChannels ? pipelinedChannels.idleSize() : getPoolChannels(
+                key).size();
+            int missing = entry.getValue() - idle - getWarmingUp(key).get();
+            if (missing > 0) {
+                started += warmUp(toRoute(key), missing);
+            }
+        }
+        return started;
+    }
+
+    /**
+     * keep at least minIdle channels in the pool of every configured route. The pools are
+     * topped up by a background task, e.g. after idle channels are closed by the
+     * <code>IdleStateHandler</code> or the server.
+     * 
+     * @param minIdlePerRoute
+     *            min number of idle channels per route, the key is host:port as in maxPerRoute
+     * @param checkIntervalInMilliSecondes
+     *            interval of the background task
+     */
+    public void keepMinIdle(Map<String, Integer> minIdlePerRoute, int checkIntervalInMilliSecondes) {
+        this.minIdlePerRoute.putAll(minIdlePerRoute);
+        if (null != minIdleTask.get() || this.minIdlePerRoute.isEmpty()) {
+            return;
+        }
+        ScheduledFuture<?> task = group.next().scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    warmUpAll();
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "keep min idle channels failed", e);
+                }
+            }
+        }, checkIntervalInMilliSecondes, checkIntervalInMilliSecondes, TimeUnit.MILLISECONDS);
+        // a concurrent caller may have scheduled its task first, only one is kept
+        if (!minIdleTask.compareAndSet(null, task)) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Setter method for property <tt>addressResolver</tt>. The resolver is closed with the
+     * pool.
+     * 
+     * @param addressResolver resolver of unresolved routes
+     */
+    public void setAddressResolver(NettyAddressResolver addressResolver) {
+        if (null == addressResolver) {
+            throw new NullPointerException("addressResolver");
+        }
+        NettyAddressResolver oldAddressResolver = this.addressResolver;
+        this.addressResolver = addressResolver;
+        if (oldAddressResolver != addressResolver) {
+            oldAddressResolver.close();
+        }
+    }
+
+    /**
+     * enable HTTP/1.1 pipelining for the specified routes. Requests to such a route share
+     * the connected channels, up to the configured number of outstanding requests per
+     * channel, and always go to the least-loaded channel. Responses are completed in the
+     * order the requests were written. Only enable it for servers known to support
+     * pipelining, and prefer idempotent requests, since outstanding requests are cancelled
+     * if the channel is closed. Must be set before the first request is sent.
+     * 
+     * @param maxPipelinedRequestsPerRoute
+     *            max outstanding requests per channel, the key is host:port as in maxPerRoute
+     */
+    public void setPipelining(Map<String, Integer> maxPipelinedRequestsPerRoute) {
+        for (Entry<String, Integer> entry : maxPipelinedRequestsPerRoute.entrySet()) {
+            routeToPipelinedChannels.put(entry.getKey(), new PipelinedChannels(entry.getValue()));
+        }
+    }
+
+    /**
+     * limit the size of the response bodies. A response exceeding the limit of its route
+     * fails with a <code>TooLongFrameException</code> as soon as its Content-Length or the
+     * received chunks exceed it, and its channel is closed instead of being returned to the
+     * pool. The limits of the HTTP/2 routes apply to the channels connected afterwards.
+     * 
+     * @param maxContentLength
+     *            max content length of the routes without their own limit, 1MB by default
+     * @param maxContentLengthPerRoute
+     *            max content length per route, the key is host:port as in maxPerRoute,
+     *            may be null
+     */
+    public void setMaxContentLength(int maxContentLength,
+                                    Map<String, Integer> maxContentLengthPerRoute) {
+        this.maxContentLength = maxContentLength;
+        if (null != maxContentLengthPerRoute) {
+            routeToMaxContentLength.putAll(maxContentLengthPerRoute);
+        }
+    }
+
+    /**
+     * Setter method for property <tt>aggregationPolicy</tt>.
+     * 
+     * @param aggregationPolicyPerRoute
+     *            how the responses of a route are received, the key is host:port as in
+     *            maxPerRoute. Routes not listed use {@link NettyAggregationPolicy#AGGREGATE}.
+     */
+    public void setAggregationPolicy(Map<String, NettyAggregationPolicy> aggregationPolicyPerRoute) {
+        routeToAggregationPolicy.putAll(aggregationPolicyPerRoute);
+    }
+
+    /**
+     * fail the responses which are not completed within the timeout after their requests
+     * are sent. A timed out request still waiting for a channel is dropped. A timed out
+     * HTTP/2 stream is reset and its connection is kept, other channels are closed, since
+     * the rest of the response can not be skipped, which releases their permits at once.
+     * 
+     * @param responseTimeOutInMilliSecondes
+     *            timeout of the routes without their own timeout, 0 means no timeout, the
+     *            default
+     * @param responseTimeOutPerRoute
+     *            timeout per route, the key is host:port as in maxPerRoute, may be null
+     */
+    public void setResponseTimeOut(int responseTimeOutInMilliSecondes,
+                                   Map<String, Integer> responseTimeOutPerRoute) {
+        this.responseTimeOutInMilliSecondes = responseTimeOutInMilliSecondes;
+        if (null != responseTimeOutPerRoute) {
+            routeToResponseTimeOut.putAll(responseTimeOutPerRoute);
+        }
+    }
+
+    /**
+     * Getter method for property <tt>responseTimeOut</tt>.
+     * 
+     * @param route
+     * @return the response timeout of the route in milliseconds, 0 means no timeout
+     */
+    public int getResponseTimeOut(InetSocketAddress route) {
+        if (routeToResponseTimeOut.isEmpty()) {
+            return responseTimeOutInMilliSecondes;
+        }
+        Integer timeOut = routeToResponseTimeOut.get(getKey(route));
+        return null == timeOut ? responseTimeOutInMilliSecondes : timeOut;
+    }
+
+    /**
+     * define a logical service or replace its endpoints. A request whose route is the name
+     * of a service is sent to one of its endpoints, chosen by the policy from the number of
+     * outstanding requests of the endpoints. Each endpoint is an ordinary route, with its
+     * own maxPerRoute, timeouts and metrics keyed by its host:port. The channels of the
+     * endpoints removed, HTTP/1, pipelined and HTTP/2 alike, are closed once their
+     * outstanding requests are completed, unless the endpoint still belongs to another
+     * service. With the last channel its pool, breaker and metrics are removed as well.
+     * 
+     * @param name
+     *            host:port of the requests to the service, e.g. user-service:80
+     * @param endpoints
+     *            the endpoints of the service, an empty list fails the requests with an
+     *            <code>IOException</code>
+     * @param policy
+     *            how an endpoint is chosen, ignored if the service is already defined
+     */
+    public void setService(String name, List<InetSocketAddress> endpoints,
+                           NettyLoadBalancePolicy policy) {
+        NettyService service = services.get(name);
+        if (null == service) {
+            NettyService newService = new NettyService(name, policy);
+            service = services.putIfAbsent(name, newService);
+            if (null == service) {
+                service = newService;
+            }
+        }
+        List<String> keys = new ArrayList<String>(endpoints.size());
+        for (InetSocketAddress endpoint : endpoints) {
+            keys.add(getKey(endpoint));
+        }
+        retiredRoutes.removeAll(keys);
+        for (InetSocketAddress removed : service.setEndpoints(endpoints, keys)) {
+            String key = getKey(removed);
+            if (!isServiceEndpoint(key)) {
+                retireRoute(key);
+            }
+        }
+    }
+
+    /**
+     * Getter method for property <tt>service</tt>.
+     * 
+     * @param name
+     *            host:port of the service
+     * @return the service, null if not defined
+     */
+    public NettyService getService(String name) {
+        return services.get(name);
+    }
+
+    /**
+     * remove a logical service, its name is an ordinary route afterwards. The channels of
+     * its endpoints are kept until they are idle for maxIdleTimeInMilliSecondes.
+     * 
+     * @param name
+     *            host:port of the service
+     */
+    public void removeService(String name) {
+        services.remove(name);
+    }
+
+    /**
+     * @return true if the route is an endpoint of any service
+     */
+    private boolean isServiceEndpoint(String key) {
+        for (NettyService service : services.values()) {
+            for (InetSocketAddress endpoint : service.getEndpoints()) {
+                if (key.equals(getKey(endpoint))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * close the channels of an endpoint removed from its service, the idle ones at once and
+     * the others once their outstanding requests are completed, see
+     * {@link #returnChannel(Channel)}
+     */
+    private void retireRoute(String key) {
+        retiredRoutes.add(key);
+        IdleChannels poolChannels = routeToPoolChannels.get(key);
+        if (null != poolChannels) {
+            Channel channel;
+            while (null != (channel = poolChannels.poll())) {
+                channel.close();
+            }
+        }
+        PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        if (null != pipelinedChannels) {
+            for (Channel channel : pipelinedChannels.channels()) {
+                if (pipelinedChannels.isIdle(channel)) {
+                    channel.close();
+                }
+            }
+        }
+        // a route without any channel has nothing left to close
+        forgetRetiredRoute(key);
+    }
+
+    /**
+     * remove the state of a retired route once its last channel is closed, so that the
+     * endpoints removed from services over time do not pile up. The settings of the route,
+     * e.g. its maxPerRoute or pipelining, are kept, and the route is an ordinary route
+     * afterwards.
+     */
+    private void forgetRetiredRoute(String key) {
+        Semaphore allowCreate = maxPerRoute.get(key);
+        if (null != allowCreate) {
+            Integer max = configuredMaxPerRoute.get(key);
+            if (allowCreate.availablePermits() < (null == max ? DEFAULT_MAX_PER_ROUTE : max)) {
+                // a channel is still open or connecting
+                return;
+            }
+        }
+        if (hasWaiters(key) || !retiredRoutes.remove(key)) {
+            return;
+        }
+        if (!configuredMaxPerRoute.containsKey(key)) {
+            maxPerRoute.remove(key);
+        }
+        routeToPoolChannels.remove(key);
+        Queue<PendingRequest> waiters = routeToWaiters.get(key);
+        if (null != waiters && waiters.isEmpty()) {
+            routeToWaiters.remove(key, waiters);
+        }
+        routeToWarmingUp.remove(key);
+        routeToCircuitBreaker.remove(key);
+        metrics.remove(key);
+    }
+
+    /**
+     * release a slot of a pipelined or HTTP/2 channel, and close the channel with its last
+     * request if its route is retired
+     */
+    private void releasePipelined(PipelinedChannels pipelinedChannels, Channel channel,
+                                  String key) {
+        if (0 == pipelinedChannels.release(channel) && retiredRoutes.contains(key)) {
+            channel.close();
+        }
+    }
+
+    /**
+     * hedge the requests of idempotent methods, GET, HEAD, OPTIONS, PUT and DELETE, whose
+     * body is in memory. If the response is not completed within the hedge delay, a
+     * duplicate is sent on another channel, or to another endpoint of a service. With
+     * pipelining no duplicate is sent if no other channel has a free slot or can be opened.
+     * The first successful response completes the future and the other request is aborted,
+     * its channel is closed, or its stream reset with HTTP/2. A pipelined request is left to
+     * complete and its response dropped, the other requests of its channel go on. The
+     * duplicates are limited to budgetPercent percent of the hedgeable requests, so a slow
+     * server is not flooded.
+     * 
+     * @param delayInMilliSecondes
+     *            hedge delay, used until the percentile is known. With 0 the requests are
+     *            only hedged once the percentile is known, and with a percentile of 0 too
+     *            hedging is disabled.
+     * @param percentile
+     *            hedge delay as a percentile of the latency of the route, e.g. 95, 0 for
+     *            the fixed delay. Needs the metrics, services use the fixed delay.
+     * @param budgetPercent
+     *            max duplicates per 100 hedgeable requests
+     */
+    public void setHedging(int delayInMilliSecondes, double percentile, int budgetPercent) {
+        if (delayInMilliSecondes <= 0 && percentile <= 0) {
+            hedging = null;
+            return;
+        }
+        hedging = new HedgingPolicy(delayInMilliSecondes, percentile, budgetPercent);
+    }
+
+    /**
+     * track the health of every route by a {@link NettyCircuitBreaker}. While the breaker of
+     * a route is open its requests are rejected at once, their futures are cancelled with a
+     * <code>RejectedExecutionException</code>, and the endpoints of a service whose
+     * breakers are open are skipped. After the open time probes are let through to decide
+     * whether the route has recovered. A response timeout should be set, otherwise a hung
+     * probe keeps the breaker half-open. Must be set before the first request is sent.
+     * 
+     * @param consecutiveFailures
+     *            failures in a row which open the breaker, 0 to disable
+     * @param failureRatePercent
+     *            failure rate of a window which opens the breaker, 0 to disable
+     * @param failureRateWindow
+     *            number of requests of a window
+     * @param openTimeInMilliSecondes
+     *            how long a breaker stays open before probes are let through
+     * @param halfOpenProbes
+     *            number of probes which must succeed to close the breaker
+     */
+    public void setCircuitBreaker(int consecutiveFailures, int failureRatePercent,
+                                  int failureRateWindow, int openTimeInMilliSecondes,
+                                  int halfOpenProbes) {
+        if (consecutiveFailures <= 0 && failureRatePercent <= 0) {
+            circuitBreakerTemplate = null;
+            routeToCircuitBreaker.clear();
+            return;
+        }
+        circuitBreakerTemplate = new NettyCircuitBreaker(consecutiveFailures,
+            failureRatePercent, failureRateWindow, openTimeInMilliSecondes, halfOpenProbes);
+    }
+
+    /**
+     * Getter method for property <tt>circuitBreaker</tt>.
+     * 
+     * @param route
+     * @return the breaker of the route, null if circuit breaking is disabled or the route
+     *         has no request yet
+     */
+    public NettyCircuitBreaker getCircuitBreaker(InetSocketAddress route) {
+        return routeToCircuitBreaker.get(getKey(route));
+    }
+
+    /**
+     * admit the request by the breaker of its route, or reject it
+     * 
+     * @return false if the request is rejected and its future cancelled
+     */
+    private boolean admitByCircuitBreaker(InetSocketAddress route, HttpRequest request,
+                                          NettyHttpResponseFuture responseFuture) {
+        NettyCircuitBreaker template = circuitBreakerTemplate;
+        if (null == template) {
+            return true;
+        }
+        String key = getKey(route);
+        NettyCircuitBreaker circuitBreaker = routeToCircuitBreaker.get(key);
+        if (null == circuitBreaker) {
+            NettyCircuitBreaker newCircuitBreaker = template.newInstance();
+            circuitBreaker = routeToCircuitBreaker.putIfAbsent(key, newCircuitBreaker);
+            if (null == circuitBreaker) {
+                circuitBreaker = newCircuitBreaker;
+            }
+        }
+        NettyCircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (null != permit) {
+            responseFuture.setCircuitBreaker(circuitBreaker, permit);
+            return true;
+        }
+        if (metricsEnabled) {
+            metrics.route(key).requestRejected();
+        }
+        ReferenceCountUtil.release(request);
+        responseFuture.cancel(new RejectedExecutionException("circuit breaker of " + key
+                                                             + " is open"));
+        return false;
+    }
+
+    /**
+     * limit the outstanding requests of the specified routes adaptively, below maxPerRoute.
+     * A request sent while the limit of its route is reached is rejected at once, its future
+     * is cancelled with a <code>RejectedExecutionException</code>, instead of queueing for a
+     * channel behind requests which are already slow. The limits start at 20 and are
+     * recomputed from the round trip time and the timeouts of the completed requests. Must
+     * be set before the first request is sent.
+     * 
+     * @param policyPerRoute
+     *            how the requests of a route are limited, the key is host:port as in
+     *            maxPerRoute. Routes not listed use {@link NettyConcurrencyLimitPolicy#FIXED}.
+     * @param maxConcurrencyLimit
+     *            upper bound of the adaptive limits. With pipelining or HTTP/2 a route may
+     *            have more outstanding requests than maxPerRoute.
+     */
+    public void setConcurrencyLimit(Map<String, NettyConcurrencyLimitPolicy> policyPerRoute,
+                                    int maxConcurrencyLimit) {
+        for (Entry<String, NettyConcurrencyLimitPolicy> entry : policyPerRoute.entrySet()) {
+            NettyConcurrencyLimiter limiter = NettyConcurrencyLimiter.newLimiter(
+                entry.getValue(), maxConcurrencyLimit);
+            if (null == limiter) {
+                routeToConcurrencyLimiter.remove(entry.getKey());
+            } else {
+                routeToConcurrencyLimiter.put(entry.getKey(), limiter);
+            }
+        }
+    }
+
+    /**
+     * Getter method for property <tt>concurrencyLimiter</tt>.
+     * 
+     * @param route
+     * @return the adaptive limit of the route, null if the route has none
+     */
+    public NettyConcurrencyLimiter getConcurrencyLimiter(InetSocketAddress route) {
+        return routeToConcurrencyLimiter.get(getKey(route));
+    }
+
+    /**
+     * admit the request within the concurrency limit of its route, or reject it
+     * 
+     * @return false if the request is rejected and its future cancelled
+     */
+    private boolean admitRequest(InetSocketAddress route, HttpRequest request,
+                                 NettyHttpResponseFuture responseFuture) {
+        String key = getKey(route);
+        NettyConcurrencyLimiter limiter = routeToConcurrencyLimiter.get(key);
+        if (null == limiter) {
+            return true;
+        }
+        if (limiter.tryAcquire()) {
+            responseFuture.setConcurrencyLimiter(limiter);
+            return true;
+        }
+        if (metricsEnabled) {
+            metrics.route(key).requestRejected();
+        }
+        ReferenceCountUtil.release(request);
+        responseFuture.cancel(new RejectedExecutionException("concurrency limit " + key + " "
+                                                             + limiter.getLimit() + " exceeded"));
+        return false;
+    }
+
+    /**
+     * fail a response which is given up, e.g. timed out, and reclaim its channel. A request
+     * still waiting for a channel is simply failed. Otherwise the response is failed on the
+     * event loop of its channel, so that it can not race with the response being received.
+     */
+    void abortResponse(NettyHttpResponseFuture responseFuture, Throwable cause) {
+        abortResponse(responseFuture, cause, true);
+    }
+
+    /**
+     * give up a response like {@link #abortResponse(NettyHttpResponseFuture, Throwable)},
+     * without counting a failure of its route, e.g. the losing attempt of a hedged request.
+     * A request on a pipelined channel is left to complete instead, since closing the
+     * channel would fail the other requests on it, and its response must be dropped by the
+     * caller.
+     */
+    void discardResponse(NettyHttpResponseFuture responseFuture, Throwable cause) {
+        abortResponse(responseFuture, cause, false);
+    }
+
+    private void abortResponse(final NettyHttpResponseFuture responseFuture,
+                               final Throwable cause, final boolean failure) {
+        final Channel channel = responseFuture.getChannel();
+        if (null == channel) {
+            cancel(responseFuture, cause, failure);
+            return;
+        }
+        try {
+            channel.eventLoop().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    responseAborted(channel, responseFuture, cause, failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the event loop is shut down along with the pool
+            cancel(responseFuture, cause, failure);
+        }
+    }
+
+    private void responseAborted(Channel channel, NettyHttpResponseFuture responseFuture,
+                                 Throwable cause, boolean failure) {
+        if (responseFuture.isDone() || responseFuture.isCancelled()) {
+            return;
+        }
+        if (NettyHttpResponseFutureUtil.isMultiplexed(channel)) {
+            int streamId = NettyHttpResponseFutureUtil.removeStream(channel, responseFuture);
+            cancel(responseFuture, cause, failure);
+            if (streamId > 0 && channel.isActive()) {
+                // only the stream is given up, the other streams of the connection go on
+                resetStream(channel, streamId);
+                returnChannel(channel);
+            }
+            return;
+        }
+        if (!failure && NettyHttpResponseFutureUtil.isPipelined(channel)) {
+            // closing would fail the other requests of the channel, so the request goes on
+            // and its response is dropped by the holder of the future
+            return;
+        }
+        cancel(responseFuture, cause, failure);
+        channel.close();
+    }
+
+    private static void cancel(NettyHttpResponseFuture responseFuture, Throwable cause,
+                               boolean failure) {
+        if (failure) {
+            responseFuture.cancel(cause);
+        } else {
+            responseFuture.discard(cause);
+        }
+    }
+
+    private void resetStream(Channel channel, int streamId) {
+        HttpToHttp2ConnectionHandler http2Handler = channel.pipeline().get(
+            HttpToHttp2ConnectionHandler.class);
+        if (null == http2Handler || null == http2Handler.connection().stream(streamId)) {
+            return;
+        }
+        ChannelHandlerContext ctx = channel.pipeline().context(http2Handler);
+        http2Handler.resetStream(ctx, streamId, Http2Error.CANCEL.code(), ctx.newPromise());
+        ctx.flush();
+    }
+
+    /**
+     * Getter method for property <tt>maxContentLength</tt>.
+     * 
+     * @param route
+     * @return the max content length of the responses of the route
+     */
+    public int getMaxContentLength(InetSocketAddress route) {
+        Integer max = routeToMaxContentLength.get(getKey(route));
+        return null == max ? maxContentLength : max;
+    }
+
+    /**
+     * Getter method for property <tt>aggregationPolicy</tt>.
+     * 
+     * @param route
+     * @return how the responses of the route are received
+     */
+    public NettyAggregationPolicy getAggregationPolicy(InetSocketAddress route) {
+        NettyAggregationPolicy policy = routeToAggregationPolicy.get(getKey(route));
+        return null == policy ? NettyAggregationPolicy.AGGREGATE : policy;
+    }
+
+    /**
+     * talk HTTP/2 over cleartext (h2c) to the specified routes. Requests to such a route
+     * are multiplexed as concurrent streams over the connected channels, up to the
+     * configured number of streams per channel, and always go to the least-loaded channel.
+     * The number of streams must not exceed the SETTINGS_MAX_CONCURRENT_STREAMS of the
+     * server. Must be set before the first request is sent.
+     * 
+     * @param maxConcurrentStreamsPerRoute
+     *            max concurrent streams per channel, the key is host:port as in maxPerRoute
+     * @param upgrade
+     *            if false, the routes are connected with prior knowledge. Otherwise the first
+     *            request of a channel is sent with the HTTP/1.1 upgrade to h2c, and a route
+     *            whose server rejects the upgrade falls back to HTTP/1.1.
+     */
+    public void setHttp2(Map<String, Integer> maxConcurrentStreamsPerRoute, boolean upgrade) {
+        this.http2Upgrade = upgrade;
+        for (Entry<String, Integer> entry : maxConcurrentStreamsPerRoute.entrySet()) {
+            routeToPipelinedChannels.put(entry.getKey(), new PipelinedChannels(entry.getValue()));
+            http2Routes.add(entry.getKey());
+        }
+    }
+
+    /**
+     * add a channel whose HTTP/2 upgrade succeeded to the channels of its route
+     * 
+     * @param channel
+     */
+    public void http2Upgraded(Channel channel) {
+        if (NettyHttpResponseFutureUtil.getForceConnect(channel)) {
+            return;
+        }
+        String key = getKey(NettyHttpResponseFutureUtil.getRoute(channel));
+        PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        if (null != pipelinedChannels) {
+            pipelinedChannels.add(channel);
+            dispatchWaiters(key);
+        }
+    }
+
+    /**
+     * fall the route of the channel back to HTTP/1.1, the channel itself goes on with
+     * HTTP/1.1 and is returned to the pool with the response of the upgrade request
+     * 
+     * @param channel
+     */
+    public void http2UpgradeRejected(Channel channel) {
+        String key = getKey(NettyHttpResponseFutureUtil.getRoute(channel));
+        logger.log(Level.WARNING, "HTTP/2 upgrade rejected by " + key
+                                  + ", fall back to HTTP/1.1");
+        NettyHttpResponseFutureUtil.attributeHttp1(channel, UPGRADE_STREAM_ID);
+        if (http2Routes.remove(key)) {
+            routeToPipelinedChannels.remove(key);
+        }
+    }
+
+    public void releaseCreatePerRoute(Channel channel) {
+        InetSocketAddress route = NettyHttpResponseFutureUtil.getRoute(channel);
+        getAllowCreatePerRoute(getKey(route)).release();
+    }
+
+    private Semaphore getAllowCreatePerRoute(String key) {
+        Semaphore allowCreate = maxPerRoute.get(key);
+        if (null == allowCreate) {
+            Semaphore newAllowCreate = new Semaphore(DEFAULT_MAX_PER_ROUTE);
+            allowCreate = maxPerRoute.putIfAbsent(key, newAllowCreate);
+            if (null == allowCreate) {
+                allowCreate = newAllowCreate;
+            }
+        }
+
+        return allowCreate;
+    }
+
+    private IdleChannels getPoolChannels(String route) {
+        IdleChannels oldPoolChannels = routeToPoolChannels.get(route);
+        if (null == oldPoolChannels) {
+            IdleChannels newPoolChannels = new IdleChannels(eventLoopAffinity ? eventLoops : null);
+            oldPoolChannels = routeToPoolChannels.putIfAbsent(route, newPoolChannels);
+            if (null == oldPoolChannels) {
+                oldPoolChannels = newPoolChannels;
             }
         }
         return oldPoolChannels;
     }
 
+    private void warmUpOnConnect(ChannelFuture future, InetSocketAddress route,
+                                 final AtomicInteger warmingUp) {
+        final String key = getKey(route);
+        final PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(key);
+        final boolean http2 = http2Routes.contains(key);
+        if (http2) {
+            NettyHttpResponseFutureUtil.attributeMultiplexed(future.channel());
+        } else if (null != pipelinedChannels) {
+            NettyHttpResponseFutureUtil.attributePipelined(future.channel());
+        }
+        if (null != pipelinedChannels) {
+            PipelinedChannels.attributeOutstanding(future.channel(), 0);
+        }
+        NettyHttpResponseFutureUtil.attributeRoute(future.channel(), route);
+        future.addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                warmingUp.decrementAndGet();
+                final Channel channel = future.channel();
+                if (future.isSuccess()) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, channel + " warmed up");
+                    }
+                    channel.closeFuture().addListener(closeListener);
+                    if (http2) {
+                        // hand out streams only after the connection preface is written
+                        channel.eventLoop().execute(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                pipelinedChannels.add(channel);
+                                dispatchWaiters(key);
+                            }
+                        });
+                    } else if (null != pipelinedChannels) {
+                        pipelinedChannels.add(future.channel());
+                        dispatchWaiters(key);
+                    } else {
+                        returnChannel(future.channel());
+                    }
+                } else {
+                    logger.log(Level.SEVERE, future.channel() + " connect failed, exception: "
+                                             + future.cause());
+                    releaseCreatePerRoute(future.channel());
+                }
+            }
+
+        });
+    }
+
+    private AtomicInteger getWarmingUp(String route) {
+        AtomicInteger warmingUp = routeToWarmingUp.get(route);
+        if (null == warmingUp) {
+            AtomicInteger newWarmingUp = new AtomicInteger();
+            warmingUp = routeToWarmingUp.putIfAbsent(route, newWarmingUp);
+            if (null == warmingUp) {
+                warmingUp = newWarmingUp;
+            }
+        }
+        return warmingUp;
+    }
+
+    private Queue<PendingRequest> getWaiters(String route) {
+        Queue<PendingRequest> oldWaiters = routeToWaiters.get(route);
+        if (null == oldWaiters) {
+            Queue<PendingRequest> newWaiters = new ConcurrentLinkedQueue<PendingRequest>();
+            oldWaiters = routeToWaiters.putIfAbsent(route, newWaiters);
+            if (null == oldWaiters) {
+                oldWaiters = newWaiters;
+            }
+        }
+        return oldWaiters;
+    }
+
     private String getKey(InetSocketAddress route) {
-        return route.getHostName() + COLON + route.getPort();
+        // the host string never triggers a reverse lookup of a resolved route
+        return route.getHostString() + COLON + route.getPort();
+    }
+
+    private InetSocketAddress toRoute(String key) {
+        int index = key.lastIndexOf(COLON);
+        return InetSocketAddress.createUnresolved(key.substring(0, index), Integer.parseInt(key
+            .substring(index + 1)));
     }
 
     private ChannelFuture createChannelFuture(InetSocketAddress route, boolean forceConnect) {
@@ -376,18 +2032,13 @@ public class NettyChannelPool {
 
         Semaphore allowCreate = getAllowCreatePerRoute(key);
         if (allowCreate.tryAcquire()) {
-            try {
-                ChannelFuture connectFuture = clientBootstrap.connect(route.getHostName(), route
-                    .getPort());
+            ChannelFuture connectFuture = connect(route, allowCreate);
+            if (null != connectFuture) {
                 return connectFuture;
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "connect failed", e);
-                allowCreate.release();
             }
         }
         if (forceConnect) {
-            ChannelFuture connectFuture = clientBootstrap.connect(route.getHostName(), route
-                .getPort());
+            ChannelFuture connectFuture = connect(route);
             if (null != connectFuture) {
                 NettyHttpResponseFutureUtil.attributeForceConnect(connectFuture.channel(),
                     forceConnect);
@@ -396,4 +2047,238 @@ public class NettyChannelPool {
         }
         return null;
     }
+
+    /**
+     * connect to the route with a permit already acquired from allowCreate. The permit is
+     * released if the connect attempt can not be started.
+     */
+    private ChannelFuture connect(InetSocketAddress route, Semaphore allowCreate) {
+        try {
+            return connect(route);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "connect failed", e);
+            allowCreate.release();
+        }
+        return null;
+    }
+
+    /**
+     * create the initializer of the HTTP/2 channels of a route. The body of a response is
+     * aggregated by the stream, so the limit is fixed when the channel is created.
+     * 
+     * @param maxContentLength max content length of the responses of the route
+     */
+    private ChannelInitializer<Channel> newHttp2ChannelInitializer(final int maxContentLength) {
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                addWireLogging(ch);
+                addFlushConsolidation(ch);
+
+                Http2Connection connection = new DefaultHttp2Connection(false);
+                Http2FrameListener frameListener = new InboundHttp2ToHttpAdapterBuilder(connection)
+                    .maxContentLength(maxContentLength).propagateSettings(false).build();
+                if (NettyChannelPool.this.contentDecompression) {
+                    frameListener = new DelegatingDecompressorFrameListener(connection,
+                        frameListener);
+                }
+                HttpToHttp2ConnectionHandler http2Handler = new HttpToHttp2ConnectionHandlerBuilder()
+                    .frameListener(frameListener).connection(connection).build();
+                if (NettyChannelPool.this.http2Upgrade) {
+                    HttpClientCodec sourceCodec = new HttpClientCodec();
+                    ch.pipeline().addLast(HttpClientCodec.class.getSimpleName(), sourceCodec);
+                    ch.pipeline().addLast(
+                        HttpClientUpgradeHandler.class.getSimpleName(),
+                        new HttpClientUpgradeHandler(sourceCodec, new Http2ClientUpgradeCodec(
+                            http2Handler), maxContentLength));
+                } else {
+                    ch.pipeline().addLast(HttpToHttp2ConnectionHandler.class.getSimpleName(),
+                        http2Handler);
+                }
+                if (null != NettyChannelPool.this.additionalChannelInitializer) {
+                    NettyChannelPool.this.additionalChannelInitializer.initChannel(ch);
+                }
+
+                ch.pipeline().addLast(ChunkedWriteHandler.class.getSimpleName(),
+                    new ChunkedWriteHandler());
+
+                ch.pipeline().addLast(
+                    IdleStateHandler.class.getSimpleName(),
+                    new IdleStateHandler(0, 0, NettyChannelPool.this.maxIdleTimeInMilliSecondes,
+                        TimeUnit.MILLISECONDS));
+
+                ch.pipeline().addLast(NettyChannelPoolHandler.class.getSimpleName(),
+                    new NettyChannelPoolHandler(NettyChannelPool.this));
+            }
+
+        };
+    }
+
+    /**
+     * connect to the route. An unresolved route is resolved by the addressResolver, and the
+     * channel is connected once both the lookup and the registration are completed, so the
+     * caller thread never blocks on DNS.
+     */
+    private ChannelFuture connect(final InetSocketAddress route) {
+        Bootstrap bootstrap = getBootstrap();
+        if (http2Routes.contains(getKey(route))) {
+            bootstrap = bootstrap.clone().handler(
+                newHttp2ChannelInitializer(getMaxContentLength(route)));
+        }
+        if (!route.isUnresolved()) {
+            return recordConnect(route, bootstrap.connect(route));
+        }
+
+        final ChannelFuture registerFuture = bootstrap.register();
+        final Channel channel = registerFuture.channel();
+        final ChannelPromise connectPromise = channel.newPromise();
+        addressResolver.resolve(route.getHostString(), channel.eventLoop()).addListener(
+            new FutureListener<InetAddress>() {
+
+                @Override
+                public void operationComplete(Future<InetAddress> future) throws Exception {
+                    if (!future.isSuccess()) {
+                        channel.close();
+                        connectPromise.setFailure(future.cause());
+                        return;
+                    }
+                    final InetSocketAddress address = new InetSocketAddress(future.getNow(),
+                        route.getPort());
+                    if (registerFuture.isDone()) {
+                        connectResolved(registerFuture, address, connectPromise);
+                    } else {
+                        registerFuture.addListener(new ChannelFutureListener() {
+
+                            @Override
+                            public void operationComplete(ChannelFuture future) throws Exception {
+                                connectResolved(registerFuture, address, connectPromise);
+                            }
+                        });
+                    }
+                }
+            });
+        return recordConnect(route, connectPromise);
+    }
+
+    /**
+     * record the connect time, the failure or the open channel in the metrics of the route,
+     * and notify the event listener
+     */
+    private ChannelFuture recordConnect(final InetSocketAddress route, ChannelFuture connectFuture) {
+        final NettyClientEventListener eventListener = this.eventListener;
+        if (!metricsEnabled && null == eventListener) {
+            return connectFuture;
+        }
+        final NettyRouteMetrics routeMetrics = metricsEnabled ? metrics.route(getKey(route))
+            : null;
+        final long startTime = System.nanoTime();
+        connectFuture.addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                long connectNanos = System.nanoTime() - startTime;
+                if (null != eventListener) {
+                    eventListener.channelConnected(route, future.channel(), connectNanos,
+                        future.cause());
+                }
+                if (null == routeMetrics) {
+                    return;
+                }
+                if (!future.isSuccess()) {
+                    routeMetrics.connectFailed();
+                    return;
+                }
+                routeMetrics.recordConnect(connectNanos);
+                routeMetrics.channelOpened();
+                future.channel().closeFuture().addListener(new ChannelFutureListener() {
+
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        routeMetrics.channelClosed();
+                    }
+                });
+            }
+        });
+        return connectFuture;
+    }
+
+    private void connectResolved(ChannelFuture registerFuture, InetSocketAddress address,
+                                 ChannelPromise connectPromise) {
+        if (!registerFuture.isSuccess()) {
+            connectPromise.setFailure(registerFuture.cause());
+            return;
+        }
+        registerFuture.channel().connect(address, connectPromise);
+    }
+
+    /**
+     * @return the bootstrap bound to the event loop of the caller thread in affinity mode,
+     *         otherwise the bootstrap of the whole group
+     */
+    private Bootstrap getBootstrap() {
+        if (!eventLoopAffinity) {
+            return clientBootstrap;
+        }
+        for (EventLoop loop : eventLoops) {
+            if (loop.inEventLoop()) {
+                Bootstrap bootstrap = loopBootstraps.get(loop);
+                if (null == bootstrap) {
+                    Bootstrap newBootstrap = newBootstrap(loop);
+                    bootstrap = loopBootstraps.putIfAbsent(loop, newBootstrap);
+                    if (null == bootstrap) {
+                        bootstrap = newBootstrap;
+                    }
+                }
+                return bootstrap;
+            }
+        }
+        return clientBootstrap;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bootstrap newBootstrap(EventLoopGroup group) {
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(group).channel(socketChannelClass).option(ChannelOption.SO_KEEPALIVE,
+            true).handler(channelInitializer);
+        if (null != options) {
+            for (Entry<ChannelOption, Object> entry : options.entrySet()) {
+                bootstrap.option(entry.getKey(), entry.getValue());
+            }
+        }
+        return bootstrap;
+    }
+
+    /**
+     * gauges of the routes read by the metrics snapshots
+     */
+    private final class RouteGauges implements NettyRouteGauges {
+
+        @Override
+        public int getIdle(String route) {
+            PipelinedChannels pipelinedChannels = routeToPipelinedChannels.get(route);
+            if (null != pipelinedChannels) {
+                return pipelinedChannels.idleSize();
+            }
+            IdleChannels poolChannels = routeToPoolChannels.get(route);
+            return null == poolChannels ? 0 : poolChannels.size();
+        }
+
+        @Override
+        public int getPending(String route) {
+            Queue<PendingRequest> waiters = routeToWaiters.get(route);
+            return null == waiters ? 0 : waiters.size();
+        }
+
+        @Override
+        public int getAvailablePermits(String route) {
+            Semaphore allowCreate = maxPerRoute.get(route);
+            return null == allowCreate ? DEFAULT_MAX_PER_ROUTE : allowCreate.availablePermits();
+        }
+
+        @Override
+        public int getConcurrencyLimit(String route) {
+            NettyConcurrencyLimiter limiter = routeToConcurrencyLimiter.get(route);
+            return null == limiter ? 0 : limiter.getLimit();
+        }
+    }
 }
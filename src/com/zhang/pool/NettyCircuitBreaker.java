@@ -0,0 +1,267 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Health of a route. The breaker is tripped open by consecutive failures, or by the failure
+ * rate of a window of requests, and while open every request of the route is rejected at
+ * once instead of waiting for a connect or a response which will not come. After the open
+ * time a few probe requests are let through, half-open, and the breaker closes again once
+ * they all succeed, or opens again on the first failure.
+ * 
+ * A request is admitted by {@link #tryAcquire()}, and its outcome is reported with the
+ * {@link Permit} returned, so that only the probes of the current half-open period count
+ * towards closing the breaker, not a request admitted earlier which completes late.
+ * 
+ * A failure is a request which failed with an <code>IOException</code> or a
+ * <code>TimeoutException</code>, or a response with a 5xx status. Timeouts waiting for a
+ * channel of the pool, {@link NettyAcquireTimeoutException}, are not failures.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Admission of a request by a breaker. A request admitted while the breaker is closed
+     * shares one permit, the probes of a half-open period share the permit of the period.
+     */
+    public static final class Permit {
+
+        private final AtomicInteger taken     = new AtomicInteger();
+
+        private final AtomicInteger successes = new AtomicInteger();
+
+        private Permit() {
+        }
+    }
+
+    // permit of the requests admitted while closed
+    private static final Permit  CLOSED_PERMIT    = new Permit();
+
+    private final int            consecutiveFailures;
+
+    private final int            failureRatePercent;
+
+    private final int            failureRateWindow;
+
+    private final long           openTimeInNanos;
+
+    private final int            halfOpenProbes;
+
+    private volatile State       state            = State.CLOSED;
+
+    // System.nanoTime() when an open breaker turns half-open
+    private volatile long        openUntil;
+
+    private final AtomicInteger  failures         = new AtomicInteger();
+
+    // requests of the current window in the high 32 bits, their failures in the low 32 bits
+    private final AtomicLong     window           = new AtomicLong();
+
+    // permit of the probes of the current half-open period, null unless half-open
+    private volatile Permit      probes;
+
+    private static final long    WINDOW_REQUEST   = 1L << 32;
+
+    private static final long    WINDOW_FAILURES  = WINDOW_REQUEST - 1;
+
+    /**
+     * @param consecutiveFailures
+     *            failures in a row which trip the breaker, 0 to disable
+     * @param failureRatePercent
+     *            failure rate of a window which trips the breaker, 0 to disable
+     * @param failureRateWindow
+     *            number of requests of a window
+     * @param openTimeInMilliSecondes
+     *            how long the breaker stays open before it lets probes through
+     * @param halfOpenProbes
+     *            number of probes which must succeed to close the breaker
+     */
+    NettyCircuitBreaker(int consecutiveFailures, int failureRatePercent, int failureRateWindow,
+                        int openTimeInMilliSecondes, int halfOpenProbes) {
+        this.consecutiveFailures = consecutiveFailures;
+        this.failureRatePercent = failureRatePercent;
+        this.failureRateWindow = failureRateWindow;
+        this.openTimeInNanos = openTimeInMilliSecondes * 1000000L;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+    }
+
+    /**
+     * @return a closed breaker with the same settings, for another route
+     */
+    NettyCircuitBreaker newInstance() {
+        return new NettyCircuitBreaker(consecutiveFailures, failureRatePercent,
+            failureRateWindow, (int) (openTimeInNanos / 1000000L), halfOpenProbes);
+    }
+
+    /**
+     * admit a request, an open breaker turns half-open here once its open time is over. A
+     * request admitted must report its outcome with the permit returned, by
+     * {@link #onSuccess(Permit)}, {@link #onFailure(Permit)} or {@link #onIgnored(Permit)}.
+     * 
+     * @return null if the request must be rejected
+     */
+    public Permit tryAcquire() {
+        State state = this.state;
+        if (State.CLOSED == state) {
+            return CLOSED_PERMIT;
+        }
+        if (State.OPEN == state && !halfOpen()) {
+            return null;
+        }
+        Permit probes = this.probes;
+        if (null == probes) {
+            // closed or opened again meanwhile
+            return null;
+        }
+        // a rejected request takes no probe, so that an ignored probe can be taken again
+        for (;;) {
+            int current = probes.taken.get();
+            if (current >= halfOpenProbes) {
+                return null;
+            }
+            if (probes.taken.compareAndSet(current, current + 1)) {
+                return probes;
+            }
+        }
+    }
+
+    /**
+     * @return true if {@link #tryAcquire()} would admit a request now, without taking a
+     *         probe
+     */
+    public boolean isAvailable() {
+        State state = this.state;
+        if (State.CLOSED == state) {
+            return true;
+        }
+        if (State.OPEN == state) {
+            return System.nanoTime() - openUntil >= 0;
+        }
+        Permit probes = this.probes;
+        return null != probes && probes.taken.get() < halfOpenProbes;
+    }
+
+    public void onSuccess(Permit permit) {
+        if (CLOSED_PERMIT == permit) {
+            if (State.CLOSED == state) {
+                if (0 != failures.get()) {
+                    failures.set(0);
+                }
+                record(0);
+            }
+            return;
+        }
+        if (permit == probes && permit.successes.incrementAndGet() >= halfOpenProbes) {
+            close(permit);
+        }
+    }
+
+    public void onFailure(Permit permit) {
+        if (CLOSED_PERMIT == permit) {
+            if (State.CLOSED == state) {
+                if (consecutiveFailures > 0
+                    && failures.incrementAndGet() >= consecutiveFailures) {
+                    open(permit);
+                    return;
+                }
+                record(1);
+            }
+            return;
+        }
+        open(permit);
+    }
+
+    /**
+     * the request failed for a reason which says nothing about the health of the route
+     */
+    public void onIgnored(Permit permit) {
+        if (CLOSED_PERMIT != permit && permit == probes) {
+            permit.taken.decrementAndGet();
+        }
+    }
+
+    /**
+     * count the request in the current window, and evaluate the window once it is full
+     */
+    private void record(long failure) {
+        if (failureRatePercent <= 0) {
+            return;
+        }
+        long value = window.addAndGet(WINDOW_REQUEST + failure);
+        long requests = value >>> 32;
+        if (requests < failureRateWindow) {
+            return;
+        }
+        if (requests == failureRateWindow) {
+            window.addAndGet(-value);
+            if ((value & WINDOW_FAILURES) * 100 >= (long) failureRatePercent * requests) {
+                open(CLOSED_PERMIT);
+            }
+        }
+    }
+
+    /**
+     * @param from
+     *            the permit of the request which tripped the breaker, which must still be
+     *            current
+     */
+    private synchronized void open(Permit from) {
+        if (CLOSED_PERMIT == from ? State.CLOSED != state : from != probes) {
+            return;
+        }
+        probes = null;
+        openUntil = System.nanoTime() + openTimeInNanos;
+        state = State.OPEN;
+    }
+
+    /**
+     * @return true if the breaker is half-open, false if it is still open
+     */
+    private synchronized boolean halfOpen() {
+        if (State.OPEN == state && System.nanoTime() - openUntil >= 0) {
+            probes = new Permit();
+            state = State.HALF_OPEN;
+        }
+        return State.HALF_OPEN == state;
+    }
+
+    private synchronized void close(Permit from) {
+        if (from != probes) {
+            return;
+        }
+        probes = null;
+        failures.set(0);
+        window.set(0);
+        state = State.CLOSED;
+    }
+
+    /**
+     * Getter method for property <tt>state</tt>.
+     * 
+     * @return property value of state
+     */
+    public State getState() {
+        return state;
+    }
+}
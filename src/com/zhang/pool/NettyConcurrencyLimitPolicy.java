@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+/**
+ * How the number of outstanding requests of a route is limited, see
+ * {@link NettyChannelPool#setConcurrencyLimit(java.util.Map, int)}. With an adaptive policy a
+ * request beyond the current limit is rejected at once instead of waiting for a channel.
+ * 
+ * @author xianwu.zhang
+ */
+public enum NettyConcurrencyLimitPolicy {
+
+    /**
+     * only maxPerRoute applies, requests beyond it wait in the queue of the route
+     */
+    FIXED,
+
+    /**
+     * additive increase, multiplicative decrease: the limit grows by one per response while
+     * at least half of it is used, and shrinks by 10% per timed out request
+     */
+    AIMD,
+
+    /**
+     * the limit follows the ratio of the long-term to the current round trip time, so it
+     * shrinks as soon as the responses slow down, before any request times out
+     */
+    GRADIENT
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive limit of the outstanding requests of a route. A request is admitted by
+ * {@link #tryAcquire()} while fewer requests than the limit are outstanding, and its outcome
+ * is fed back once it completes, from which the limit is recomputed between 1 and maxLimit.
+ * 
+ * @author xianwu.zhang
+ */
+public abstract class NettyConcurrencyLimiter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int        limit;
+
+    private final int           maxLimit;
+
+    protected NettyConcurrencyLimiter(int initialLimit, int maxLimit) {
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(1, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * @param policy
+     *            {@link NettyConcurrencyLimitPolicy#AIMD} or
+     *            {@link NettyConcurrencyLimitPolicy#GRADIENT}
+     * @param maxLimit
+     *            upper bound of the limit
+     * @return the limiter, null for {@link NettyConcurrencyLimitPolicy#FIXED}
+     */
+    public static NettyConcurrencyLimiter newLimiter(NettyConcurrencyLimitPolicy policy,
+                                                     int maxLimit) {
+        switch (policy) {
+            case AIMD:
+                return new AimdConcurrencyLimiter(maxLimit);
+            case GRADIENT:
+                return new GradientConcurrencyLimiter(maxLimit);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * admit a request, which must be followed by exactly one of {@link #onSuccess(long)},
+     * {@link #onDropped()} or {@link #onIgnored()}
+     * 
+     * @return false if the limit is reached
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param rttNanos
+     *            time from sending the request until the response was completed
+     */
+    public void onSuccess(long rttNanos) {
+        update(rttNanos, inFlight.getAndDecrement(), false);
+    }
+
+    /**
+     * the request timed out, a sign of overload
+     */
+    public void onDropped() {
+        update(0, inFlight.getAndDecrement(), true);
+    }
+
+    /**
+     * the request failed for a reason which says nothing about the load of the server
+     */
+    public void onIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void update(long rttNanos, int inFlight, boolean dropped) {
+        int newLimit = nextLimit(limit, rttNanos, inFlight, dropped);
+        limit = Math.max(1, Math.min(newLimit, maxLimit));
+    }
+
+    /**
+     * compute the limit from the outcome of a request, never invoked concurrently
+     * 
+     * @param limit
+     *            current limit
+     * @param rttNanos
+     *            round trip time of the request, 0 if it was dropped
+     * @param inFlight
+     *            number of outstanding requests when the request completed, including it
+     * @param dropped
+     *            the request timed out
+     * @return the new limit, bounded afterwards by 1 and maxLimit
+     */
+    protected abstract int nextLimit(int limit, long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * Getter method for property <tt>limit</tt>.
+     * 
+     * @return property value of limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Getter method for property <tt>inFlight</tt>.
+     * 
+     * @return number of admitted requests which are not completed yet
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Getter method for property <tt>maxLimit</tt>.
+     * 
+     * @return property value of maxLimit
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+/**
+ * How an endpoint of a {@link NettyService} is picked for a request, by the number of
+ * outstanding requests of the endpoints, including those still waiting for a channel.
+ * Only the requests of the service are counted, not those sent to an endpoint directly.
+ * 
+ * @author xianwu.zhang
+ */
+public enum NettyLoadBalancePolicy {
+
+    /**
+     * the endpoint with the fewest outstanding requests, ties are taken in turn
+     */
+    LEAST_IN_FLIGHT,
+
+    /**
+     * the less loaded of two endpoints picked at random, nearly as good as
+     * {@link #LEAST_IN_FLIGHT} without scanning every endpoint and without herding all
+     * clients to the same endpoint
+     */
+    POWER_OF_TWO_CHOICES
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * Requests sent together, see {@link NettyChannelPool#newBatch()}. The requests which take
+ * an idle channel are held until {@link #flush()}, which hands them to the event loops of
+ * their channels in one task per loop, where they are written and every channel is flushed
+ * once. Requests which wait for a channel are written when they get one, as usual.
+ * 
+ * A batch is filled and flushed by a single thread, and must be flushed, since its
+ * requests hold their channels until then.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyRequestBatch {
+
+    private final NettyChannelPool           channelPool;
+
+    private final Map<EventLoop, List<Item>> loopToItems = new LinkedHashMap<EventLoop, List<Item>>();
+
+    NettyRequestBatch(NettyChannelPool channelPool) {
+        this.channelPool = channelPool;
+    }
+
+    void add(Channel channel, HttpRequest request, NettyHttpResponseFuture responseFuture) {
+        List<Item> items = loopToItems.get(channel.eventLoop());
+        if (null == items) {
+            items = new ArrayList<Item>();
+            loopToItems.put(channel.eventLoop(), items);
+        }
+        items.add(new Item(channel, request, responseFuture));
+    }
+
+    /**
+     * write the requests held by the batch, the batch is empty afterwards
+     */
+    public void flush() {
+        for (Entry<EventLoop, List<Item>> entry : loopToItems.entrySet()) {
+            final List<Item> items = entry.getValue();
+            try {
+                entry.getKey().execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        channelPool.writeBatch(items);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the event loop is shut down along with the pool
+                for (Item item : items) {
+                    ReferenceCountUtil.release(item.request);
+                    item.responseFuture.cancel(e);
+                }
+            }
+        }
+        loopToItems.clear();
+    }
+
+    /**
+     * @return number of requests held by the batch
+     */
+    public int size() {
+        int size = 0;
+        for (List<Item> items : loopToItems.values()) {
+            size += items.size();
+        }
+        return size;
+    }
+
+    /**
+     * A request which has taken its channel
+     */
+    static final class Item {
+
+        final Channel                 channel;
+
+        final HttpRequest             request;
+
+        final NettyHttpResponseFuture responseFuture;
+
+        Item(Channel channel, HttpRequest request, NettyHttpResponseFuture responseFuture) {
+            this.channel = channel;
+            this.request = request;
+            this.responseFuture = responseFuture;
+        }
+    }
+}
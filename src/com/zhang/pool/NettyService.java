@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A logical service whose requests are spread over a list of endpoints. Each endpoint is a
+ * route of {@link NettyChannelPool} with its own channels, limits and metrics, and the list
+ * can be replaced at any time, see
+ * {@link NettyChannelPool#setService(String, List, NettyLoadBalancePolicy)}.
+ * 
+ * @author xianwu.zhang
+ */
+public final class NettyService {
+
+    private final String                 name;
+
+    private final NettyLoadBalancePolicy policy;
+
+    private volatile Endpoint[]          endpoints = new Endpoint[0];
+
+    // start of the scan of LEAST_IN_FLIGHT, so that ties do not always go to the first
+    private final AtomicInteger          next      = new AtomicInteger();
+
+    NettyService(String name, NettyLoadBalancePolicy policy) {
+        this.name = name;
+        this.policy = policy;
+    }
+
+    /**
+     * replace the endpoints, the outstanding requests of the endpoints which are kept are
+     * still counted
+     * 
+     * @param routes
+     *            the new endpoints
+     * @param keys
+     *            host:port of the routes
+     * @return the endpoints removed
+     */
+    synchronized List<InetSocketAddress> setEndpoints(List<InetSocketAddress> routes,
+                                                      List<String> keys) {
+        Map<String, Endpoint> oldEndpoints = new HashMap<String, Endpoint>();
+        for (Endpoint endpoint : endpoints) {
+            oldEndpoints.put(endpoint.key, endpoint);
+        }
+        Endpoint[] newEndpoints = new Endpoint[routes.size()];
+        for (int i = 0; i < newEndpoints.length; i++) {
+            Endpoint endpoint = oldEndpoints.remove(keys.get(i));
+            newEndpoints[i] = null == endpoint ? new Endpoint(routes.get(i), keys.get(i))
+                : endpoint;
+        }
+        endpoints = newEndpoints;
+
+        List<InetSocketAddress> removed = new ArrayList<InetSocketAddress>(oldEndpoints.size());
+        for (Endpoint endpoint : oldEndpoints.values()) {
+            removed.add(endpoint.route);
+        }
+        return removed;
+    }
+
+    /**
+     * pick an endpoint by its outstanding requests, counted by the service from selection to
+     * completion, so that a request waiting for a channel or a connection counts as well.
+     * This is a deliberate approximation of the leased and pending counts of the pool: it is
+     * read without a scan of the waiters and without metrics, but does not see requests sent
+     * to the route other than through this service.
+     * 
+     * @param circuitBreakers
+     *            breakers of the routes, an endpoint whose breaker is open is only chosen if
+     *            every endpoint is open
+     * @return the endpoint for the next request, null if the service has no endpoint
+     */
+    Endpoint select(Map<String, NettyCircuitBreaker> circuitBreakers) {
+        Endpoint[] endpoints = this.endpoints;
+        int size = endpoints.length;
+        if (size <= 1) {
+            return 0 == size ? null : endpoints[0];
+        }
+        if (NettyLoadBalancePolicy.POWER_OF_TWO_CHOICES == policy) {
+            Random random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            Endpoint a = endpoints[first];
+            Endpoint b = endpoints[second];
+            boolean aAvailable = isAvailable(a, circuitBreakers);
+            boolean bAvailable = isAvailable(b, circuitBreakers);
+            if (aAvailable && bAvailable) {
+                return a.inFlight.get() <= b.inFlight.get() ? a : b;
+            }
+            if (aAvailable || bAvailable) {
+                return aAvailable ? a : b;
+            }
+            // both are open, look for any endpoint which is not
+        }
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Endpoint selected = null;
+        int least = Integer.MAX_VALUE;
+        for (int i = 0; i < size && least > 0; i++) {
+            Endpoint endpoint = endpoints[(start + i) % size];
+            int inFlight = endpoint.inFlight.get();
+            if (inFlight < least && isAvailable(endpoint, circuitBreakers)) {
+                selected = endpoint;
+                least = inFlight;
+            }
+        }
+        return null == selected ? endpoints[start] : selected;
+    }
+
+    private boolean isAvailable(Endpoint endpoint,
+                                Map<String, NettyCircuitBreaker> circuitBreakers) {
+        if (circuitBreakers.isEmpty()) {
+            return true;
+        }
+        NettyCircuitBreaker circuitBreaker = circuitBreakers.get(endpoint.key);
+        return null == circuitBreaker || circuitBreaker.isAvailable();
+    }
+
+    /**
+     * Getter method for property <tt>name</tt>.
+     * 
+     * @return host:port the requests of the service are sent to
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter method for property <tt>policy</tt>.
+     * 
+     * @return property value of policy
+     */
+    public NettyLoadBalancePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the current endpoints
+     */
+    public List<InetSocketAddress> getEndpoints() {
+        Endpoint[] endpoints = this.endpoints;
+        List<InetSocketAddress> routes = new ArrayList<InetSocketAddress>(endpoints.length);
+        for (Endpoint endpoint : endpoints) {
+            routes.add(endpoint.route);
+        }
+        return routes;
+    }
+
+    /**
+     * @return the number of outstanding requests per endpoint, the key is host:port
+     */
+    public Map<String, Integer> getInFlight() {
+        Endpoint[] endpoints = this.endpoints;
+        Map<String, Integer> inFlight = new HashMap<String, Integer>();
+        for (Endpoint endpoint : endpoints) {
+            inFlight.put(endpoint.key, endpoint.inFlight.get());
+        }
+        return inFlight;
+    }
+
+    /**
+     * An endpoint with the count of its outstanding requests, which is increased when a
+     * request is assigned to it and decreased when the response future is completed
+     */
+    static final class Endpoint {
+
+        final InetSocketAddress route;
+
+        final String            key;
+
+        // requests of this service assigned to the endpoint and not completed yet
+        final AtomicInteger     inFlight = new AtomicInteger();
+
+        Endpoint(InetSocketAddress route, String key) {
+            this.route = route;
+            this.key = key;
+        }
+    }
+}
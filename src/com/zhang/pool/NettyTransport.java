@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Transport of the channels in {@link NettyChannelPool}, which keeps the event loop group
+ * and the channel class consistent.
+ * 
+ * @author xianwu.zhang
+ */
+public enum NettyTransport {
+
+    /**
+     * the native epoll transport if it is available, otherwise NIO
+     */
+    AUTO {
+        @Override
+        NettyTransport resolve() {
+            return Epoll.isAvailable() ? EPOLL : NIO;
+        }
+    },
+
+    /**
+     * the native epoll transport, only available on Linux
+     */
+    EPOLL {
+        @Override
+        NettyTransport resolve() {
+            Epoll.ensureAvailability();
+            return this;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup() {
+            return new EpollEventLoopGroup();
+        }
+
+        @Override
+        Class<? extends SocketChannel> socketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+    },
+
+    NIO;
+
+    /**
+     * @return the transport actually used, never AUTO
+     */
+    NettyTransport resolve() {
+        return this;
+    }
+
+    EventLoopGroup newEventLoopGroup() {
+        return new NioEventLoopGroup();
+    }
+
+    Class<? extends SocketChannel> socketChannelClass() {
+        return NioSocketChannel.class;
+    }
+
+    /**
+     * @return the transport matching a user defined group
+     * @throws IllegalArgumentException
+     *             if the group is neither an epoll nor a NIO group, since the pool has no
+     *             channel class for it
+     */
+    static NettyTransport of(EventLoopGroup group) {
+        if (group instanceof EpollEventLoopGroup) {
+            return EPOLL;
+        }
+        if (group instanceof NioEventLoopGroup) {
+            return NIO;
+        }
+        throw new IllegalArgumentException("unsupported event loop group: "
+                                           + group.getClass().getName());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * A request waiting in the per-route queue of {@link NettyChannelPool} for a channel to
+ * become available. The waiter is claimed exactly once, either by the pool when a channel
+ * is handed to it, or by the timer when the acquire timeout expires.
+ *
+ * @author xianwu.zhang
+ */
+final class PendingRequest implements TimerTask {
+
+    private final HttpRequest             request;
+
+    private final NettyHttpResponseFuture responseFuture;
+
+    private final Queue<PendingRequest>   waiters;
+
+    private final AtomicBoolean           claimed = new AtomicBoolean(false);
+
+    private volatile Timeout              timeout;
+
+    PendingRequest(HttpRequest request, NettyHttpResponseFuture responseFuture,
+                   Queue<PendingRequest> waiters) {
+        this.request = request;
+        this.responseFuture = responseFuture;
+        this.waiters = waiters;
+    }
+
+    /**
+     * claim the waiter so that a channel can be handed to it
+     *
+     * @return false if the waiter has timed out or its future is already completed
+     */
+    boolean tryClaim() {
+        if (!claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        Timeout timeout = this.timeout;
+        if (null != timeout) {
+            timeout.cancel();
+        }
+        if (responseFuture.isDone() || responseFuture.isCancelled()) {
+            ReferenceCountUtil.release(request);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * fail the waiter immediately, e.g. when the pool is closed
+     *
+     * @param cause
+     */
+    void fail(Throwable cause) {
+        if (!claimed.compareAndSet(false, true)) {
+            return;
+        }
+        Timeout timeout = this.timeout;
+        if (null != timeout) {
+            timeout.cancel();
+        }
+        waiters.remove(this);
+        ReferenceCountUtil.release(request);
+        responseFuture.cancel(cause);
+    }
+
+    /**
+     * @see io.netty.util.TimerTask#run(io.netty.util.Timeout)
+     */
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        fail(new NettyAcquireTimeoutException("obtain channel from pool timeout"));
+    }
+
+    HttpRequest getRequest() {
+        return request;
+    }
+
+    NettyHttpResponseFuture getResponseFuture() {
+        return responseFuture;
+    }
+
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+}
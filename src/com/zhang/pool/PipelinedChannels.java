@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connected channels of a route in pipelining or HTTP/2 mode. A channel is shared by up to
+ * maxPipelinedRequests outstanding requests, or concurrent streams, and
+ * {@link #acquire(Channel)} picks the least-loaded channel, so no channel sits idle for a
+ * full round trip per request.
+ * 
+ * @author xianwu.zhang
+ */
+final class PipelinedChannels {
+
+    private static final AttributeKey<AtomicInteger> OUTSTANDING_ATTRIBUTE = AttributeKey
+                                                                               .valueOf("pipelinedOutstanding");
+
+    private final int                                maxPipelinedRequests;
+
+    private final List<Channel>                      channels              = new CopyOnWriteArrayList<Channel>();
+
+    // slots reserved for the oldest waiting requests, whose handoff is queued on an event loop
+    private final AtomicInteger                      handoffs              = new AtomicInteger();
+
+    PipelinedChannels(int maxPipelinedRequests) {
+        this.maxPipelinedRequests = maxPipelinedRequests;
+    }
+
+    /**
+     * initialize the number of outstanding requests of a new channel
+     */
+    static void attributeOutstanding(Channel channel, int outstanding) {
+        channel.attr(OUTSTANDING_ATTRIBUTE).set(new AtomicInteger(outstanding));
+    }
+
+    /**
+     * reserve a slot on the least-loaded active channel
+     * 
+     * @param busyChannel
+     *            a channel not to use, e.g. the one a hedged request is waiting on, or null
+     * @return null if every other channel has maxPipelinedRequests outstanding requests
+     */
+    Channel acquire(Channel busyChannel) {
+        for (;;) {
+            Channel leastLoaded = null;
+            int leastOutstanding = maxPipelinedRequests;
+            for (Channel channel : channels) {
+                if (!channel.isActive() || channel == busyChannel) {
+                    continue;
+                }
+                int outstanding = outstanding(channel).get();
+                if (outstanding < leastOutstanding) {
+                    leastLoaded = channel;
+                    leastOutstanding = outstanding;
+                    if (0 == outstanding) {
+                        break;
+                    }
+                }
+            }
+            if (null == leastLoaded) {
+                return null;
+            }
+            if (outstanding(leastLoaded).compareAndSet(leastOutstanding, leastOutstanding + 1)) {
+                return leastLoaded;
+            }
+        }
+    }
+
+    /**
+     * release the slot of a completed request
+     * 
+     * @return the number of outstanding requests left on the channel
+     */
+    int release(Channel channel) {
+        return outstanding(channel).decrementAndGet();
+    }
+
+    void handoffQueued() {
+        handoffs.incrementAndGet();
+    }
+
+    void handoffDone() {
+        handoffs.decrementAndGet();
+    }
+
+    /**
+     * @return the number of reserved slots on their way to waiting requests
+     */
+    int handoffs() {
+        return handoffs.get();
+    }
+
+    void add(Channel channel) {
+        channels.add(channel);
+    }
+
+    boolean remove(Channel channel) {
+        return channels.remove(channel);
+    }
+
+    List<Channel> channels() {
+        return channels;
+    }
+
+    /**
+     * @return true if the channel has no outstanding request
+     */
+    boolean isIdle(Channel channel) {
+        return 0 == outstanding(channel).get();
+    }
+
+    /**
+     * @return the number of active channels without outstanding requests
+     */
+    int idleSize() {
+        int size = 0;
+        for (Channel channel : channels) {
+            if (channel.isActive() && 0 == outstanding(channel).get()) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private AtomicInteger outstanding(Channel channel) {
+        return channel.attr(OUTSTANDING_ATTRIBUTE).get();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.TimeoutException;
+
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * The deadline of a response, scheduled on the timer of {@link NettyChannelPool}. The
+ * response is failed by {@link NettyChannelPool#abortResponse(NettyHttpResponseFuture, Throwable)},
+ * which reclaims its channel.
+ * 
+ * @author xianwu.zhang
+ */
+final class ResponseTimeout implements TimerTask {
+
+    private final NettyChannelPool        channelPool;
+
+    private final NettyHttpResponseFuture responseFuture;
+
+    private final int                     timeOutInMilliSecondes;
+
+    ResponseTimeout(NettyChannelPool channelPool, NettyHttpResponseFuture responseFuture,
+                    int timeOutInMilliSecondes) {
+        this.channelPool = channelPool;
+        this.responseFuture = responseFuture;
+        this.timeOutInMilliSecondes = timeOutInMilliSecondes;
+    }
+
+    /**
+     * @see io.netty.util.TimerTask#run(io.netty.util.Timeout)
+     */
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        if (responseFuture.isDone() || responseFuture.isCancelled()) {
+            return;
+        }
+        TimeoutException cause = new TimeoutException("no response within "
+                                                      + timeOutInMilliSecondes + "ms");
+        channelPool.abortResponse(responseFuture, cause);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.resolver;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link NettyAddressResolver} backed by the JDK resolver, for hosts that only the system
+ * configuration knows, e.g. through nsswitch. The blocking lookups run on a bounded resolver
+ * thread pool, so neither the caller thread nor the event loop is blocked. Results are cached
+ * for ttlInMilliSecondes, failed lookups for negativeTtlInMilliSecondes, and concurrent
+ * lookups of the same host share one query. {@link DnsAddressResolver}, the default, honours
+ * the TTL of the records instead.
+ * 
+ * @author xianwu.zhang
+ */
+public class CachingAddressResolver implements NettyAddressResolver {
+
+    // default time to cache a resolved address
+    public static final int                                   DEFAULT_TTL          = 30 * 1000;
+
+    // default time to cache a failed lookup
+    public static final int                                   DEFAULT_NEGATIVE_TTL = 5 * 1000;
+
+    // max threads blocked in lookups, further lookups are queued
+    private static final int                                  MAX_RESOLVER_THREADS = 4;
+
+    private final long                                        ttlInNanos;
+
+    private final long                                        negativeTtlInNanos;
+
+    private final ConcurrentMap<String, CacheEntry>           cache                = new ConcurrentHashMap<String, CacheEntry>();
+
+    // lookups in progress per host
+    private final ConcurrentMap<String, Promise<InetAddress>> resolving            = new ConcurrentHashMap<String, Promise<InetAddress>>();
+
+    private final ExecutorService                             resolverExecutor;
+
+    public CachingAddressResolver() {
+        this(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * @param ttlInMilliSecondes
+     *            time to cache a resolved address
+     * @param negativeTtlInMilliSecondes
+     *            time to cache a failed lookup
+     */
+    public CachingAddressResolver(int ttlInMilliSecondes, int negativeTtlInMilliSecondes) {
+        this.ttlInNanos = TimeUnit.MILLISECONDS.toNanos(ttlInMilliSecondes);
+        this.negativeTtlInNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlInMilliSecondes);
+        ThreadPoolExecutor resolverExecutor = new ThreadPoolExecutor(MAX_RESOLVER_THREADS,
+            MAX_RESOLVER_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new DefaultThreadFactory("nettyAddressResolver", true));
+        resolverExecutor.allowCoreThreadTimeOut(true);
+        this.resolverExecutor = resolverExecutor;
+    }
+
+    /**
+     * @see com.zhang.resolver.NettyAddressResolver#resolve(java.lang.String, io.netty.util.concurrent.EventExecutor)
+     */
+    @Override
+    public Future<InetAddress> resolve(final String host, EventExecutor executor) {
+        CacheEntry entry = cache.get(host);
+        if (null != entry && entry.expireAt - System.nanoTime() > 0) {
+            if (null == entry.cause) {
+                return executor.newSucceededFuture(entry.address);
+            }
+            return executor.newFailedFuture(entry.cause);
+        }
+
+        Promise<InetAddress> lookup = resolving.get(host);
+        if (null == lookup) {
+            final Promise<InetAddress> newLookup = ImmediateEventExecutor.INSTANCE.newPromise();
+            lookup = resolving.putIfAbsent(host, newLookup);
+            if (null == lookup) {
+                lookup = newLookup;
+                resolverExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        lookup(host, newLookup);
+                    }
+                });
+            }
+        }
+
+        final Promise<InetAddress> promise = executor.newPromise();
+        lookup.addListener(new FutureListener<InetAddress>() {
+
+            @Override
+            public void operationComplete(Future<InetAddress> future) throws Exception {
+                if (future.isSuccess()) {
+                    promise.setSuccess(future.getNow());
+                } else {
+                    promise.setFailure(future.cause());
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * drop the cached result of the host, e.g. after connecting to it failed
+     * 
+     * @param host
+     */
+    public void invalidate(String host) {
+        cache.remove(host);
+    }
+
+    /**
+     * @see com.zhang.resolver.NettyAddressResolver#close()
+     */
+    @Override
+    public void close() {
+        resolverExecutor.shutdownNow();
+    }
+
+    private void lookup(String host, Promise<InetAddress> lookup) {
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            cache.put(host, new CacheEntry(null, e, System.nanoTime() + negativeTtlInNanos));
+            resolving.remove(host);
+            lookup.setFailure(e);
+            return;
+        } catch (Throwable e) {
+            resolving.remove(host);
+            lookup.setFailure(e);
+            return;
+        }
+        cache.put(host, new CacheEntry(address, null, System.nanoTime() + ttlInNanos));
+        resolving.remove(host);
+        lookup.setSuccess(address);
+    }
+
+    private static final class CacheEntry {
+        final InetAddress address;
+
+        final Throwable   cause;
+
+        final long        expireAt;
+
+        CacheEntry(InetAddress address, Throwable cause, long expireAt) {
+            this.address = address;
+            this.cause = cause;
+            this.expireAt = expireAt;
+        }
+    }
+}
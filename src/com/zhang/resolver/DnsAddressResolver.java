@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.resolver;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.resolver.dns.DefaultDnsCache;
+import io.netty.resolver.dns.DnsCache;
+import io.netty.resolver.dns.DnsNameResolver;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default {@link NettyAddressResolver}. Hosts are resolved by the DNS client of netty on
+ * the event loop of the channel to connect, so no thread ever blocks on a lookup. Resolved
+ * addresses are cached for the TTL of their records, capped by maxTtlInMilliSecondes, and
+ * failed lookups for negativeTtlInMilliSecondes. The cache is shared by the event loops.
+ * 
+ * @author xianwu.zhang
+ */
+public class DnsAddressResolver implements NettyAddressResolver {
+
+    // default cap of the time to cache a resolved address
+    public static final int                                 DEFAULT_MAX_TTL      = 30 * 1000;
+
+    // default time to cache a failed lookup
+    public static final int                                 DEFAULT_NEGATIVE_TTL = 5 * 1000;
+
+    private final DnsCache                                  cache;
+
+    // one resolver per event loop, bound to it
+    private final ConcurrentMap<EventLoop, DnsNameResolver> resolvers            = new ConcurrentHashMap<EventLoop, DnsNameResolver>();
+
+    public DnsAddressResolver() {
+        this(DEFAULT_MAX_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * The cache counts in whole seconds, so the times are rounded up to seconds, 0 disables
+     * the cache.
+     * 
+     * @param maxTtlInMilliSecondes
+     *            max time to cache a resolved address, whatever the TTL of its record
+     * @param negativeTtlInMilliSecondes
+     *            time to cache a failed lookup
+     */
+    public DnsAddressResolver(int maxTtlInMilliSecondes, int negativeTtlInMilliSecondes) {
+        this.cache = new DefaultDnsCache(0, toSeconds(maxTtlInMilliSecondes),
+            toSeconds(negativeTtlInMilliSecondes));
+    }
+
+    /**
+     * @see com.zhang.resolver.NettyAddressResolver#resolve(java.lang.String, io.netty.util.concurrent.EventExecutor)
+     */
+    @Override
+    public Future<InetAddress> resolve(String host, EventExecutor executor) {
+        if (!(executor instanceof EventLoop)) {
+            throw new IllegalArgumentException("not an event loop: " + executor);
+        }
+        return getResolver((EventLoop) executor).resolve(host);
+    }
+
+    /**
+     * drop the cached result of the host, e.g. after connecting to it failed
+     * 
+     * @param host
+     */
+    public void invalidate(String host) {
+        cache.clear(host);
+    }
+
+    /**
+     * @see com.zhang.resolver.NettyAddressResolver#close()
+     */
+    @Override
+    public void close() {
+        for (DnsNameResolver resolver : resolvers.values()) {
+            resolver.close();
+        }
+        resolvers.clear();
+    }
+
+    private DnsNameResolver getResolver(EventLoop eventLoop) {
+        DnsNameResolver resolver = resolvers.get(eventLoop);
+        if (null != resolver) {
+            return resolver;
+        }
+        DnsNameResolver newResolver = new DnsNameResolverBuilder(eventLoop)
+            .channelType(datagramChannelClass(eventLoop)).resolveCache(cache).build();
+        resolver = resolvers.putIfAbsent(eventLoop, newResolver);
+        if (null != resolver) {
+            newResolver.close();
+            return resolver;
+        }
+        return newResolver;
+    }
+
+    /**
+     * @return the milliseconds rounded up to whole seconds, so that a TTL below a second
+     *         does not turn the cache off
+     */
+    static int toSeconds(int milliSecondes) {
+        if (milliSecondes <= 0) {
+            return 0;
+        }
+        return (int) TimeUnit.MILLISECONDS.toSeconds(milliSecondes + 999L);
+    }
+
+    private static Class<? extends DatagramChannel> datagramChannelClass(EventLoop eventLoop) {
+        return eventLoop.parent() instanceof EpollEventLoopGroup ? EpollDatagramChannel.class
+            : NioDatagramChannel.class;
+    }
+}
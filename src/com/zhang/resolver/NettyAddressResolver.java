@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.resolver;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+
+import java.net.InetAddress;
+
+/**
+ * Resolves host names of the routes before a channel is connected. Implementations must not
+ * block the calling thread, which may be an event loop.
+ * 
+ * @author xianwu.zhang
+ */
+public interface NettyAddressResolver {
+
+    /**
+     * resolve the host asynchronously
+     * 
+     * @param host
+     *            host name or ip literal
+     * @param executor
+     *            executor on which the listeners of the returned future are notified,
+     *            usually the event loop of the channel to connect
+     * @return future of the resolved address
+     */
+    Future<InetAddress> resolve(String host, EventExecutor executor);
+
+    /**
+     * release the resources of the resolver, invoked when the client is closed
+     */
+    void close();
+}
@@ -15,13 +15,23 @@
  */
 package com.zhang.util;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
-import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AsciiString;
 
+import java.io.IOException;
 import java.util.Map.Entry;
+import java.util.zip.GZIPOutputStream;
 
 import com.zhang.client.NettyHttpRequest;
 
@@ -30,14 +40,57 @@ import com.zhang.client.NettyHttpRequest;
  */
 public class NettyHttpRequestUtil {
 
+    private static final String ACCEPT_ENCODING = HttpHeaderValues.GZIP + ","
+                                                  + HttpHeaderValues.DEFLATE;
+
     public static HttpRequest create(NettyHttpRequest request, HttpMethod httpMethod) {
+        return create(request, httpMethod, false, 0);
+    }
+
+    /**
+     * create the request, negotiating the content coding of the response and of the body
+     * 
+     * @param acceptEncoding
+     *            advertise gzip and deflate unless the request sets its own Accept-Encoding
+     * @param compressionThreshold
+     *            gzip the in-memory body if it has at least as many bytes and the request
+     *            sets no Content-Encoding, 0 to never compress. The body is sent as is if it
+     *            does not shrink.
+     */
+    public static HttpRequest create(NettyHttpRequest request, HttpMethod httpMethod,
+                                     boolean acceptEncoding, int compressionThreshold) {
         HttpRequest httpRequest = null;
-        if (HttpMethod.POST == httpMethod) {
-            httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, httpMethod, request
-                .getUri().getRawPath(), request.getContent().retain());
+        if (HttpMethod.POST == httpMethod && null != request.getFile()) {
+            httpRequest = new NettyStreamingHttpRequest(HttpVersion.HTTP_1_1, httpMethod, request
+                .getUri().getRawPath(), request.getFile());
+
+            httpRequest.headers().set(HttpHeaderNames.CONTENT_LENGTH,
+                request.getFile().length());
+        } else if (HttpMethod.POST == httpMethod && null != request.getChunkSource()) {
+            httpRequest = new NettyStreamingHttpRequest(HttpVersion.HTTP_1_1, httpMethod, request
+                .getUri().getRawPath(), request.getChunkSource());
 
-            httpRequest.headers().set(HttpHeaders.Names.CONTENT_LENGTH,
-                request.getContent().readableBytes());
+            httpRequest.headers().set(HttpHeaderNames.TRANSFER_ENCODING,
+                HttpHeaderValues.CHUNKED);
+        } else if (HttpMethod.POST == httpMethod) {
+            ByteBuf content = request.getContent();
+            ByteBuf compressed = null;
+            if (compressionThreshold > 0 && content.readableBytes() >= compressionThreshold
+                && !hasHeader(request, HttpHeaderNames.CONTENT_ENCODING)) {
+                compressed = gzip(content);
+            }
+            if (null != compressed) {
+                httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, httpMethod,
+                    request.getUri().getRawPath(), compressed);
+                httpRequest.headers().set(HttpHeaderNames.CONTENT_ENCODING,
+                    HttpHeaderValues.GZIP);
+            } else {
+                httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, httpMethod,
+                    request.getUri().getRawPath(), content.retain());
+            }
+
+            httpRequest.headers().set(HttpHeaderNames.CONTENT_LENGTH,
+                ((FullHttpRequest) httpRequest).content().readableBytes());
         } else {
             httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, httpMethod, request
                 .getUri().getRawPath());
@@ -45,9 +98,61 @@ public class NettyHttpRequestUtil {
         for (Entry<String, Object> entry : request.getHeaders().entrySet()) {
             httpRequest.headers().set(entry.getKey(), entry.getValue());
         }
-        httpRequest.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
-        httpRequest.headers().set(HttpHeaders.Names.HOST, request.getUri().getHost());
+        httpRequest.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        httpRequest.headers().set(HttpHeaderNames.HOST, request.getUri().getHost());
+        if (acceptEncoding && !httpRequest.headers().contains(HttpHeaderNames.ACCEPT_ENCODING)) {
+            httpRequest.headers().set(HttpHeaderNames.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
 
         return httpRequest;
     }
+
+    private static boolean hasHeader(NettyHttpRequest request, AsciiString name) {
+        if (null == request.getHeaders()) {
+            return false;
+        }
+        for (String key : request.getHeaders().keySet()) {
+            if (name.contentEqualsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * gzip the readable bytes of the content, without moving its reader index
+     * 
+     * @return the compressed body, or null if it is not smaller than the content
+     */
+    private static ByteBuf gzip(ByteBuf content) {
+        int length = content.readableBytes();
+        ByteBuf compressed = Unpooled.buffer(length / 2);
+        boolean success = false;
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(new ByteBufOutputStream(compressed));
+            content.getBytes(content.readerIndex(), out, length);
+            out.close();
+            success = compressed.readableBytes() < length;
+        } catch (IOException e) {
+            // the body is sent uncompressed
+        } finally {
+            if (!success) {
+                compressed.release();
+            }
+        }
+        return success ? compressed : null;
+    }
+
+    /**
+     * write the request and flush the channel, the body of a
+     * {@link NettyStreamingHttpRequest} is streamed after the headers
+     * 
+     * @return the future of the last write
+     */
+    public static ChannelFuture writeAndFlush(Channel channel, HttpRequest request) {
+        if (request instanceof NettyStreamingHttpRequest) {
+            return ((NettyStreamingHttpRequest) request).write(channel);
+        }
+        return channel.writeAndFlush(request);
+    }
 }
@@ -17,6 +17,7 @@ package com.zhang.util;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.ReferenceCountUtil;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,18 +47,18 @@ public class NettyHttpResponseBuilder {
             return content;
         }
         NettyHttpResponse response = new NettyHttpResponse();
-        content = response;
-
         if (success) {
             response.setSuccess(true);
-            response.setVersion(pendingResponse.getProtocolVersion());
-            response.setStatus(pendingResponse.getStatus());
+            response.setVersion(pendingResponse.protocolVersion());
+            response.setStatus(pendingResponse.status());
             response.setHeaders(pendingResponse.headers());
             response.setContents(pendingContents);
         } else {
             response.setCause(cause);
         }
-        return content;
+        // published once complete
+        content = response;
+        return response;
     }
 
     public void addContent(ByteBuf byteBuf) {
@@ -67,6 +68,20 @@ public class NettyHttpResponseBuilder {
         pendingContents.add(byteBuf);
     }
 
+    /**
+     * release the contents received so far, when the response is not going to be built
+     */
+    public void releaseContents() {
+        List<ByteBuf> pendingContents = this.pendingContents;
+        this.pendingContents = null;
+        if (null == pendingContents) {
+            return;
+        }
+        for (ByteBuf content : pendingContents) {
+            ReferenceCountUtil.release(content);
+        }
+    }
+
     /**
      * @return the contents
      */
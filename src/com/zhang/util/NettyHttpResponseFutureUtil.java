@@ -15,13 +15,23 @@
  */
 package com.zhang.util;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
-import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.util.AttributeKey;
 
 import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 import com.zhang.client.NettyHttpResponseFuture;
 
@@ -39,25 +49,139 @@ public class NettyHttpResponseFutureUtil {
     private static final AttributeKey<Object> FORCE_CONNECT_ATTRIBUTE = AttributeKey
                                                                           .valueOf("forceConnect");
 
+    // outstanding responses of a pipelined channel, in the order the requests were written
+    private static final AttributeKey<Object> PIPELINE_ATTRIBUTE      = AttributeKey
+                                                                          .valueOf("pipeline");
+
+    // outstanding responses of a multiplexed HTTP/2 channel per stream id
+    private static final AttributeKey<Object> STREAMS_ATTRIBUTE       = AttributeKey
+                                                                          .valueOf("streams");
+
     public static void attributeForceConnect(Channel channel, boolean forceConnect) {
         if (forceConnect) {
             channel.attr(FORCE_CONNECT_ATTRIBUTE).set(true);
         }
     }
 
+    /**
+     * mark the channel as pipelined, so that it carries a queue of outstanding responses
+     * instead of a single one
+     */
+    public static void attributePipelined(Channel channel) {
+        channel.attr(PIPELINE_ATTRIBUTE).set(new ConcurrentLinkedQueue<NettyHttpResponseFuture>());
+    }
+
+    public static boolean isPipelined(Channel channel) {
+        return null != getPipeline(channel);
+    }
+
+    /**
+     * mark the channel as multiplexed, so that it carries the outstanding responses per
+     * HTTP/2 stream
+     */
+    public static void attributeMultiplexed(Channel channel) {
+        channel.attr(STREAMS_ATTRIBUTE).set(
+            new ConcurrentHashMap<Integer, NettyHttpResponseFuture>());
+    }
+
+    public static boolean isMultiplexed(Channel channel) {
+        return null != getStreams(channel);
+    }
+
+    public static void attributeStream(Channel channel, int streamId,
+                                       NettyHttpResponseFuture responseFuture) {
+        responseFuture.setChannel(channel);
+        getStreams(channel).put(streamId, responseFuture);
+    }
+
+    /**
+     * @return the response of the stream, which is removed from the outstanding responses
+     */
+    public static NettyHttpResponseFuture pollStreamResponse(Channel channel, int streamId) {
+        ConcurrentMap<Integer, NettyHttpResponseFuture> streams = getStreams(channel);
+        return null == streams ? null : streams.remove(streamId);
+    }
+
+    /**
+     * remove the response from the outstanding responses of the multiplexed channel
+     * 
+     * @return the id of the stream of the response, or -1 if it is not outstanding
+     */
+    public static int removeStream(Channel channel, NettyHttpResponseFuture responseFuture) {
+        ConcurrentMap<Integer, NettyHttpResponseFuture> streams = getStreams(channel);
+        if (null == streams) {
+            return -1;
+        }
+        for (Entry<Integer, NettyHttpResponseFuture> entry : streams.entrySet()) {
+            if (entry.getValue() == responseFuture
+                && streams.remove(entry.getKey(), responseFuture)) {
+                return entry.getKey();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * turn a multiplexed channel whose HTTP/2 upgrade was rejected into a plain HTTP/1.1
+     * channel, carrying the response of the upgrade request
+     */
+    public static void attributeHttp1(Channel channel, int upgradeStreamId) {
+        NettyHttpResponseFuture responseFuture = pollStreamResponse(channel, upgradeStreamId);
+        channel.attr(STREAMS_ATTRIBUTE).set(null);
+        if (null != responseFuture) {
+            attributeResponse(channel, responseFuture);
+        }
+    }
+
     public static void attributeResponse(Channel channel, NettyHttpResponseFuture responseFuture) {
-        channel.attr(DEFAULT_ATTRIBUTE).set(responseFuture);
         responseFuture.setChannel(channel);
+        Queue<NettyHttpResponseFuture> pipeline = getPipeline(channel);
+        if (null != pipeline) {
+            pipeline.offer(responseFuture);
+            return;
+        }
+        channel.attr(DEFAULT_ATTRIBUTE).set(responseFuture);
     }
 
     public static void attributeRoute(Channel channel, InetSocketAddress route) {
         channel.attr(ROUTE_ATTRIBUTE).set(route);
     }
 
+    /**
+     * @return the response being received, which is the oldest outstanding response of a
+     *         pipelined channel
+     */
     public static NettyHttpResponseFuture getResponse(Channel channel) {
+        Queue<NettyHttpResponseFuture> pipeline = getPipeline(channel);
+        if (null != pipeline) {
+            return pipeline.peek();
+        }
         return (NettyHttpResponseFuture) channel.attr(DEFAULT_ATTRIBUTE).get();
     }
 
+    /**
+     * get the response being received and remove it from the channel, so that closing the
+     * channel, e.g. when it is returned to a retired route, does not cancel it
+     */
+    public static NettyHttpResponseFuture pollResponse(Channel channel) {
+        Queue<NettyHttpResponseFuture> pipeline = getPipeline(channel);
+        if (null != pipeline) {
+            return pipeline.poll();
+        }
+        return (NettyHttpResponseFuture) channel.attr(DEFAULT_ATTRIBUTE).getAndSet(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<Integer, NettyHttpResponseFuture> getStreams(Channel channel) {
+        return (ConcurrentMap<Integer, NettyHttpResponseFuture>) channel.attr(STREAMS_ATTRIBUTE)
+            .get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<NettyHttpResponseFuture> getPipeline(Channel channel) {
+        return (Queue<NettyHttpResponseFuture>) channel.attr(PIPELINE_ATTRIBUTE).get();
+    }
+
     public static InetSocketAddress getRoute(Channel channel) {
         return (InetSocketAddress) channel.attr(ROUTE_ATTRIBUTE).get();
     }
@@ -71,23 +195,44 @@ public class NettyHttpResponseFutureUtil {
     }
 
     public static void setPendingResponse(Channel channel, HttpResponse pendingResponse) {
-        NettyHttpResponseFuture responseFuture = getResponse(channel);
+        setPendingResponse(getResponse(channel), pendingResponse);
+    }
+
+    public static void setPendingResponse(NettyHttpResponseFuture responseFuture,
+                                          HttpResponse pendingResponse) {
         NettyHttpResponseBuilder responseBuilder = new NettyHttpResponseBuilder();
         responseBuilder.setSuccess(true);
         responseBuilder.setPendingResponse(pendingResponse);
         responseFuture.setResponseBuilder(responseBuilder);
     }
 
+    /**
+     * set the whole response of a HTTP/2 stream at once
+     */
+    public static void setStreamResponse(NettyHttpResponseFuture responseFuture,
+                                         FullHttpResponse response) {
+        setPendingResponse(responseFuture, response);
+        addContent(responseFuture, response.content());
+    }
+
     public static boolean headerContainConnectionClose(Channel channel) {
         NettyHttpResponseFuture responseFuture = getResponse(channel);
-        return HttpHeaders.Values.CLOSE.equalsIgnoreCase(responseFuture.getResponseBuilder()
-            .getPendingResponse().headers().get(HttpHeaders.Names.CONNECTION));
+        return HttpHeaderValues.CLOSE.contentEqualsIgnoreCase(responseFuture
+            .getResponseBuilder().getPendingResponse().headers().get(HttpHeaderNames.CONNECTION));
     }
 
     public static void setPendingContent(Channel channel, HttpContent httpContent) {
         NettyHttpResponseFuture responseFuture = getResponse(channel);
-        NettyHttpResponseBuilder responseBuilder = responseFuture.getResponseBuilder();
-        responseBuilder.addContent(httpContent.content().retain());
+        addContent(responseFuture, httpContent.content());
+    }
+
+    /**
+     * keep the content in the response, either copied to the heap so that the pooled buffer
+     * is reused right away, or retained until the response is released
+     */
+    private static void addContent(NettyHttpResponseFuture responseFuture, ByteBuf content) {
+        responseFuture.getResponseBuilder().addContent(
+            responseFuture.isCopyContent() ? Unpooled.copiedBuffer(content) : content.retain());
     }
 
     public static boolean done(Channel channel) {
@@ -100,7 +245,32 @@ public class NettyHttpResponseFutureUtil {
     }
 
     public static boolean cancel(Channel channel, Throwable cause) {
+        ConcurrentMap<Integer, NettyHttpResponseFuture> streams = getStreams(channel);
+        if (null != streams) {
+            Iterator<NettyHttpResponseFuture> iterator = streams.values().iterator();
+            while (iterator.hasNext()) {
+                NettyHttpResponseFuture responseFuture = iterator.next();
+                iterator.remove();
+                responseFuture.cancel(cause);
+            }
+            return true;
+        }
+
+        Queue<NettyHttpResponseFuture> pipeline = getPipeline(channel);
+        if (null != pipeline) {
+            NettyHttpResponseFuture responseFuture = pipeline.poll();
+            while (null != responseFuture) {
+                responseFuture.cancel(cause);
+                responseFuture = pipeline.poll();
+            }
+            return true;
+        }
+
         NettyHttpResponseFuture responseFuture = getResponse(channel);
-        return responseFuture.cancel(cause);
+        if (null != responseFuture) {
+            return responseFuture.cancel(cause);
+        }
+
+        return true;
     }
 }
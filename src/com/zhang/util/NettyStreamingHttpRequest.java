@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedFile;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A request whose body is streamed from a file or a chunk source when it is written, so
+ * the body is never buffered in memory. A file is sent with zero-copy {@link DefaultFileRegion}
+ * on plain HTTP/1.1 channels, a chunk source is sent with chunked transfer encoding.
+ * <p>
+ * The body can be written only once. It is released, which closes the chunk source, if the
+ * request is dropped without being written.
+ * </p>
+ * 
+ * @author xianwu.zhang
+ */
+public class NettyStreamingHttpRequest extends DefaultHttpRequest implements ReferenceCounted {
+    private static final Logger         logger = Logger.getLogger(NettyStreamingHttpRequest.class
+                                                   .getName());
+
+    private final File                  file;
+
+    private final ChunkedInput<ByteBuf> chunkSource;
+
+    private final AtomicInteger         refCnt = new AtomicInteger(1);
+
+    private volatile boolean            written;
+
+    public NettyStreamingHttpRequest(HttpVersion httpVersion, HttpMethod method, String uri,
+                                     File file) {
+        super(httpVersion, method, uri);
+        this.file = file;
+        this.chunkSource = null;
+    }
+
+    public NettyStreamingHttpRequest(HttpVersion httpVersion, HttpMethod method, String uri,
+                                     ChunkedInput<ByteBuf> chunkSource) {
+        super(httpVersion, method, uri);
+        this.file = null;
+        this.chunkSource = chunkSource;
+    }
+
+    /**
+     * write the headers and the body, and flush the channel
+     * 
+     * @return the future of the last write
+     */
+    public ChannelFuture write(Channel channel) {
+        if (written) {
+            throw new IllegalStateException("the body of " + this + " is already written");
+        }
+        written = true;
+        release();
+
+        DefaultHttpRequest head = new DefaultHttpRequest(protocolVersion(), method(), uri());
+        head.headers().set(headers());
+        channel.write(head).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        if (null != chunkSource) {
+            return channel.writeAndFlush(new HttpChunkedInput(chunkSource));
+        }
+        // zero-copy needs the raw socket, HTTP/2 framing and TLS read the file through memory
+        if (NettyHttpResponseFutureUtil.isMultiplexed(channel)
+            || null != channel.pipeline().get(SslHandler.class)) {
+            try {
+                return channel.writeAndFlush(new HttpChunkedInput(new ChunkedFile(file)));
+            } catch (IOException e) {
+                channel.close();
+                return channel.newFailedFuture(e);
+            }
+        }
+        channel.write(new DefaultFileRegion(file, 0, file.length())).addListener(
+            ChannelFutureListener.CLOSE_ON_FAILURE);
+        return channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    @Override
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    @Override
+    public ReferenceCounted retain() {
+        return retain(1);
+    }
+
+    @Override
+    public ReferenceCounted retain(int increment) {
+        for (;;) {
+            int current = refCnt.get();
+            if (current <= 0) {
+                throw new IllegalReferenceCountException(current, increment);
+            }
+            if (refCnt.compareAndSet(current, current + increment)) {
+                return this;
+            }
+        }
+    }
+
+    @Override
+    public ReferenceCounted touch() {
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return release(1);
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        for (;;) {
+            int current = refCnt.get();
+            if (current < decrement) {
+                throw new IllegalReferenceCountException(current, -decrement);
+            }
+            if (refCnt.compareAndSet(current, current - decrement)) {
+                if (current == decrement) {
+                    deallocate();
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    private void deallocate() {
+        // once written, the chunk source is closed by the ChunkedWriteHandler
+        if (written || null == chunkSource) {
+            return;
+        }
+        try {
+            chunkSource.close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "close chunk source failed", e);
+        }
+    }
+}
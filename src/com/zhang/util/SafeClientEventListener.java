@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.util;
+
+import io.netty.channel.Channel;
+
+import java.net.InetSocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.zhang.client.NettyClientEventListener;
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * Wraps a {@link NettyClientEventListener}, so that an exception thrown by the listener is
+ * logged instead of breaking the request or the channel.
+ * 
+ * @author xianwu.zhang
+ */
+public final class SafeClientEventListener implements NettyClientEventListener {
+
+    private static final Logger            logger = Logger.getLogger(SafeClientEventListener.class
+                                                      .getName());
+
+    private final NettyClientEventListener listener;
+
+    public SafeClientEventListener(NettyClientEventListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void channelConnected(InetSocketAddress route, Channel channel, long connectNanos,
+                                 Throwable cause) {
+        try {
+            listener.channelConnected(route, channel, connectNanos, cause);
+        } catch (Throwable e) {
+            logFailure("channelConnected", e);
+        }
+    }
+
+    @Override
+    public void channelAcquired(Channel channel, NettyHttpResponseFuture responseFuture) {
+        try {
+            listener.channelAcquired(channel, responseFuture);
+        } catch (Throwable e) {
+            logFailure("channelAcquired", e);
+        }
+    }
+
+    @Override
+    public void requestWritten(Channel channel, NettyHttpResponseFuture responseFuture,
+                               Throwable cause) {
+        try {
+            listener.requestWritten(channel, responseFuture, cause);
+        } catch (Throwable e) {
+            logFailure("requestWritten", e);
+        }
+    }
+
+    @Override
+    public void responseReceived(Channel channel, NettyHttpResponseFuture responseFuture) {
+        try {
+            listener.responseReceived(channel, responseFuture);
+        } catch (Throwable e) {
+            logFailure("responseReceived", e);
+        }
+    }
+
+    @Override
+    public void requestCompleted(NettyHttpResponseFuture responseFuture) {
+        try {
+            listener.requestCompleted(responseFuture);
+        } catch (Throwable e) {
+            logFailure("requestCompleted", e);
+        }
+    }
+
+    @Override
+    public void channelReleased(Channel channel) {
+        try {
+            listener.channelReleased(channel);
+        } catch (Throwable e) {
+            logFailure("channelReleased", e);
+        }
+    }
+
+    @Override
+    public void channelClosed(Channel channel, Throwable cause) {
+        try {
+            listener.channelClosed(channel, cause);
+        } catch (Throwable e) {
+            logFailure("channelClosed", e);
+        }
+    }
+
+    private void logFailure(String event, Throwable e) {
+        logger.log(Level.WARNING, "event listener " + listener + " threw an exception on "
+                                  + event, e);
+    }
+}
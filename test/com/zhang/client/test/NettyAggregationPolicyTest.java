@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpStream;
+import com.zhang.client.NettyHttpStreamHandler;
+import com.zhang.pool.NettyAggregationPolicy;
+import com.zhang.pool.NettyChannelPool;
+import com.zhang.util.NettyHttpRequestUtil;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyAggregationPolicyTest extends NettyClientTestSupport {
+
+    private static final int MAX_CONTENT_LENGTH = 1024;
+
+    /**
+     * a response whose Content-Length exceeds the limit fails at once and its channel is
+     * closed, a route with a higher limit receives it
+     */
+    @Test
+    public void testMaxContentLength() throws Exception {
+        server = new TestHttpServer();
+        Map<String, Integer> maxContentLengthPerRoute = new HashMap<String, Integer>();
+        maxContentLengthPerRoute.put("localhost:" + server.getPort(), 64 * 1024);
+        client = new NettyHttpClient.ConfigBuilder().maxContentLength(MAX_CONTENT_LENGTH)
+            .maxContentLengthPerRoute(maxContentLengthPerRoute).build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/size/2048")).get();
+        assertFalse(response.isSuccess());
+        assertTrue(String.valueOf(response.getCause()),
+            response.getCause() instanceof TooLongFrameException);
+        awaitClosed(1);
+
+        response = client.doGet(
+            newUrlRequest("http://localhost:" + server.getPort() + "/size/2048")).get();
+        assertTrue(response.isSuccess());
+        assertEquals(2048, response.getContentAsBytes().length);
+        response.close();
+    }
+
+    /**
+     * the Content-Length of a response without body is not checked against the limit
+     */
+    @Test
+    public void testResponsesWithoutBody() throws Exception {
+        server = new TestHttpServer();
+        NettyChannelPool channelPool = new NettyChannelPool(new HashMap<String, Integer>(),
+            5000, 60 * 1000, false, null, new HashMap<ChannelOption, Object>(), null);
+        channelPool.setMaxContentLength(MAX_CONTENT_LENGTH, null);
+        try {
+            InetSocketAddress route = new InetSocketAddress("127.0.0.1", server.getPort());
+            NettyHttpResponse response = channelPool.sendRequest(
+                route,
+                NettyHttpRequestUtil.create(newRequest("/size/4096"),
+                    HttpMethod.HEAD)).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals("4096", response.getHeaders().get(HttpHeaderNames.CONTENT_LENGTH));
+            response.close();
+
+            response = channelPool.sendRequest(
+                route,
+                NettyHttpRequestUtil.create(newRequest("/status/304/size/4096"),
+                    HttpMethod.GET)).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals(HttpResponseStatus.NOT_MODIFIED, response.getStatus());
+            response.close();
+            assertEquals(0, server.getClosed());
+        } finally {
+            channelPool.close();
+        }
+    }
+
+    /**
+     * COMPOSITE keeps the chunks of the body as they are read, AGGREGATE merges them
+     */
+    @Test
+    public void testCompositeKeepsChunks() throws Exception {
+        server = new TestHttpServer();
+        Map<String, NettyAggregationPolicy> aggregationPolicyPerRoute = new HashMap<String, NettyAggregationPolicy>();
+        aggregationPolicyPerRoute.put(server.getRoute(), NettyAggregationPolicy.COMPOSITE);
+        client = new NettyHttpClient.ConfigBuilder()
+            .aggregationPolicyPerRoute(aggregationPolicyPerRoute).build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/size/100000"))
+            .get();
+        assertTrue(response.isSuccess());
+        assertTrue(response.getContents().size() > 1);
+        assertEquals(100000, response.getContentAsBytes().length);
+        response.close();
+
+        response = client.doGet(
+            newUrlRequest("http://localhost:" + server.getPort() + "/size/100000")).get();
+        assertEquals(1, response.getContents().size());
+        assertEquals(100000, response.getContentAsBytes().length);
+        response.close();
+    }
+
+    /**
+     * STREAM hands the body to the stream handler whatever its size, and fails the requests
+     * sent without a stream handler
+     */
+    @Test
+    public void testStreamRoute() throws Exception {
+        server = new TestHttpServer();
+        Map<String, NettyAggregationPolicy> aggregationPolicyPerRoute = new HashMap<String, NettyAggregationPolicy>();
+        aggregationPolicyPerRoute.put(server.getRoute(), NettyAggregationPolicy.STREAM);
+        client = new NettyHttpClient.ConfigBuilder().maxContentLength(MAX_CONTENT_LENGTH)
+            .aggregationPolicyPerRoute(aggregationPolicyPerRoute).build();
+
+        final AtomicLong received = new AtomicLong();
+        NettyHttpResponse response = client.doGet(newRequest("/size/100000"),
+            new NettyHttpStreamHandler() {
+
+                @Override
+                public void onResponse(HttpResponse response, NettyHttpStream stream)
+                                                                                     throws Exception {
+                }
+
+                @Override
+                public void onContent(ByteBuf content, boolean last, NettyHttpStream stream)
+                                                                                            throws Exception {
+                    received.addAndGet(content.readableBytes());
+                }
+            }).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals(100000, received.get());
+        response.close();
+
+        response = client.doGet(newRequest("/size/10")).get();
+        assertFalse(response.isSuccess());
+        assertTrue(String.valueOf(response.getCause()),
+            response.getCause() instanceof IllegalArgumentException);
+        assertEquals(1, server.getRequests());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyBatchFuture;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyBatchTest extends NettyClientTestSupport {
+
+    private TestHttpServer  other;
+
+    @After
+    public void closeOther() throws Exception {
+        if (null != other) {
+            other.close();
+        }
+    }
+
+    /**
+     * the requests of a batch are written on the idle channels of the route, posted if they
+     * have a body, and their responses are returned in the order of the requests
+     */
+    @Test
+    public void testBatch() throws Exception {
+        server = new TestHttpServer();
+        client = newClient();
+        assertEquals(4, client.warmUp(server.getRoute(), 4));
+        awaitOpened(server, 4);
+
+        List<NettyHttpRequest> requests = new ArrayList<NettyHttpRequest>();
+        for (int i = 0; i < 4; i++) {
+            NettyHttpRequest request = newUrlRequest(server.url("/batch/" + i));
+            if (0 == i % 2) {
+                request.content("body " + i, CharsetUtil.UTF_8);
+            }
+            requests.add(request);
+        }
+        NettyBatchFuture batch = client.doBatch(requests);
+        List<NettyHttpResponse> responses = batch.get(2, TimeUnit.SECONDS);
+
+        assertTrue(batch.isDone());
+        assertEquals(4, responses.size());
+        for (int i = 0; i < 4; i++) {
+            NettyHttpResponse response = responses.get(i);
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            if (0 == i % 2) {
+                assertEquals("body " + i, response.getResponseBody());
+            }
+            response.close();
+        }
+        assertEquals(4, server.getRequests());
+        assertEquals(4, server.getOpened());
+    }
+
+    /**
+     * a batch spans several routes, and a request which fails leaves the others alone
+     */
+    @Test
+    public void testBatchAcrossRoutes() throws Exception {
+        server = new TestHttpServer();
+        other = new TestHttpServer();
+        TestHttpServer closed = new TestHttpServer();
+        String closedUrl = closed.url("/closed");
+        closed.close();
+        client = newClient();
+
+        List<NettyHttpRequest> requests = new ArrayList<NettyHttpRequest>();
+        requests.add(newRequest("/first"));
+        requests.add(newUrlRequest(closedUrl));
+        requests.add(newUrlRequest(other.url("/other")));
+        List<NettyHttpResponse> responses = client.doBatch(requests).get(2, TimeUnit.SECONDS);
+
+        assertEquals("1", responses.get(0).getResponseBody());
+        assertFalse(responses.get(1).isSuccess());
+        assertEquals("1", responses.get(2).getResponseBody());
+        for (NettyHttpResponse response : responses) {
+            response.close();
+        }
+    }
+
+    private void awaitOpened(TestHttpServer server, int opened) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getOpened() < opened && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(opened, server.getOpened());
+    }
+}
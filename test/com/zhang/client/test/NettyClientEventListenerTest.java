@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyClientEventAdapter;
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyClientEventListenerTest extends NettyClientTestSupport {
+
+    /**
+     * the events of a request on a new channel, then of a request on the pooled channel,
+     * and the close of the channel with the client
+     */
+    @Test
+    public void testEvents() throws Exception {
+        server = new TestHttpServer();
+        RecordingListener listener = new RecordingListener(false);
+        client = new NettyHttpClient.ConfigBuilder().eventListener(listener)
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+
+        send();
+        listener.await(6);
+        assertEquals(Arrays.asList("channelConnected", "channelAcquired", "requestWritten",
+            "responseReceived", "channelReleased", "requestCompleted"), listener.events);
+        assertNull(listener.connectCause);
+        listener.events.clear();
+
+        // written from this thread, the write is still reported before the response
+        send();
+        listener.await(5);
+        assertEquals(Arrays.asList("channelAcquired", "requestWritten", "responseReceived",
+            "channelReleased", "requestCompleted"), listener.events);
+        listener.events.clear();
+
+        client.close();
+        client = null;
+        listener.await(1);
+        assertEquals(Arrays.asList("channelClosed"), listener.events);
+    }
+
+    /**
+     * a listener which throws breaks neither the request nor the channel
+     */
+    @Test
+    public void testThrowingListener() throws Exception {
+        server = new TestHttpServer();
+        RecordingListener listener = new RecordingListener(true);
+        client = new NettyHttpClient.ConfigBuilder().eventListener(listener)
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+
+        send();
+        send();
+        assertEquals(1, server.getOpened());
+        assertEquals(0, server.getClosed());
+    }
+
+    private void send() throws Exception {
+        NettyHttpResponse response = client.doGet(
+            new NettyHttpRequest().header(HttpHeaderNames.CONTENT_TYPE.toString(),
+                "text/json; charset=UTF-8").uri(server.url("/events"))).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        response.close();
+    }
+
+    private static final class RecordingListener extends NettyClientEventAdapter {
+
+        private final List<String> events = new CopyOnWriteArrayList<String>();
+
+        private final boolean      fail;
+
+        private volatile Throwable connectCause;
+
+        RecordingListener(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public void channelConnected(InetSocketAddress route, Channel channel,
+                                     long connectNanos, Throwable cause) {
+            connectCause = cause;
+            record("channelConnected");
+        }
+
+        @Override
+        public void channelAcquired(Channel channel, NettyHttpResponseFuture responseFuture) {
+            record("channelAcquired");
+        }
+
+        @Override
+        public void requestWritten(Channel channel, NettyHttpResponseFuture responseFuture,
+                                   Throwable cause) {
+            record(null == cause ? "requestWritten" : "requestFailed");
+        }
+
+        @Override
+        public void responseReceived(Channel channel, NettyHttpResponseFuture responseFuture) {
+            record("responseReceived");
+        }
+
+        @Override
+        public void requestCompleted(NettyHttpResponseFuture responseFuture) {
+            record("requestCompleted");
+        }
+
+        @Override
+        public void channelReleased(Channel channel) {
+            record("channelReleased");
+        }
+
+        @Override
+        public void channelClosed(Channel channel, Throwable cause) {
+            record("channelClosed");
+        }
+
+        private void record(String event) {
+            events.add(event);
+            if (fail) {
+                throw new IllegalStateException(event);
+            }
+        }
+
+        private void await(int size) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (events.size() < size && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(events.toString(), size, events.size());
+        }
+    }
+}
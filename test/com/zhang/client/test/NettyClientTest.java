@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.pool.NettyAcquireTimeoutException;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyClientTest extends NettyClientTestSupport {
+
+    @Test
+    public void testGet() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().maxIdleTimeInMilliSecondes(200 * 1000)
+            .connectTimeOutInMilliSecondes(30 * 1000).build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/get")).get();
+
+        assertTrue(response.isSuccess());
+        assertEquals(HttpResponseStatus.OK, response.getStatus());
+        assertEquals("1", response.getResponseBody());
+        assertEquals(Arrays.asList("/get"), server.getUris());
+        response.close();
+    }
+
+    @Test
+    public void testPost() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().maxIdleTimeInMilliSecondes(200 * 1000)
+            .connectTimeOutInMilliSecondes(30 * 1000).build();
+
+        final String postContent = "{\"name\":\"light-netty-client\"}";
+        NettyHttpRequest request = newRequest("/post").content(postContent, CharsetUtil.UTF_8);
+        NettyHttpResponse response = client.doPost(request).get();
+
+        assertTrue(response.isSuccess());
+        assertEquals(postContent, response.getResponseBody());
+        response.close();
+    }
+
+    /**
+     * a request waiting for the only channel of the route fails once the connect timeout
+     * is over, without being sent, and the channel serves the next request afterwards
+     */
+    @Test
+    public void testAcquireTimeOut() throws Exception {
+        server = new TestHttpServer(1000, 0);
+        client = new NettyHttpClient.ConfigBuilder().maxPerRoute(maxPerRoute(1))
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(200).build();
+
+        NettyHttpResponseFuture slow = client.doGet(newRequest("/slow"));
+        long start = System.nanoTime();
+        NettyHttpResponse waiting = client.doGet(newRequest("/waiting")).get();
+        long waitedInMillis = (System.nanoTime() - start) / 1000000;
+
+        assertFalse(waiting.isSuccess());
+        assertTrue(String.valueOf(waiting.getCause()),
+            waiting.getCause() instanceof NettyAcquireTimeoutException);
+        // only the lower bound, a loaded machine may take any longer
+        assertTrue("waited " + waitedInMillis + "ms", waitedInMillis >= 150);
+
+        NettyHttpResponse response = slow.get();
+        assertTrue(response.isSuccess());
+        assertEquals("1", response.getResponseBody());
+        response.close();
+
+        response = client.doGet(newRequest("/next")).get();
+        assertEquals("2", response.getResponseBody());
+        response.close();
+        assertEquals(Arrays.asList("/slow", "/next"), server.getUris());
+        assertEquals(1, server.getOpened());
+    }
+
+    /**
+     * requests queued for the only channel of the route are handed the channel in the order
+     * they were sent
+     */
+    @Test
+    public void testWaitersServedInOrder() throws Exception {
+        server = new TestHttpServer(50, 0);
+        client = new NettyHttpClient.ConfigBuilder().maxPerRoute(maxPerRoute(1))
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        List<String> expectedUris = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(client.doGet(newRequest("/seq/" + i)));
+            expectedUris.add("/seq/" + i);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            NettyHttpResponse response = futures.get(i).get();
+            assertTrue(response.isSuccess());
+            assertEquals(String.valueOf(i + 1), response.getResponseBody());
+            response.close();
+        }
+        assertEquals(expectedUris, server.getUris());
+        assertEquals(1, server.getOpened());
+    }
+
+    private Map<String, Integer> maxPerRoute(int max) {
+        Map<String, Integer> maxPerRoute = new HashMap<String, Integer>();
+        maxPerRoute.put(server.getRoute(), max);
+        return maxPerRoute;
+    }
+}
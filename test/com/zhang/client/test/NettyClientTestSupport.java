@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+import org.junit.After;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+
+/**
+ * Base of the tests of a {@link NettyHttpClient} against a {@link TestHttpServer}. The server
+ * and the client set by a test are closed after it.
+ *
+ * @author xianwu.zhang
+ */
+public abstract class NettyClientTestSupport {
+
+    protected TestHttpServer  server;
+
+    protected NettyHttpClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != client) {
+            client.close();
+        }
+        if (null != server) {
+            server.close();
+        }
+    }
+
+    /**
+     * @return a client with the idle and connect timeouts of the tests
+     */
+    protected NettyHttpClient newClient() {
+        return new NettyHttpClient.ConfigBuilder().maxIdleTimeInMilliSecondes(200 * 1000)
+            .connectTimeOutInMilliSecondes(5000).build();
+    }
+
+    /**
+     * @param path
+     *            path of the request on the test server, starting with a slash
+     */
+    protected NettyHttpRequest newRequest(String path) {
+        return newUrlRequest(server.url(path));
+    }
+
+    protected NettyHttpRequest newUrlRequest(String url) {
+        return new NettyHttpRequest().header(HttpHeaderNames.CONTENT_TYPE.toString(),
+            "text/json; charset=UTF-8").uri(url);
+    }
+
+    /**
+     * wait until the test server has seen the given number of connections closed
+     */
+    protected void awaitClosed(int closed) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getClosed() < closed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(closed, server.getClosed());
+    }
+}
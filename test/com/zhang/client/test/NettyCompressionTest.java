@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.CharsetUtil;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyCompressionTest extends NettyClientTestSupport {
+
+    /**
+     * the client accepts compressed responses and hands out the decompressed body
+     */
+    @Test
+    public void testResponseDecompressed() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().contentDecompression(true)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/size/10000")).get();
+
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        byte[] expected = new byte[10000];
+        Arrays.fill(expected, (byte) 'a');
+        assertTrue(Arrays.equals(expected, response.getContentAsBytes()));
+        assertFalse(response.getHeaders().contains(HttpHeaderNames.CONTENT_ENCODING));
+        assertTrue(server.getHeaders().get(0).get(HttpHeaderNames.ACCEPT_ENCODING)
+            .contains("gzip"));
+        response.close();
+    }
+
+    /**
+     * without decompression nothing compressed is asked for
+     */
+    @Test
+    public void testNoDecompressionByDefault() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/size/100")).get();
+
+        assertEquals(100, response.getContentAsBytes().length);
+        assertNull(response.getHeaders().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertNull(server.getHeaders().get(0).get(HttpHeaderNames.ACCEPT_ENCODING));
+        response.close();
+    }
+
+    /**
+     * a body above the threshold is sent gzipped, a smaller one as it is
+     */
+    @Test
+    public void testRequestCompressed() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().requestCompressionThreshold(1024)
+            .connectTimeOutInMilliSecondes(5000).build();
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 8192) {
+            large.append("{\"name\":\"light-netty-client\"},");
+        }
+
+        NettyHttpResponse response = client.doPost(
+            newRequest("/large").content(large.toString(), CharsetUtil.UTF_8)).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals(large.toString(), response.getResponseBody(CharsetUtil.UTF_8));
+        response.close();
+
+        response = client.doPost(newRequest("/small").content("small", CharsetUtil.UTF_8))
+            .get();
+        assertEquals("small", response.getResponseBody(CharsetUtil.UTF_8));
+        response.close();
+
+        HttpHeaders largeHeaders = server.getHeaders().get(0);
+        assertEquals("gzip", largeHeaders.get(HttpHeaderNames.CONTENT_ENCODING));
+        assertTrue(largeHeaders.getInt(HttpHeaderNames.CONTENT_LENGTH) < large.length() / 4);
+        assertNull(server.getHeaders().get(1).get(HttpHeaderNames.CONTENT_ENCODING));
+    }
+}
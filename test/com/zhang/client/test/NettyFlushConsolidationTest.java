@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyFlushConsolidationTest extends NettyClientTestSupport {
+
+    /**
+     * many small requests pipelined on a channel with consolidated flushes all reach the
+     * server, and their responses are matched in order
+     */
+    @Test
+    public void testConsolidatedFlushes() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().flushConsolidation(8)
+            .maxPerRoute(Collections.singletonMap(server.getRoute(), 1))
+            .pipeliningPerRoute(Collections.singletonMap(server.getRoute(), 16))
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(client.doGet(newRequest("/flush/" + i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            NettyHttpResponse response = futures.get(i).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals(String.valueOf(i + 1), response.getResponseBody());
+            assertEquals("/flush/" + i, server.getUris().get(i));
+            response.close();
+        }
+        assertNotNull(futures.get(0).getChannel().pipeline().get(FlushConsolidationHandler.class));
+        assertEquals(50, server.getRequests());
+        assertEquals(1, server.getOpened());
+    }
+
+    /**
+     * every flush is written at once by default
+     */
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+
+        NettyHttpResponseFuture future = client.doGet(newRequest("/flush"));
+        NettyHttpResponse response = future.get();
+        assertTrue(response.isSuccess());
+        response.close();
+        assertNull(future.getChannel().pipeline().get(FlushConsolidationHandler.class));
+    }
+}
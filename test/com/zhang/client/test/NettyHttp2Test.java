@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyHttp2Test extends NettyClientTestSupport {
+
+    private TestHttp2Server http2Server;
+
+    @After
+    public void closeHttp2Server() throws Exception {
+        if (null != http2Server) {
+            http2Server.close();
+        }
+    }
+
+    /**
+     * concurrent requests are multiplexed over the few connections of the route, opened
+     * with prior knowledge
+     */
+    @Test
+    public void testPriorKnowledge() throws Exception {
+        http2Server = new TestHttp2Server(100);
+        client = newClient(http2Server.getRoute(), false);
+
+        assertMultiplexed(sendAll(http2Server.url("/h2/"), 16));
+        assertEquals(16, http2Server.getRequests());
+        assertEquals(2, http2Server.getOpened());
+    }
+
+    /**
+     * the first request upgrades the connection, and the next ones are multiplexed over it
+     */
+    @Test
+    public void testUpgrade() throws Exception {
+        http2Server = new TestHttp2Server(0);
+        client = newClient(http2Server.getRoute(), true);
+
+        NettyHttpResponse response = client.doGet(newUrlRequest(http2Server.url("/upgrade"))).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals("/upgrade", response.getResponseBody());
+        response.close();
+
+        assertMultiplexed(sendAll(http2Server.url("/h2/"), 4));
+        assertEquals(5, http2Server.getRequests());
+        assertEquals(1, http2Server.getOpened());
+    }
+
+    /**
+     * a server which ignores the upgrade keeps talking HTTP/1.1
+     */
+    @Test
+    public void testUpgradeIgnored() throws Exception {
+        server = new TestHttpServer();
+        client = newClient(server.getRoute(), true);
+
+        for (int i = 1; i <= 3; i++) {
+            NettyHttpResponse response = client.doGet(newRequest("/http1")).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals(String.valueOf(i), response.getResponseBody());
+            response.close();
+        }
+        assertEquals(3, server.getRequests());
+    }
+
+    private NettyHttpClient newClient(String route, boolean http2Upgrade) {
+        return new NettyHttpClient.ConfigBuilder()
+            .maxPerRoute(Collections.singletonMap(route, 2))
+            .http2PerRoute(Collections.singletonMap(route, 100)).http2Upgrade(http2Upgrade)
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+    }
+
+    private List<NettyHttpResponseFuture> sendAll(String url, int n) throws Exception {
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        for (int i = 0; i < n; i++) {
+            futures.add(client.doGet(newUrlRequest(url + i)));
+        }
+        return futures;
+    }
+
+    private void assertMultiplexed(List<NettyHttpResponseFuture> futures) throws Exception {
+        for (int i = 0; i < futures.size(); i++) {
+            NettyHttpResponse response = futures.get(i).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals("/h2/" + i, response.getResponseBody());
+            response.close();
+        }
+    }
+}
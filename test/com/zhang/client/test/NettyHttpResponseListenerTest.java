@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpCompletionStage;
+import com.zhang.client.NettyHttpFunction;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.NettyHttpResponseListener;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyHttpResponseListenerTest extends NettyClientTestSupport {
+
+    private ExecutorService executor;
+
+    @After
+    public void shutdownExecutor() throws Exception {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * a listener is notified on the completion executor once the response is complete
+     */
+    @Test
+    public void testListenerOnCompletionExecutor() throws Exception {
+        server = new TestHttpServer(100);
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "completion");
+            }
+        });
+        client = new NettyHttpClient.ConfigBuilder().completionExecutor(executor)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        final CountDownLatch notified = new CountDownLatch(1);
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        final AtomicReference<String> body = new AtomicReference<String>();
+        NettyHttpResponseFuture future = client.doGet(newRequest("/listener"));
+        future.addListener(new NettyHttpResponseListener() {
+
+            @Override
+            public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+                thread.set(Thread.currentThread().getName());
+                body.set(future.getNow().getResponseBody());
+                notified.countDown();
+            }
+        });
+
+        assertTrue(notified.await(2, TimeUnit.SECONDS));
+        assertEquals("completion", thread.get());
+        assertEquals("1", body.get());
+        future.get().close();
+    }
+
+    /**
+     * a listener added to a completed future is notified at once, on the calling thread
+     * without a completion executor
+     */
+    @Test
+    public void testListenerAddedAfterCompletion() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+
+        NettyHttpResponseFuture future = client.doGet(newRequest("/done"));
+        final NettyHttpResponse response = future.get();
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        future.addListener(new NettyHttpResponseListener() {
+
+            @Override
+            public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+                assertSame(response, future.getNow());
+                thread.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), thread.get());
+        response.close();
+    }
+
+    /**
+     * a follow-up request composed on the first response, and the body of the second
+     * response mapped
+     */
+    @Test
+    public void testCompletionStageCompose() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+
+        NettyHttpCompletionStage<String> stage = client.doGet(newRequest("/first"))
+            .toCompletionStage()
+            .thenCompose(
+                new NettyHttpFunction<NettyHttpResponse, NettyHttpCompletionStage<NettyHttpResponse>>() {
+
+                    @Override
+                    public NettyHttpCompletionStage<NettyHttpResponse> apply(NettyHttpResponse first)
+                                                                                              throws Exception {
+                        String next = "/second/" + first.getResponseBody();
+                        first.close();
+                        return client.doGet(newRequest(next)).toCompletionStage();
+                    }
+                }).thenApply(new NettyHttpFunction<NettyHttpResponse, String>() {
+
+                @Override
+                public String apply(NettyHttpResponse second) throws Exception {
+                    String body = second.getResponseBody();
+                    second.close();
+                    return body;
+                }
+            });
+
+        assertEquals("2", stage.get(2, TimeUnit.SECONDS));
+        assertEquals("/second/1", server.getUris().get(1));
+    }
+
+    /**
+     * a request which fails, here to connect to a closed port, fails the stage, and the
+     * functions are skipped
+     */
+    @Test
+    public void testCompletionStageFails() throws Exception {
+        server = new TestHttpServer();
+        String url = server.url("/closed");
+        server.close();
+        server = null;
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+
+        NettyHttpRequest request = new NettyHttpRequest().header(
+            HttpHeaderNames.CONTENT_TYPE.toString(), "text/json; charset=UTF-8").uri(url);
+        NettyHttpCompletionStage<String> stage = client.doGet(request).toCompletionStage().thenApply(new NettyHttpFunction<NettyHttpResponse, String>() {
+
+                @Override
+                public String apply(NettyHttpResponse response) throws Exception {
+                    throw new AssertionError("applied to " + response.getStatus());
+                }
+            });
+
+        try {
+            stage.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * the response of a stage cancelled before the server answers is released, as nobody
+     * receives it
+     */
+    @Test
+    public void testCancelledStageReleasesResponse() throws Exception {
+        server = new TestHttpServer(200);
+        client = new NettyHttpClient.ConfigBuilder().connectTimeOutInMilliSecondes(5000)
+            .build();
+
+        final AtomicReference<List<ByteBuf>> contents = new AtomicReference<List<ByteBuf>>();
+        NettyHttpResponseFuture future = client.doGet(newRequest("/cancelled"));
+        // notified ahead of the listener of the stage
+        future.addListener(new NettyHttpResponseListener() {
+
+            @Override
+            public void operationComplete(NettyHttpResponseFuture future) throws Exception {
+                contents.set(new ArrayList<ByteBuf>(future.getNow().getContents()));
+            }
+        });
+        NettyHttpCompletionStage<NettyHttpResponse> stage = future.toCompletionStage();
+        assertTrue(stage.cancel(false));
+
+        assertTrue(future.get().isSuccess());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (null == contents.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(contents.get().isEmpty());
+        for (ByteBuf content : contents.get()) {
+            while (0 != content.refCnt() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, content.refCnt());
+        }
+    }
+}
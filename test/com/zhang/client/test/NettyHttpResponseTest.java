@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ResourceLeakDetector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.pool.NettyAggregationPolicy;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyHttpResponseTest extends NettyClientTestSupport {
+
+    /**
+     * every accessor of a completed future returns the same response, so a response whose
+     * buffers are not copied is released only once however often it is fetched
+     */
+    @Test
+    public void testSameResponseForEveryCaller() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().pooledAllocator(1, 1, 8192, 11).build();
+
+        NettyHttpResponseFuture future = client.doPost(new NettyHttpRequest().header("Accept", "*/*")
+            .uri(server.url("/post")).content("released once", CharsetUtil.UTF_8));
+        NettyHttpResponse response = future.get();
+
+        assertSame(response, future.get());
+        assertSame(response, future.get(1, TimeUnit.SECONDS));
+        assertSame(response, future.getNow());
+        assertSame(response, future.toCompletionStage().get());
+        assertEquals("released once", response.getResponseBody());
+
+        List<ByteBuf> contents = new ArrayList<ByteBuf>(response.getContents());
+        assertTrue(response.release());
+        assertFalse(future.get().release());
+        future.getNow().close();
+        awaitReleased(contents);
+    }
+
+    /**
+     * a copied body stays readable, whatever happens to the buffers of the channel
+     */
+    @Test
+    public void testCopiedContent() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().copyResponseContent(true).build();
+
+        NettyHttpResponse response = client.doGet(
+            new NettyHttpRequest().header("Accept", "*/*").uri(server.url("/get"))).get();
+
+        assertEquals("1", response.getResponseBody());
+        for (ByteBuf content : response.getContents()) {
+            assertFalse(content.isDirect());
+        }
+        assertTrue(response.release());
+        assertFalse(response.release());
+    }
+
+    /**
+     * a body received in several chunks is composed once into a single buffer, characters
+     * spanning two chunks are decoded, and the byte views cover the whole body
+     */
+    @Test
+    public void testCompositeViews() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().aggregationPolicyPerRoute(
+            Collections.singletonMap(server.getRoute(), NettyAggregationPolicy.COMPOSITE))
+            .build();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.append("\u8f7b\u91cf");
+        }
+        byte[] bytes = text.toString().getBytes(CharsetUtil.UTF_8);
+
+        NettyHttpResponse response = client.doPost(
+            new NettyHttpRequest().header("Accept", "*/*").uri(server.url("/post"))
+                .content(text.toString(), CharsetUtil.UTF_8)).get();
+
+        assertTrue(response.getContents().size() > 1);
+        ByteBuf content = response.getContent();
+        assertTrue(content instanceof CompositeByteBuf);
+        assertSame(content, response.getContent());
+        assertEquals(text.toString(), response.getResponseBody(CharsetUtil.UTF_8));
+        assertArrayEquals(bytes, response.getContentAsBytes());
+        assertEquals(bytes.length, response.getContentAsByteBuffer().remaining());
+        assertArrayEquals(bytes, readAll(response.getContentAsStream()));
+        assertArrayEquals(bytes, readAll(response.getContentAsStream()));
+        assertEquals(0, content.readerIndex());
+
+        List<ByteBuf> contents = new ArrayList<ByteBuf>(response.getContents());
+        response.close();
+        awaitReleased(contents);
+    }
+
+    /**
+     * the composed view of a copied body needs no release, and that of a retained body is
+     * released with the response, so neither is reported as a leak
+     */
+    @Test
+    public void testCompositeViewsDoNotLeak() throws Exception {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        LeakRecorder leaks = new LeakRecorder();
+        Logger leakLogger = Logger.getLogger(ResourceLeakDetector.class.getName());
+        leakLogger.addHandler(leaks);
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        NettyHttpClient copyingClient = null;
+        try {
+            server = new TestHttpServer();
+            client = new NettyHttpClient.ConfigBuilder().aggregationPolicyPerRoute(
+                Collections.singletonMap(server.getRoute(), NettyAggregationPolicy.COMPOSITE))
+                .build();
+            copyingClient = new NettyHttpClient.ConfigBuilder().copyResponseContent(true)
+                .aggregationPolicyPerRoute(
+                    Collections.singletonMap(server.getRoute(), NettyAggregationPolicy.COMPOSITE))
+                .build();
+
+            for (int i = 0; i < 10; i++) {
+                NettyHttpResponse copied = copyingClient.doGet(
+                    new NettyHttpRequest().header("Accept", "*/*").uri(
+                        server.url("/size/100000"))).get();
+                assertTrue(copied.getContents().size() > 1);
+                assertEquals(100000, copied.getContent().readableBytes());
+
+                NettyHttpResponse retained = client.doGet(
+                    new NettyHttpRequest().header("Accept", "*/*").uri(
+                        server.url("/size/100000"))).get();
+                assertTrue(retained.getContents().size() > 1);
+                assertEquals(100000, retained.getContent().readableBytes());
+                retained.release();
+            }
+
+            // leaks are reported when a buffer is tracked after the leaked ones were collected
+            for (int i = 0; i < 5; i++) {
+                System.gc();
+                Thread.sleep(50);
+                Unpooled.compositeBuffer().release();
+                PooledByteBufAllocator.DEFAULT.directBuffer(16).release();
+            }
+            assertEquals(leaks.records.toString(), 0, leaks.records.size());
+        } finally {
+            if (null != copyingClient) {
+                copyingClient.close();
+            }
+            ResourceLeakDetector.setLevel(level);
+            leakLogger.removeHandler(leaks);
+        }
+    }
+
+    /**
+     * a body received in one chunk is its own view, nothing is composed
+     */
+    @Test
+    public void testSingleChunkView() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().build();
+
+        NettyHttpResponse response = client.doGet(
+            new NettyHttpRequest().header("Accept", "*/*").uri(server.url("/size/1000"))).get();
+
+        assertEquals(1, response.getContents().size());
+        assertSame(response.getContents().get(0), response.getContent());
+        assertEquals(1000, response.getContentAsByteBuffer().remaining());
+        response.close();
+    }
+
+    /**
+     * the channel drops its own reference once the handler returns, after the future is done
+     */
+    private void awaitReleased(List<ByteBuf> contents) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        for (ByteBuf content : contents) {
+            while (0 != content.refCnt() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, content.refCnt());
+        }
+    }
+
+    private byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static final class LeakRecorder extends Handler {
+
+        private final List<String> records = new CopyOnWriteArrayList<String>();
+
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getLevel().intValue() >= Level.SEVERE.intValue()) {
+                records.add(record.getMessage());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
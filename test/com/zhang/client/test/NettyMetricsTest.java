@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.metrics.NettyRouteSnapshot;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyMetricsTest extends NettyClientTestSupport {
+
+    /**
+     * the counters, gauges and histograms of a route after a few sequential requests
+     */
+    @Test
+    public void testRouteSnapshot() throws Exception {
+        server = new TestHttpServer(50);
+        client = new NettyHttpClient.ConfigBuilder().maxIdleTimeInMilliSecondes(200 * 1000)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        for (int i = 0; i < 3; i++) {
+            NettyHttpResponse response = client.doGet(newRequest("/metrics")).get();
+            assertTrue(response.isSuccess());
+            response.close();
+        }
+
+        NettyRouteSnapshot snapshot = client.getMetrics().snapshot(server.getRoute());
+        assertEquals(3, snapshot.getRequests());
+        assertEquals(0, snapshot.getFailures());
+        assertEquals(0, snapshot.getConnectFailures());
+        assertEquals(1, snapshot.getOpen());
+        assertEquals(1, snapshot.getIdle());
+        assertEquals(0, snapshot.getLeased());
+        assertEquals(0, snapshot.getPending());
+        assertEquals(1, snapshot.getConnectTime().getCount());
+        assertEquals(3, snapshot.getFirstByte().getCount());
+        assertEquals(3, snapshot.getLatency().getCount());
+        assertTrue(snapshot.getLatency().toString(), snapshot.getLatency().getP50() >= 40);
+        assertTrue(snapshot.getLatency().getMax() >= snapshot.getLatency().getP99());
+    }
+
+    /**
+     * requests waiting for the only channel of the route are pending while it is leased
+     */
+    @Test
+    public void testPendingAndLeased() throws Exception {
+        server = new TestHttpServer(300);
+        client = new NettyHttpClient.ConfigBuilder()
+            .maxPerRoute(Collections.singletonMap(server.getRoute(), 1))
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(client.doGet(newRequest("/metrics/" + i)));
+        }
+        Thread.sleep(100);
+        NettyRouteSnapshot snapshot = client.getMetrics().snapshot(server.getRoute());
+        assertEquals(1, snapshot.getLeased());
+        assertEquals(0, snapshot.getIdle());
+        assertEquals(2, snapshot.getPending());
+        assertEquals(0, snapshot.getAvailablePermits());
+
+        for (NettyHttpResponseFuture future : futures) {
+            future.get().close();
+        }
+        snapshot = client.getMetrics().snapshot(server.getRoute());
+        assertEquals(3, snapshot.getRequests());
+        assertEquals(3, snapshot.getAcquireWait().getCount());
+        assertTrue(snapshot.getAcquireWait().getMax() >= 250);
+    }
+
+    /**
+     * the snapshot of the route is exported as an MBean until the client is closed
+     */
+    @Test
+    public void testJmx() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder().jmxName("metrics-test")
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/jmx")).get();
+        response.close();
+
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("com.zhang.metrics:type=NettyChannelPool,name="
+                                               + ObjectName.quote("metrics-test") + ",route="
+                                               + ObjectName.quote(server.getRoute()));
+        assertEquals(1L, mbeanServer.getAttribute(objectName, "Requests"));
+        client.close();
+        client = null;
+        assertFalse(mbeanServer.isRegistered(objectName));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyPipeliningTest extends NettyClientTestSupport {
+
+    /**
+     * concurrent requests are written on one channel without waiting for the responses, and
+     * each response is matched to its request in write order
+     */
+    @Test
+    public void testPipelinedOnOneChannel() throws Exception {
+        server = new TestHttpServer(200);
+        client = newClient(4);
+
+        assertInOrder(sendAll(4));
+        assertTrue("max pending " + server.getMaxPending(), server.getMaxPending() > 1);
+        assertEquals(expectedUris(4), server.getUris());
+        assertEquals(1, server.getOpened());
+    }
+
+    /**
+     * requests beyond the max outstanding requests of the channel wait for a free slot, and
+     * are written in the order they were sent
+     */
+    @Test
+    public void testWaitForFreeSlot() throws Exception {
+        server = new TestHttpServer(50);
+        client = newClient(2);
+
+        assertInOrder(sendAll(7));
+        assertEquals(expectedUris(7), server.getUris());
+        assertEquals(1, server.getOpened());
+    }
+
+    /**
+     * slots freed by responses while the requests are still being sent go to the waiting
+     * requests in order, ahead of a later request which found a free slot
+     */
+    @Test
+    public void testSlotsFreedWhileSending() throws Exception {
+        server = new TestHttpServer();
+        client = newClient(4);
+
+        assertInOrder(sendAll(500));
+        assertEquals(expectedUris(500), server.getUris());
+        assertEquals(1, server.getOpened());
+    }
+
+    private NettyHttpClient newClient(int maxPipelinedRequests) {
+        return new NettyHttpClient.ConfigBuilder()
+            .maxPerRoute(Collections.singletonMap(server.getRoute(), 1))
+            .pipeliningPerRoute(
+                Collections.singletonMap(server.getRoute(), maxPipelinedRequests))
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+    }
+
+    private List<NettyHttpResponseFuture> sendAll(int n) throws Exception {
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        for (int i = 0; i < n; i++) {
+            futures.add(client.doGet(newRequest("/pipelined/" + i)));
+        }
+        return futures;
+    }
+
+    /**
+     * the body of the n-th response is n, the sequence number of its request at the server
+     */
+    private void assertInOrder(List<NettyHttpResponseFuture> futures) throws Exception {
+        for (int i = 0; i < futures.size(); i++) {
+            NettyHttpResponse response = futures.get(i).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals(String.valueOf(i + 1), response.getResponseBody());
+            response.close();
+        }
+    }
+
+    private List<String> expectedUris(int n) {
+        List<String> uris = new ArrayList<String>();
+        for (int i = 0; i < n; i++) {
+            uris.add("/pipelined/" + i);
+        }
+        return uris;
+    }
+}
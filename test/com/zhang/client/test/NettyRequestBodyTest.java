@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.handler.stream.ChunkedStream;
+import io.netty.util.CharsetUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpResponse;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyRequestBodyTest extends NettyClientTestSupport {
+
+    private File            file;
+
+    @After
+    public void deleteFile() throws Exception {
+        if (null != file) {
+            file.delete();
+        }
+    }
+
+    /**
+     * the body is sent from the file, and the channel is reused for the next request
+     */
+    @Test
+    public void testFileBody() throws Exception {
+        server = new TestHttpServer();
+        client = newClient();
+        String body = newBody(300 * 1024);
+        file = File.createTempFile("light-netty-client", ".json");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(body.getBytes(CharsetUtil.UTF_8));
+        } finally {
+            out.close();
+        }
+
+        for (int i = 0; i < 2; i++) {
+            NettyHttpResponse response = client.doPost(newRequest("/file").content(file)).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals(body, response.getResponseBody());
+            response.close();
+        }
+        assertEquals(1, server.getOpened());
+    }
+
+    /**
+     * the body is pulled from the chunk source and sent with chunked transfer encoding
+     */
+    @Test
+    public void testChunkedBody() throws Exception {
+        server = new TestHttpServer();
+        client = newClient();
+        String body = newBody(100 * 1024);
+
+        for (int i = 0; i < 2; i++) {
+            ChunkedStream chunkSource = new ChunkedStream(new ByteArrayInputStream(
+                body.getBytes(CharsetUtil.UTF_8)), 4096);
+            NettyHttpResponse response = client.doPost(
+                newRequest("/chunked").content(chunkSource)).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals(body, response.getResponseBody());
+            assertTrue(chunkSource.isEndOfInput());
+            response.close();
+        }
+        assertEquals(1, server.getOpened());
+    }
+
+    private String newBody(int size) {
+        StringBuilder body = new StringBuilder(size);
+        for (int i = 0; body.length() < size; i++) {
+            body.append(i).append(',');
+        }
+        return body.toString();
+    }
+}
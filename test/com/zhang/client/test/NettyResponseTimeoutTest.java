@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyResponseTimeoutTest extends NettyClientTestSupport {
+
+    /**
+     * a response not completed in time fails the request, its channel is closed and the
+     * permit of the route is given back for the next request
+     */
+    @Test
+    public void testResponseTimeOut() throws Exception {
+        server = new TestHttpServer(1000, 0);
+        client = new NettyHttpClient.ConfigBuilder()
+            .maxPerRoute(Collections.singletonMap(server.getRoute(), 1))
+            .responseTimeOutInMilliSecondes(200).maxIdleTimeInMilliSecondes(200 * 1000)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        long start = System.nanoTime();
+        NettyHttpResponse response = client.doGet(newRequest("/slow")).get();
+        long elapsedInMillis = (System.nanoTime() - start) / 1000000;
+        assertFalse(response.isSuccess());
+        assertTrue(String.valueOf(response.getCause()),
+            response.getCause() instanceof TimeoutException);
+        // only the lower bound, a loaded machine may take any longer
+        assertTrue("took " + elapsedInMillis + "ms", elapsedInMillis >= 150);
+        awaitClosed(1);
+
+        response = client.doGet(newRequest("/next")).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals("2", response.getResponseBody());
+        response.close();
+        assertEquals(Arrays.asList("/slow", "/next"), server.getUris());
+        assertEquals(2, server.getOpened());
+    }
+
+    /**
+     * the timeout of a request overrides the one of the client
+     */
+    @Test
+    public void testRequestTimeOut() throws Exception {
+        server = new TestHttpServer(300);
+        client = new NettyHttpClient.ConfigBuilder().responseTimeOutInMilliSecondes(100)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        NettyHttpResponse response = client.doGet(
+            newRequest("/patient").responseTimeOutInMilliSecondes(2000)).get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        response.close();
+
+        response = client.doGet(newRequest("/impatient")).get();
+        assertTrue(String.valueOf(response.getCause()),
+            response.getCause() instanceof TimeoutException);
+    }
+
+    /**
+     * the timeout of a route applies to its requests only
+     */
+    @Test
+    public void testRouteTimeOut() throws Exception {
+        server = new TestHttpServer(300);
+        client = new NettyHttpClient.ConfigBuilder()
+            .responseTimeOutPerRoute(Collections.singletonMap(server.getRoute(), 100))
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        NettyHttpResponse response = client.doGet(newRequest("/route")).get();
+        assertTrue(String.valueOf(response.getCause()),
+            response.getCause() instanceof TimeoutException);
+
+        response = client.doGet(
+            new NettyHttpRequest().header(HttpHeaderNames.CONTENT_TYPE.toString(),
+                "text/json; charset=UTF-8").uri("http://localhost:" + server.getPort() + "/other"))
+            .get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        response.close();
+    }
+}
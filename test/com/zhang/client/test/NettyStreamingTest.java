@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.NettyHttpStream;
+import com.zhang.client.NettyHttpStreamHandler;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyStreamingTest extends NettyClientTestSupport {
+
+    private static final int LARGE_BODY = 16 * 1024 * 1024;
+
+    /**
+     * the body is delivered in chunks after the headers, and the response of the future
+     * carries no body
+     */
+    @Test
+    public void testStreamedBody() throws Exception {
+        server = new TestHttpServer();
+        client = newClient();
+        final AtomicReference<HttpResponseStatus> status = new AtomicReference<HttpResponseStatus>();
+        final AtomicLong received = new AtomicLong();
+        final AtomicInteger chunks = new AtomicInteger();
+        final AtomicInteger lasts = new AtomicInteger();
+
+        NettyHttpResponse response = client.doGet(newRequest("/size/200000"),
+            new NettyHttpStreamHandler() {
+
+                @Override
+                public void onResponse(HttpResponse response, NettyHttpStream stream)
+                                                                                     throws Exception {
+                    status.set(response.status());
+                }
+
+                @Override
+                public void onContent(ByteBuf content, boolean last, NettyHttpStream stream)
+                                                                                            throws Exception {
+                    assertNotNull("content before headers", status.get());
+                    received.addAndGet(content.readableBytes());
+                    chunks.incrementAndGet();
+                    if (last) {
+                        lasts.incrementAndGet();
+                    }
+                }
+            }).get();
+
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals(HttpResponseStatus.OK, response.getStatus());
+        assertEquals(HttpResponseStatus.OK, status.get());
+        assertEquals(200000, received.get());
+        assertTrue(chunks.get() > 1);
+        assertEquals(1, lasts.get());
+        assertNull(response.getResponseBody());
+        response.close();
+    }
+
+    /**
+     * a paused stream stops reading from the server, and the response completes once the
+     * stream is resumed
+     */
+    @Test
+    public void testPauseAndResume() throws Exception {
+        server = new TestHttpServer();
+        client = newClient();
+        final AtomicReference<NettyHttpStream> paused = new AtomicReference<NettyHttpStream>();
+        final AtomicLong received = new AtomicLong();
+
+        NettyHttpResponseFuture future = client.doGet(newRequest("/size/" + LARGE_BODY),
+            new NettyHttpStreamHandler() {
+
+                @Override
+                public void onResponse(HttpResponse response, NettyHttpStream stream)
+                                                                                     throws Exception {
+                    stream.pause();
+                    paused.set(stream);
+                }
+
+                @Override
+                public void onContent(ByteBuf content, boolean last, NettyHttpStream stream)
+                                                                                            throws Exception {
+                    received.addAndGet(content.readableBytes());
+                }
+            });
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (null == paused.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(paused.get().isPaused());
+        Thread.sleep(300);
+        long receivedWhilePaused = received.get();
+        Thread.sleep(200);
+        assertEquals(receivedWhilePaused, received.get());
+        assertTrue(receivedWhilePaused < LARGE_BODY);
+        assertFalse(future.isDone());
+
+        paused.get().resume();
+        NettyHttpResponse response = future.get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals(LARGE_BODY, received.get());
+        response.close();
+    }
+
+    /**
+     * a handler which throws fails the response and closes the channel
+     */
+    @Test
+    public void testHandlerFails() throws Exception {
+        server = new TestHttpServer();
+        client = newClient();
+
+        NettyHttpResponse response = client.doGet(newRequest("/size/200000"),
+            new NettyHttpStreamHandler() {
+
+                @Override
+                public void onResponse(HttpResponse response, NettyHttpStream stream)
+                                                                                     throws Exception {
+                }
+
+                @Override
+                public void onContent(ByteBuf content, boolean last, NettyHttpStream stream)
+                                                                                            throws Exception {
+                    throw new IllegalStateException("consumer failed");
+                }
+            }).get();
+
+        assertFalse(response.isSuccess());
+        assertTrue(String.valueOf(response.getCause()),
+            response.getCause() instanceof IllegalStateException);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getClosed() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, server.getClosed());
+        response.close();
+    }
+}
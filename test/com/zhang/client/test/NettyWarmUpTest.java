@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyWarmUpTest extends NettyClientTestSupport {
+
+    /**
+     * the channels opened ahead of time serve the first concurrent requests, no channel is
+     * opened on demand
+     */
+    @Test
+    public void testWarmUp() throws Exception {
+        server = new TestHttpServer(100);
+        client = new NettyHttpClient.ConfigBuilder().maxIdleTimeInMilliSecondes(200 * 1000)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        assertEquals(3, client.warmUp(server.getRoute(), 3));
+        awaitOpened(3);
+
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(client.doGet(newRequest("/warm/" + i)));
+        }
+        for (NettyHttpResponseFuture future : futures) {
+            NettyHttpResponse response = future.get();
+            assertTrue(response.isSuccess());
+            response.close();
+        }
+        assertEquals(3, server.getRequests());
+        assertEquals(3, server.getOpened());
+    }
+
+    /**
+     * every channel opened takes a permit of maxPerRoute
+     */
+    @Test
+    public void testWarmUpLimitedByMaxPerRoute() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder()
+            .maxPerRoute(Collections.singletonMap(server.getRoute(), 2))
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000).build();
+
+        assertEquals(2, client.warmUp(server.getRoute(), 5));
+        awaitOpened(2);
+        assertEquals(0, client.warmUp(server.getRoute(), 1));
+
+        NettyHttpResponse response = client.doGet(newRequest("/limited")).get();
+        assertTrue(response.isSuccess());
+        response.close();
+        assertEquals(2, server.getOpened());
+    }
+
+    /**
+     * the minimum idle channels are opened when the client is built, and opened again in the
+     * background once the idle ones are closed
+     */
+    @Test
+    public void testMinIdleToppedUp() throws Exception {
+        server = new TestHttpServer();
+        client = new NettyHttpClient.ConfigBuilder()
+            .minIdlePerRoute(Collections.singletonMap(server.getRoute(), 2))
+            .minIdleCheckIntervalInMilliSecondes(50).maxIdleTimeInMilliSecondes(300)
+            .connectTimeOutInMilliSecondes(5000).build();
+
+        awaitOpened(2);
+        long deadline = System.currentTimeMillis() + 3000;
+        while (server.getClosed() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, server.getClosed());
+        awaitOpened(4);
+        assertEquals(0, server.getRequests());
+    }
+
+    private void awaitOpened(int opened) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getOpened() < opened && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(opened, server.getOpened());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.util.AsciiString;
+import io.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process HTTP/2 server over cleartext for the tests, accepting both prior knowledge
+ * and the HTTP/1.1 upgrade. Every request is answered with its uri as body after the delay
+ * given.
+ * 
+ * @author xianwu.zhang
+ */
+public class TestHttp2Server {
+
+    private static final int     MAX_CONTENT_LENGTH = 1024 * 1024;
+
+    private final EventLoopGroup group;
+
+    private final Channel        serverChannel;
+
+    private final long           delayInMilliSecondes;
+
+    private final AtomicInteger  requests           = new AtomicInteger();
+
+    private final AtomicInteger  opened             = new AtomicInteger();
+
+    /**
+     * start the server on an ephemeral port of the loopback address
+     * 
+     * @param delayInMilliSecondes
+     *            how long every request waits for its response
+     */
+    public TestHttp2Server(long delayInMilliSecondes) throws InterruptedException {
+        this.delayInMilliSecondes = delayInMilliSecondes;
+        this.group = new NioEventLoopGroup(2);
+        ServerBootstrap bootstrap = new ServerBootstrap().group(group)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) throws Exception {
+                    opened.incrementAndGet();
+                    Http2Connection connection = new DefaultHttp2Connection(true);
+                    final HttpToHttp2ConnectionHandler http2Handler = new HttpToHttp2ConnectionHandlerBuilder()
+                        .frameListener(
+                            new InboundHttp2ToHttpAdapterBuilder(connection)
+                                .maxContentLength(MAX_CONTENT_LENGTH).propagateSettings(false)
+                                .build()).connection(connection).build();
+                    HttpServerCodec codec = new HttpServerCodec();
+                    HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(codec,
+                        new HttpServerUpgradeHandler.UpgradeCodecFactory() {
+                            @Override
+                            public HttpServerUpgradeHandler.UpgradeCodec newUpgradeCodec(CharSequence protocol) {
+                                if (AsciiString.contentEquals(
+                                    Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                                    return new Http2ServerUpgradeCodec(http2Handler);
+                                }
+                                return null;
+                            }
+                        }, MAX_CONTENT_LENGTH);
+                    ch.pipeline().addLast(
+                        new CleartextHttp2ServerUpgradeHandler(codec, upgradeHandler,
+                            http2Handler), new ServerHandler());
+                }
+            });
+        this.serverChannel = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0)).sync()
+            .channel();
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    /**
+     * @return host:port of the server, the route of its requests
+     */
+    public String getRoute() {
+        return "127.0.0.1:" + getPort();
+    }
+
+    /**
+     * @param path
+     *            path of the request, starting with a slash
+     */
+    public String url(String path) {
+        return "http://" + getRoute() + path;
+    }
+
+    public void close() throws InterruptedException {
+        serverChannel.close().sync();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    /**
+     * Getter method for property <tt>requests</tt>.
+     * 
+     * @return number of requests received
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Getter method for property <tt>opened</tt>.
+     * 
+     * @return number of connections accepted
+     */
+    public int getOpened() {
+        return opened.get();
+    }
+
+    private final class ServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+                // the request sent with the upgrade is answered on stream 1
+                reply(ctx, ((HttpServerUpgradeHandler.UpgradeEvent) evt).upgradeRequest()
+                    .uri(), "1");
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request)
+                                                                                  throws Exception {
+            reply(ctx, request.uri(),
+                request.headers().get(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text()));
+        }
+
+        private void reply(final ChannelHandlerContext ctx, String uri, String streamId) {
+            requests.incrementAndGet();
+            final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK, Unpooled.copiedBuffer(uri, CharsetUtil.UTF_8));
+            response.headers().set(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(),
+                streamId);
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ctx.writeAndFlush(response);
+                }
+            }, delayInMilliSecondes, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.client.test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process HTTP/1.1 server for the tests. The n-th request received is answered with
+ * its sequence number n as body, a POST with its own body instead, after the n-th of the
+ * delays given, or the last one for the requests beyond. A path containing
+ * <code>/size/&lt;n&gt;</code> is answered with n bytes instead, and one containing
+ * <code>/status/&lt;code&gt;</code> with that status. The responses to HEAD requests and
+ * 1xx, 204 and 304 responses keep their Content-Length but have no body. A compressed
+ * request body is decompressed, and the response is compressed if the request accepts it.
+ * 
+ * @author xianwu.zhang
+ */
+public class TestHttpServer {
+
+    private static final String       STATUS_PATH = "/status/";
+
+    private static final String       SIZE_PATH   = "/size/";
+
+    private static final AttributeKey<AtomicInteger> PENDING = AttributeKey.valueOf("pending");
+
+    private final EventLoopGroup      group;
+
+    private final Channel             serverChannel;
+
+    private final long[]              delaysInMilliSecondes;
+
+    private final AtomicInteger       requests    = new AtomicInteger();
+
+    private final AtomicInteger       opened      = new AtomicInteger();
+
+    private final AtomicInteger       closed      = new AtomicInteger();
+
+    // max requests received on a connection before their responses were written
+    private final AtomicInteger       maxPending  = new AtomicInteger();
+
+    // uris in the order the requests were received
+    private final List<String>        uris        = new CopyOnWriteArrayList<String>();
+
+    // headers of the requests as sent, before the body is decompressed
+    private final List<HttpHeaders>   headers     = new CopyOnWriteArrayList<HttpHeaders>();
+
+    /**
+     * start the server on an ephemeral port of the loopback address
+     * 
+     * @param delaysInMilliSecondes
+     *            how long the n-th request waits for its response, none for no delay
+     */
+    public TestHttpServer(long... delaysInMilliSecondes) throws InterruptedException {
+        this.delaysInMilliSecondes = delaysInMilliSecondes;
+        this.group = new NioEventLoopGroup(2);
+        final ServerHandler handler = new ServerHandler();
+        ServerBootstrap bootstrap = new ServerBootstrap().group(group)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) throws Exception {
+                    ch.pipeline().addLast(new HttpServerCodec(), new HttpContentCompressor(),
+                        new HeadersRecorder(), new HttpContentDecompressor(),
+                        new HttpObjectAggregator(1024 * 1024), handler);
+                }
+            });
+        this.serverChannel = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0)).sync()
+            .channel();
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    /**
+     * @return host:port of the server, the route of its requests
+     */
+    public String getRoute() {
+        return "127.0.0.1:" + getPort();
+    }
+
+    /**
+     * @param path
+     *            path of the request, starting with a slash
+     */
+    public String url(String path) {
+        return "http://" + getRoute() + path;
+    }
+
+    public void close() throws InterruptedException {
+        serverChannel.close().sync();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    /**
+     * Getter method for property <tt>requests</tt>.
+     * 
+     * @return number of requests received
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Getter method for property <tt>opened</tt>.
+     * 
+     * @return number of connections accepted
+     */
+    public int getOpened() {
+        return opened.get();
+    }
+
+    /**
+     * Getter method for property <tt>closed</tt>.
+     * 
+     * @return number of connections closed
+     */
+    public int getClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Getter method for property <tt>maxPending</tt>.
+     * 
+     * @return max number of requests pending on a connection at once, more than one
+     *         means the requests were pipelined
+     */
+    public int getMaxPending() {
+        return maxPending.get();
+    }
+
+    /**
+     * Getter method for property <tt>uris</tt>.
+     * 
+     * @return property value of uris
+     */
+    public List<String> getUris() {
+        return uris;
+    }
+
+    /**
+     * Getter method for property <tt>headers</tt>.
+     * 
+     * @return the headers of the requests as sent, in the order the requests were received
+     */
+    public List<HttpHeaders> getHeaders() {
+        return headers;
+    }
+
+    private long delay(int sequence) {
+        if (0 == delaysInMilliSecondes.length) {
+            return 0;
+        }
+        return delaysInMilliSecondes[Math.min(sequence, delaysInMilliSecondes.length) - 1];
+    }
+
+    /**
+     * @return the number following the prefix in the uri, or the default value
+     */
+    private static int parameter(String uri, String prefix, int defaultValue) {
+        int index = uri.indexOf(prefix);
+        if (index < 0) {
+            return defaultValue;
+        }
+        int start = index + prefix.length();
+        int end = start;
+        while (end < uri.length() && Character.isDigit(uri.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(uri.substring(start, end));
+    }
+
+    private final class HeadersRecorder extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof HttpRequest) {
+                headers.add(new DefaultHttpHeaders().set(((HttpRequest) msg).headers()));
+            }
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    @Sharable
+    private final class ServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            opened.incrementAndGet();
+            ctx.channel().attr(PENDING).set(new AtomicInteger());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            closed.incrementAndGet();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            // the client closes channels it gives up on, e.g. aborted or timed out requests
+            ctx.close();
+        }
+
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, FullHttpRequest request)
+                                                                                        throws Exception {
+            int sequence = requests.incrementAndGet();
+            final AtomicInteger pending = ctx.channel().attr(PENDING).get();
+            int pendingNow = pending.incrementAndGet();
+            int max = maxPending.get();
+            while (pendingNow > max && !maxPending.compareAndSet(max, pendingNow)) {
+                max = maxPending.get();
+            }
+            String uri = request.uri();
+            uris.add(uri);
+
+            int code = parameter(uri, STATUS_PATH, HttpResponseStatus.OK.code());
+            int size = parameter(uri, SIZE_PATH, -1);
+            ByteBuf body;
+            if (size >= 0) {
+                byte[] bytes = new byte[size];
+                Arrays.fill(bytes, (byte) 'a');
+                body = Unpooled.wrappedBuffer(bytes);
+            } else if (HttpMethod.POST.equals(request.method())) {
+                body = request.content().retain();
+            } else {
+                body = Unpooled.copiedBuffer(String.valueOf(sequence), CharsetUtil.US_ASCII);
+            }
+            int contentLength = body.readableBytes();
+            if (HttpMethod.HEAD.equals(request.method()) || code < 200
+                || HttpResponseStatus.NO_CONTENT.code() == code
+                || HttpResponseStatus.NOT_MODIFIED.code() == code) {
+                body.release();
+                body = Unpooled.EMPTY_BUFFER;
+            }
+            final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.valueOf(code), body);
+            HttpUtil.setContentLength(response, contentLength);
+
+            long delay = delay(sequence);
+            if (delay <= 0) {
+                pending.decrementAndGet();
+                ctx.writeAndFlush(response);
+                return;
+            }
+            ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    pending.decrementAndGet();
+                    ctx.writeAndFlush(response);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * @author xianwu.zhang
+ */
+public class ChannelStackTest {
+
+    private static final int THREADS  = 8;
+
+    private static final int CHANNELS = 2000;
+
+    @Test
+    public void testLastInFirstOut() {
+        ChannelStack stack = new ChannelStack();
+        Channel first = new EmbeddedChannel();
+        Channel second = new EmbeddedChannel();
+        stack.push(first);
+        stack.push(second);
+
+        assertEquals(Arrays.asList(second, first), stack.channels());
+        assertSame(second, stack.pop());
+        assertSame(first, stack.pop());
+        assertNull(stack.pop());
+        assertEquals(0, stack.size());
+    }
+
+    @Test
+    public void testRemove() {
+        ChannelStack stack = new ChannelStack();
+        Channel[] channels = new Channel[3];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new EmbeddedChannel();
+            stack.push(channels[i]);
+        }
+
+        assertTrue(stack.remove(channels[1]));
+        assertFalse(stack.remove(channels[1]));
+        assertEquals(Arrays.asList(channels[2], channels[0]), stack.channels());
+        assertSame(channels[2], stack.pop());
+        assertFalse(stack.remove(channels[2]));
+        assertSame(channels[0], stack.pop());
+        assertNull(stack.pop());
+    }
+
+    /**
+     * threads push, pop and remove the same channels concurrently. Every channel pushed is
+     * taken exactly once, by a pop or a remove, or is still in the stack at the end.
+     */
+    @Test
+    public void testConcurrentPushPopRemove() throws Exception {
+        final ChannelStack stack = new ChannelStack();
+        final Channel[] channels = new Channel[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++) {
+            channels[i] = new EmbeddedChannel();
+        }
+        final ConcurrentMap<Channel, AtomicInteger> taken = new ConcurrentHashMap<Channel, AtomicInteger>();
+        for (Channel channel : channels) {
+            taken.put(channel, new AtomicInteger());
+        }
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = offset; i < CHANNELS; i += THREADS) {
+                            stack.push(channels[i]);
+                            // remove a channel pushed by another thread, and pop another one
+                            Channel other = channels[(i + CHANNELS / 2) % CHANNELS];
+                            if (stack.remove(other)) {
+                                taken.get(other).incrementAndGet();
+                            }
+                            if (0 == i % 3) {
+                                Channel popped = stack.pop();
+                                if (null != popped) {
+                                    taken.get(popped).incrementAndGet();
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+
+        for (Channel channel : stack.channels()) {
+            taken.get(channel).incrementAndGet();
+        }
+        int remaining = stack.size();
+        int popped = 0;
+        for (Channel channel = stack.pop(); null != channel; channel = stack.pop()) {
+            popped++;
+        }
+        assertEquals(remaining, popped);
+        assertEquals(0, stack.size());
+        for (Channel channel : channels) {
+            assertEquals(1, taken.get(channel).get());
+        }
+    }
+}
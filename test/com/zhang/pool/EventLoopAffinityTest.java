@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.test.TestHttpServer;
+
+/**
+ * @author xianwu.zhang
+ */
+public class EventLoopAffinityTest {
+
+    private DefaultEventLoopGroup loopGroup;
+
+    private TestHttpServer        server;
+
+    private NettyChannelPool      channelPool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != channelPool) {
+            channelPool.close();
+        }
+        if (null != server) {
+            server.close();
+        }
+        if (null != loopGroup) {
+            loopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    /**
+     * a thread of an event loop polls the channels of its own loop first, then those of the
+     * other loops
+     */
+    @Test
+    public void testPollOwnLoopFirst() throws Exception {
+        loopGroup = new DefaultEventLoopGroup(2);
+        final EventLoop first = loopGroup.next();
+        EventLoop second = loopGroup.next();
+        final IdleChannels idleChannels = new IdleChannels(new EventLoop[] { first, second });
+        Channel firstChannel = register(first);
+        Channel secondChannel = register(second);
+        idleChannels.offer(firstChannel);
+        idleChannels.offer(secondChannel);
+
+        Callable<Channel> poll = new Callable<Channel>() {
+
+            @Override
+            public Channel call() throws Exception {
+                return idleChannels.poll();
+            }
+        };
+        assertSame(secondChannel, second.submit(poll).get());
+        assertSame(firstChannel, second.submit(poll).get());
+        assertNull(first.submit(poll).get());
+        assertEquals(0, idleChannels.size());
+    }
+
+    /**
+     * without event loops the channels are kept in a single partition, most recently used
+     * first
+     */
+    @Test
+    public void testSinglePartition() throws Exception {
+        loopGroup = new DefaultEventLoopGroup(2);
+        IdleChannels idleChannels = new IdleChannels(null);
+        Channel firstChannel = register(loopGroup.next());
+        Channel secondChannel = register(loopGroup.next());
+        idleChannels.offer(firstChannel);
+        idleChannels.offer(secondChannel);
+
+        assertSame(secondChannel, idleChannels.poll());
+        assertSame(firstChannel, idleChannels.poll());
+        assertNull(idleChannels.poll());
+    }
+
+    /**
+     * concurrent requests sent from two event loops connect on their own loops, and reuse
+     * the idle channels of their own loops afterwards
+     */
+    @Test
+    public void testConnectOnCallerLoop() throws Exception {
+        server = new TestHttpServer(200, 0);
+        NioEventLoopGroup group = new NioEventLoopGroup(2);
+        channelPool = new NettyChannelPool(new HashMap<String, Integer>(), 5000, 60 * 1000,
+            false, null, new HashMap<ChannelOption, Object>(), group);
+        channelPool.setEventLoopAffinity(true);
+        EventLoop first = group.next();
+        EventLoop second = group.next();
+
+        NettyHttpResponseFuture fromFirst = sendFrom(first);
+        NettyHttpResponseFuture fromSecond = sendFrom(second);
+        assertSame(first, await(fromFirst));
+        assertSame(second, await(fromSecond));
+        for (int i = 0; i < 3; i++) {
+            assertSame(second, await(sendFrom(second)));
+            assertSame(first, await(sendFrom(first)));
+        }
+        assertEquals(8, server.getRequests());
+        assertEquals(2, server.getOpened());
+    }
+
+    private Channel register(EventLoop loop) throws Exception {
+        Channel channel = new LocalChannel();
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter());
+        loop.register(channel).sync();
+        return channel;
+    }
+
+    private NettyHttpResponseFuture sendFrom(EventLoop loop) throws Exception {
+        return loop.submit(new Callable<NettyHttpResponseFuture>() {
+
+            @Override
+            public NettyHttpResponseFuture call() throws Exception {
+                FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                    HttpMethod.GET, "/affinity");
+                request.headers().set(HttpHeaderNames.HOST, server.getRoute());
+                return channelPool.sendRequest(
+                    new InetSocketAddress("127.0.0.1", server.getPort()), request);
+            }
+        }).get();
+    }
+
+    /**
+     * @return the event loop of the channel the request was sent on
+     */
+    private EventLoop await(NettyHttpResponseFuture future) throws Exception {
+        NettyHttpResponse response = future.get();
+        assertTrue(response.isSuccess());
+        response.close();
+        return future.getChannel().eventLoop();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.test.TestHttpServer;
+import com.zhang.metrics.NettyRouteSnapshot;
+
+/**
+ * @author xianwu.zhang
+ */
+public class HedgedRequestTest {
+
+    private static final int HEDGE_DELAY = 50;
+
+    private TestHttpServer   server;
+
+    private NettyChannelPool channelPool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != channelPool) {
+            channelPool.close();
+        }
+        if (null != server) {
+            server.close();
+        }
+    }
+
+    /**
+     * the first attempt is too slow, the hedge answers first and the first attempt is
+     * aborted
+     */
+    @Test
+    public void testHedgeWins() throws Exception {
+        start(1000, 0);
+        FullHttpRequest request = newRequest();
+        NettyHttpResponse response = send(request);
+
+        // the body is the sequence number of the request at the server, so 2 is the hedge
+        assertTrue(response.isSuccess());
+        assertEquals("2", response.getResponseBody());
+        response.close();
+        assertLoserReleased(request);
+    }
+
+    /**
+     * the first attempt answers after the hedge was sent, and the hedge is aborted
+     */
+    @Test
+    public void testHedgeLoses() throws Exception {
+        start(150, 1000);
+        FullHttpRequest request = newRequest();
+        NettyHttpResponse response = send(request);
+
+        assertTrue(response.isSuccess());
+        assertEquals("1", response.getResponseBody());
+        response.close();
+        assertLoserReleased(request);
+    }
+
+    /**
+     * a response within the hedge delay sends no hedge, and its duplicate is released
+     */
+    @Test
+    public void testNoHedgeForFastResponse() throws Exception {
+        start(0);
+        FullHttpRequest request = newRequest();
+        NettyHttpResponse response = send(request);
+
+        assertEquals("1", response.getResponseBody());
+        response.close();
+        Thread.sleep(HEDGE_DELAY * 2);
+        assertEquals(1, server.getRequests());
+        assertEquals(0, request.refCnt());
+    }
+
+    /**
+     * with pipelining the hedge is sent on another channel than the slow first attempt, and
+     * the first attempt is not aborted, so the other requests of its channel still succeed
+     */
+    @Test
+    public void testPipelinedHedgeOnOtherChannel() throws Exception {
+        start(700, 800, 0);
+        channelPool.setPipelining(Collections.singletonMap(server.getRoute(), 4));
+        FullHttpRequest other = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+            HttpMethod.POST, "/other", Unpooled.copiedBuffer("other", CharsetUtil.UTF_8));
+        HttpUtil.setContentLength(other, other.content().readableBytes());
+        NettyHttpResponseFuture otherFuture = channelPool.sendRequest(new InetSocketAddress(
+            "127.0.0.1", server.getPort()), other, null, 0, null);
+        while (server.getRequests() < 1) {
+            Thread.sleep(10);
+        }
+
+        FullHttpRequest request = newRequest();
+        NettyHttpResponse response = send(request);
+        assertTrue(response.isSuccess());
+        assertEquals("3", response.getResponseBody());
+        response.close();
+        assertEquals(2, server.getOpened());
+        assertEquals(2, server.getMaxPending());
+
+        NettyHttpResponse otherResponse = otherFuture.get();
+        assertTrue(String.valueOf(otherResponse.getCause()), otherResponse.isSuccess());
+        assertEquals("other", otherResponse.getResponseBody(CharsetUtil.UTF_8));
+        otherResponse.close();
+
+        // the response of the first attempt arrives last and is dropped
+        long deadline = System.currentTimeMillis() + 2000;
+        while (channelPool.getMetrics().snapshot(server.getRoute()).getIdle() < 2
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, channelPool.getMetrics().snapshot(server.getRoute()).getIdle());
+        assertEquals(0, server.getClosed());
+        assertEquals(0, request.refCnt());
+        assertEquals(0, channelPool.getMetrics().snapshot(server.getRoute()).getFailures());
+    }
+
+    private void start(long... delaysInMilliSecondes) throws Exception {
+        server = new TestHttpServer(delaysInMilliSecondes);
+        channelPool = new NettyChannelPool(new HashMap<String, Integer>(), 5000, 60 * 1000,
+            false, null, new HashMap<ChannelOption, Object>(), null);
+        channelPool.setMetricsEnabled(true);
+        channelPool.setHedging(HEDGE_DELAY, 0, 100);
+    }
+
+    private FullHttpRequest newRequest() {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+            HttpMethod.PUT, "/hedge", Unpooled.copiedBuffer("hedged body", CharsetUtil.UTF_8));
+        request.headers().set(HttpHeaderNames.HOST, server.getRoute());
+        HttpUtil.setContentLength(request, request.content().readableBytes());
+        return request;
+    }
+
+    private NettyHttpResponse send(FullHttpRequest request) throws Exception {
+        return channelPool.sendRequest(new InetSocketAddress("127.0.0.1", server.getPort()),
+            request, null, 0, null).get();
+    }
+
+    /**
+     * both attempts were sent, the channel of the losing one is closed, its request
+     * released, and the route counts no failure
+     */
+    private void assertLoserReleased(FullHttpRequest request) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getClosed() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, server.getRequests());
+        assertEquals(1, server.getClosed());
+        assertEquals(0, request.refCnt());
+        NettyRouteSnapshot snapshot = channelPool.getMetrics().snapshot(server.getRoute());
+        assertEquals(2, snapshot.getRequests());
+        assertEquals(0, snapshot.getFailures());
+    }
+}
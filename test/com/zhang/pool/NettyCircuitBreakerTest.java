@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.test.TestHttpServer;
+import com.zhang.pool.NettyCircuitBreaker.Permit;
+import com.zhang.pool.NettyCircuitBreaker.State;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyCircuitBreakerTest {
+
+    private static final int OPEN_TIME = 100;
+
+    /**
+     * closed, opened by consecutive failures, half-open after the open time, and closed
+     * again once every probe succeeded
+     */
+    @Test
+    public void testCycle() throws Exception {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(3, 0, 0, OPEN_TIME, 2);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        failures(breaker, 2);
+        breaker.onSuccess(breaker.tryAcquire());
+        failures(breaker, 2);
+        assertEquals(State.CLOSED, breaker.getState());
+        failures(breaker, 1);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable());
+        assertNull(breaker.tryAcquire());
+
+        Thread.sleep(OPEN_TIME + 50);
+        assertTrue(breaker.isAvailable());
+        Permit probe = breaker.tryAcquire();
+        assertNotNull(probe);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertSame(probe, breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+        assertFalse(breaker.isAvailable());
+
+        breaker.onSuccess(probe);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(probe);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+
+        // the failures before the breaker opened are forgotten
+        failures(breaker, 2);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailedProbeOpensAgain() throws Exception {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(1, 0, 0, OPEN_TIME, 1);
+        failures(breaker, 1);
+        assertEquals(State.OPEN, breaker.getState());
+
+        Thread.sleep(OPEN_TIME + 50);
+        Permit probe = breaker.tryAcquire();
+        assertNotNull(probe);
+        breaker.onFailure(probe);
+        assertEquals(State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    /**
+     * a probe whose outcome is ignored lets another probe through
+     */
+    @Test
+    public void testIgnoredProbe() throws Exception {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(1, 0, 0, OPEN_TIME, 1);
+        failures(breaker, 1);
+        Thread.sleep(OPEN_TIME + 50);
+        Permit probe = breaker.tryAcquire();
+        assertNotNull(probe);
+        assertNull(breaker.tryAcquire());
+
+        breaker.onIgnored(probe);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        probe = breaker.tryAcquire();
+        assertNotNull(probe);
+        breaker.onSuccess(probe);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testIgnoredDoesNotOpen() {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(1, 0, 0, OPEN_TIME, 1);
+        for (int i = 0; i < 10; i++) {
+            breaker.onIgnored(breaker.tryAcquire());
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailureRate() {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(0, 50, 4, OPEN_TIME, 1);
+        Permit permit = breaker.tryAcquire();
+        // 1 failure of 4
+        breaker.onFailure(permit);
+        breaker.onSuccess(permit);
+        breaker.onSuccess(permit);
+        breaker.onSuccess(permit);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // 2 failures of 4, not in a row
+        breaker.onFailure(permit);
+        breaker.onSuccess(permit);
+        breaker.onFailure(permit);
+        assertEquals(State.CLOSED, breaker.getState());
+        breaker.onSuccess(permit);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    /**
+     * a request admitted while closed which completes during the half-open period neither
+     * closes the breaker nor frees a probe
+     */
+    @Test
+    public void testLateRequestIsNoProbe() throws Exception {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(1, 0, 0, OPEN_TIME, 1);
+        Permit late = breaker.tryAcquire();
+        Permit ignored = breaker.tryAcquire();
+        failures(breaker, 1);
+        Thread.sleep(OPEN_TIME + 50);
+        Permit probe = breaker.tryAcquire();
+        assertNotNull(probe);
+
+        breaker.onSuccess(late);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onIgnored(ignored);
+        assertFalse(breaker.isAvailable());
+        assertNull(breaker.tryAcquire());
+
+        breaker.onSuccess(probe);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * a probe of an earlier half-open period which completes late counts for nothing
+     */
+    @Test
+    public void testProbeOfEarlierPeriod() throws Exception {
+        NettyCircuitBreaker breaker = new NettyCircuitBreaker(1, 0, 0, OPEN_TIME, 2);
+        failures(breaker, 1);
+        Thread.sleep(OPEN_TIME + 50);
+        Permit earlier = breaker.tryAcquire();
+        Permit failed = breaker.tryAcquire();
+        breaker.onFailure(failed);
+        assertEquals(State.OPEN, breaker.getState());
+
+        Thread.sleep(OPEN_TIME + 50);
+        Permit probe = breaker.tryAcquire();
+        assertNotNull(probe);
+        assertNotSame(earlier, probe);
+        breaker.onSuccess(earlier);
+        breaker.onSuccess(probe);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onFailure(earlier);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(breaker.tryAcquire());
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * 5xx responses trip the breaker of the route, which then rejects the requests without
+     * sending them
+     */
+    @Test
+    public void testOpenBreakerRejects() throws Exception {
+        TestHttpServer server = new TestHttpServer();
+        NettyHttpClient client = new NettyHttpClient.ConfigBuilder()
+            .maxIdleTimeInMilliSecondes(200 * 1000).connectTimeOutInMilliSecondes(5000)
+            .circuitBreaker(2, 0, 0, 60 * 1000, 1).build();
+        try {
+            for (int i = 0; i < 2; i++) {
+                NettyHttpResponse response = client.doGet(
+                    new NettyHttpRequest().header("Accept", "*/*").uri(
+                        server.url("/status/503"))).get();
+                assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.getStatus());
+                response.close();
+            }
+            NettyHttpResponse rejected = client.doGet(
+                new NettyHttpRequest().header("Accept", "*/*").uri(server.url("/get"))).get();
+
+            assertFalse(rejected.isSuccess());
+            assertTrue(String.valueOf(rejected.getCause()),
+                rejected.getCause() instanceof RejectedExecutionException);
+            assertEquals(2, server.getRequests());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    private void failures(NettyCircuitBreaker breaker, int n) {
+        for (int i = 0; i < n; i++) {
+            Permit permit = breaker.tryAcquire();
+            assertNotNull(permit);
+            breaker.onFailure(permit);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testNewLimiter() {
+        assertTrue(NettyConcurrencyLimiter.newLimiter(NettyConcurrencyLimitPolicy.AIMD, 100) instanceof AimdConcurrencyLimiter);
+        assertTrue(NettyConcurrencyLimiter.newLimiter(NettyConcurrencyLimitPolicy.GRADIENT, 100) instanceof GradientConcurrencyLimiter);
+        assertNull(NettyConcurrencyLimiter.newLimiter(NettyConcurrencyLimitPolicy.FIXED, 100));
+    }
+
+    @Test
+    public void testAcquireUpToLimit() {
+        NettyConcurrencyLimiter limiter = new AimdConcurrencyLimiter(100);
+        assertEquals(20, limiter.getLimit());
+        acquire(limiter, 20);
+        assertFalse(limiter.tryAcquire());
+        assertEquals(20, limiter.getInFlight());
+
+        limiter.onIgnored();
+        assertEquals(19, limiter.getInFlight());
+        assertEquals(20, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * the limit grows by one per success while at least half of it is in use
+     */
+    @Test
+    public void testAimdIncrease() {
+        NettyConcurrencyLimiter limiter = new AimdConcurrencyLimiter(100);
+        acquire(limiter, 10);
+        limiter.onSuccess(RTT);
+        assertEquals(21, limiter.getLimit());
+        assertEquals(9, limiter.getInFlight());
+
+        // 9 of 21 in flight, the route is not busy enough
+        limiter.onSuccess(RTT);
+        assertEquals(21, limiter.getLimit());
+    }
+
+    @Test
+    public void testAimdIncreaseBoundedByMaxLimit() {
+        NettyConcurrencyLimiter limiter = new AimdConcurrencyLimiter(22);
+        for (int i = 0; i < 5; i++) {
+            acquire(limiter, limiter.getLimit() - limiter.getInFlight());
+            limiter.onSuccess(RTT);
+        }
+        assertEquals(22, limiter.getLimit());
+    }
+
+    /**
+     * the limit shrinks by a tenth per timed out request, and never below 1
+     */
+    @Test
+    public void testAimdDecrease() {
+        NettyConcurrencyLimiter limiter = new AimdConcurrencyLimiter(100);
+        acquire(limiter, 1);
+        limiter.onDropped();
+        assertEquals(18, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        for (int i = 0; i < 50; i++) {
+            acquire(limiter, 1);
+            limiter.onDropped();
+        }
+        assertEquals(1, limiter.getLimit());
+        acquire(limiter, 1);
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testGradientIncreaseWhileLatencyIsSteady() {
+        NettyConcurrencyLimiter limiter = new GradientConcurrencyLimiter(1000);
+        for (int i = 0; i < 50; i++) {
+            acquire(limiter, limiter.getLimit() - limiter.getInFlight());
+            limiter.onSuccess(RTT);
+        }
+        assertTrue(String.valueOf(limiter.getLimit()), limiter.getLimit() > 40);
+    }
+
+    @Test
+    public void testGradientKeepsLimitOfIdleRoute() {
+        NettyConcurrencyLimiter limiter = new GradientConcurrencyLimiter(1000);
+        for (int i = 0; i < 50; i++) {
+            acquire(limiter, 1);
+            limiter.onSuccess(RTT);
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void testGradientDecrease() {
+        NettyConcurrencyLimiter limiter = new GradientConcurrencyLimiter(1000);
+        for (int i = 0; i < 20; i++) {
+            acquire(limiter, limiter.getLimit() - limiter.getInFlight());
+            limiter.onSuccess(RTT);
+        }
+        int steadyLimit = limiter.getLimit();
+
+        // responses four times slower than usual
+        for (int i = 0; i < 20; i++) {
+            acquire(limiter, limiter.getLimit() - limiter.getInFlight());
+            limiter.onSuccess(RTT * 4);
+        }
+        int slowLimit = limiter.getLimit();
+        assertTrue(slowLimit + " < " + steadyLimit, slowLimit < steadyLimit);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onDropped();
+        }
+        assertTrue(limiter.getLimit() < slowLimit);
+    }
+
+    private void acquire(NettyConcurrencyLimiter limiter, int n) {
+        for (int i = 0; i < n; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.test.TestHttpServer;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyServiceTest {
+
+    private static final String        SERVICE = "user-service:80";
+
+    private final List<TestHttpServer> servers = new ArrayList<TestHttpServer>();
+
+    private NettyChannelPool           channelPool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != channelPool) {
+            channelPool.close();
+        }
+        for (TestHttpServer server : servers) {
+            server.close();
+        }
+    }
+
+    /**
+     * concurrent requests to a service are spread over the endpoints with the fewest
+     * outstanding requests
+     */
+    @Test
+    public void testLeastInFlight() throws Exception {
+        TestHttpServer first = start(200);
+        TestHttpServer second = start(200);
+        channelPool.setService(SERVICE, Arrays.asList(endpoint(first), endpoint(second)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+
+        List<NettyHttpResponseFuture> futures = new ArrayList<NettyHttpResponseFuture>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(channelPool.sendRequest(new InetSocketAddress("user-service", 80),
+                newRequest()));
+        }
+        for (NettyHttpResponseFuture future : futures) {
+            NettyHttpResponse response = future.get();
+            assertTrue(response.isSuccess());
+            response.close();
+        }
+        assertEquals(2, first.getRequests());
+        assertEquals(2, second.getRequests());
+    }
+
+    /**
+     * the idle channel of a removed endpoint is closed at once
+     */
+    @Test
+    public void testRemovedEndpointIdleChannelClosed() throws Exception {
+        TestHttpServer removed = start(0);
+        TestHttpServer kept = start(0);
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(removed)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        send();
+        assertEquals(0, removed.getClosed());
+
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(kept)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        awaitClosed(removed, 1);
+        send();
+        assertEquals(1, removed.getRequests());
+        assertEquals(1, kept.getRequests());
+        assertEquals(0, kept.getClosed());
+    }
+
+    /**
+     * the pipelined channel of a removed endpoint is closed once its outstanding request is
+     * completed, not before
+     */
+    @Test
+    public void testRemovedEndpointPipelinedChannelClosed() throws Exception {
+        TestHttpServer removed = start(300);
+        TestHttpServer kept = start(0);
+        channelPool.setPipelining(Collections.singletonMap(removed.getRoute(), 4));
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(removed)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        NettyHttpResponseFuture future = channelPool.sendRequest(new InetSocketAddress(
+            "user-service", 80), newRequest());
+        while (removed.getRequests() < 1) {
+            Thread.sleep(10);
+        }
+
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(kept)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        assertEquals(0, removed.getClosed());
+        NettyHttpResponse response = future.get();
+        assertEquals("1", response.getResponseBody());
+        response.close();
+        awaitClosed(removed, 1);
+        awaitForgotten(removed);
+    }
+
+    /**
+     * the pool, breaker and metrics of a removed endpoint are removed with its last channel,
+     * closed once its outstanding request is completed
+     */
+    @Test
+    public void testRemovedEndpointForgotten() throws Exception {
+        TestHttpServer removed = start(300);
+        TestHttpServer kept = start(0);
+        channelPool.setCircuitBreaker(5, 0, 0, 1000, 1);
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(removed)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        NettyHttpResponseFuture future = channelPool.sendRequest(new InetSocketAddress(
+            "user-service", 80), newRequest());
+        while (removed.getRequests() < 1) {
+            Thread.sleep(10);
+        }
+        String key = removed.getRoute();
+        assertNotNull(channelPool.getCircuitBreaker(endpoint(removed)));
+        assertNotNull(channelPool.getMetrics().snapshot(key));
+
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(kept)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        assertNotNull(channelPool.getMetrics().snapshot(key));
+        NettyHttpResponse response = future.get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        response.close();
+        awaitClosed(removed, 1);
+        awaitForgotten(removed);
+        assertNull(channelPool.getCircuitBreaker(endpoint(removed)));
+        send();
+        assertNotNull(channelPool.getMetrics().snapshot(kept.getRoute()));
+    }
+
+    /**
+     * an endpoint added again is an ordinary endpoint, its channels are kept
+     */
+    @Test
+    public void testEndpointAddedAgain() throws Exception {
+        TestHttpServer server = start(0);
+        TestHttpServer other = start(0);
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(server)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(other)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        channelPool.setService(SERVICE, Collections.singletonList(endpoint(server)),
+            NettyLoadBalancePolicy.LEAST_IN_FLIGHT);
+        send();
+        send();
+        assertEquals(2, server.getRequests());
+        assertEquals(1, server.getOpened());
+        assertEquals(0, server.getClosed());
+    }
+
+    private TestHttpServer start(long delayInMilliSecondes) throws Exception {
+        TestHttpServer server = new TestHttpServer(delayInMilliSecondes);
+        servers.add(server);
+        if (null == channelPool) {
+            channelPool = new NettyChannelPool(new HashMap<String, Integer>(), 5000,
+                60 * 1000, false, null, new HashMap<ChannelOption, Object>(), null);
+        }
+        return server;
+    }
+
+    private InetSocketAddress endpoint(TestHttpServer server) {
+        return new InetSocketAddress("127.0.0.1", server.getPort());
+    }
+
+    private FullHttpRequest newRequest() {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+            HttpMethod.GET, "/service");
+        request.headers().set(HttpHeaderNames.HOST, SERVICE);
+        return request;
+    }
+
+    private void send() throws Exception {
+        NettyHttpResponse response = channelPool.sendRequest(
+            new InetSocketAddress("user-service", 80), newRequest()).get();
+        assertTrue(response.isSuccess());
+        response.close();
+    }
+
+    private void awaitForgotten(TestHttpServer server) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (null != channelPool.getMetrics().snapshot(server.getRoute())
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(channelPool.getMetrics().snapshot(server.getRoute()));
+    }
+
+    private void awaitClosed(TestHttpServer server, int closed) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getClosed() < closed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(closed, server.getClosed());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.NettyHttpResponseFuture;
+import com.zhang.client.test.TestHttpServer;
+
+/**
+ * @author xianwu.zhang
+ */
+public class NettyTransportTest {
+
+    private TestHttpServer   server;
+
+    private NettyChannelPool channelPool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != channelPool) {
+            channelPool.close();
+        }
+        if (null != server) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testAutoResolves() {
+        assertSame(Epoll.isAvailable() ? NettyTransport.EPOLL : NettyTransport.NIO,
+            NettyTransport.AUTO.resolve());
+        assertSame(NettyTransport.NIO, NettyTransport.NIO.resolve());
+    }
+
+    @Test
+    public void testOfCustomGroup() throws Exception {
+        NioEventLoopGroup nioGroup = new NioEventLoopGroup(1);
+        DefaultEventLoopGroup defaultGroup = new DefaultEventLoopGroup(1);
+        try {
+            assertSame(NettyTransport.NIO, NettyTransport.of(nioGroup));
+            try {
+                NettyTransport.of(defaultGroup);
+                fail("a group without a socket channel class is rejected");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("DefaultEventLoopGroup"));
+            }
+        } finally {
+            nioGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            defaultGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testNio() throws Exception {
+        assertChannelClass(NettyTransport.NIO, NioSocketChannel.class);
+    }
+
+    @Test
+    public void testEpoll() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+        assertChannelClass(NettyTransport.EPOLL, EpollSocketChannel.class);
+    }
+
+    private void assertChannelClass(NettyTransport transport,
+                                    Class<? extends SocketChannel> channelClass)
+                                                                                throws Exception {
+        server = new TestHttpServer();
+        channelPool = new NettyChannelPool(new HashMap<String, Integer>(), 5000, 60 * 1000,
+            false, null, new HashMap<ChannelOption, Object>(), null, transport);
+
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+            HttpMethod.GET, "/transport");
+        request.headers().set(HttpHeaderNames.HOST, server.getRoute());
+        NettyHttpResponseFuture future = channelPool.sendRequest(new InetSocketAddress(
+            "127.0.0.1", server.getPort()), request);
+        NettyHttpResponse response = future.get();
+        assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+        assertEquals("1", response.getResponseBody());
+        response.close();
+        assertSame(channelClass, future.getChannel().getClass());
+    }
+}
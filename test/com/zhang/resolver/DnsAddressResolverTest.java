@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 The LightNettyClient Project
+ *
+ * The Light netty client Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.zhang.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.zhang.client.NettyHttpClient;
+import com.zhang.client.NettyHttpRequest;
+import com.zhang.client.NettyHttpResponse;
+import com.zhang.client.test.TestHttpServer;
+
+/**
+ * @author xianwu.zhang
+ */
+public class DnsAddressResolverTest {
+
+    /**
+     * the cache counts in seconds, a TTL below a second must not turn it off
+     */
+    @Test
+    public void testTtlRoundedUpToSeconds() {
+        assertEquals(0, DnsAddressResolver.toSeconds(0));
+        assertEquals(0, DnsAddressResolver.toSeconds(-1));
+        assertEquals(1, DnsAddressResolver.toSeconds(1));
+        assertEquals(1, DnsAddressResolver.toSeconds(999));
+        assertEquals(1, DnsAddressResolver.toSeconds(1000));
+        assertEquals(2, DnsAddressResolver.toSeconds(1001));
+        assertEquals(30, DnsAddressResolver.toSeconds(DnsAddressResolver.DEFAULT_MAX_TTL));
+    }
+
+    @Test
+    public void testResolveOnEventLoop() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        DnsAddressResolver resolver = new DnsAddressResolver();
+        try {
+            InetAddress address = resolver.resolve("localhost", group.next()).sync().getNow();
+            assertTrue(address.isLoopbackAddress());
+            address = resolver.resolve("127.0.0.1", group.next()).sync().getNow();
+            assertEquals("127.0.0.1", address.getHostAddress());
+            try {
+                resolver.resolve("localhost", ImmediateEventExecutor.INSTANCE);
+                fail("resolved off an event loop");
+            } catch (IllegalArgumentException e) {
+                // the DNS client is bound to an event loop
+            }
+        } finally {
+            resolver.close();
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    /**
+     * the resolver of the configuration resolves the routes of the client, and is closed
+     * with it
+     */
+    @Test
+    public void testConfiguredResolver() throws Exception {
+        TestHttpServer server = new TestHttpServer();
+        final List<String> hosts = new CopyOnWriteArrayList<String>();
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final DnsAddressResolver delegate = new DnsAddressResolver(500, 500);
+        NettyHttpClient client = new NettyHttpClient.ConfigBuilder().addressResolver(
+            new NettyAddressResolver() {
+
+                @Override
+                public Future<InetAddress> resolve(String host, EventExecutor executor) {
+                    hosts.add(host);
+                    return delegate.resolve(host, executor);
+                }
+
+                @Override
+                public void close() {
+                    closed.set(true);
+                    delegate.close();
+                }
+            }).build();
+        try {
+            NettyHttpResponse response = client.doGet(
+                new NettyHttpRequest().header("Accept", "*/*").uri(
+                    "http://localhost:" + server.getPort() + "/get")).get();
+            assertTrue(String.valueOf(response.getCause()), response.isSuccess());
+            assertEquals("1", response.getResponseBody());
+            assertTrue(hosts.toString(), hosts.contains("localhost"));
+        } finally {
+            client.close();
+            server.close();
+        }
+        assertTrue(closed.get());
+    }
+}